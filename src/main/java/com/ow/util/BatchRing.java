@@ -0,0 +1,146 @@
+package com.ow.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 单生产者、单消费者的有界环形缓冲区，槽位在创建时一次性分配并循环复用，
+ * 流水线的各个阶段之间用它传递行批次或字节批次，运行过程中不再分配批次对象。
+ *
+ * 生产者：claim 取一个空闲槽位填充，publish 交给消费者；
+ * 消费者：take 取下一个已发布的槽位，用完后 release 归还。
+ * 两端各自只写自己的序号（volatile），不加锁；缓冲区满或空时先让出CPU，再短暂park。
+ * 任何一端出错时调用 abort，另一端的等待会以 IOException 结束。
+ */
+public class BatchRing<T> {
+
+    private static final int SPIN_YIELDS = 64;
+    private static final long PARK_NANOS = 50_000L;
+
+    private final Object[] slots;
+    private final int mask;
+
+    // 已发布的槽位数（生产者写）
+    private volatile long tail;
+    // 已归还的槽位数（消费者写）
+    private volatile long head;
+    private volatile boolean finished;
+    private volatile Throwable abortCause;
+
+    private long producerWaits;
+    private long consumerWaits;
+
+    /**
+     * @param size 槽位数，向上取整为2的幂
+     * @param factory 槽位对象的构造方法
+     */
+    public BatchRing(int size, Supplier<T> factory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive.");
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * 生产者：等待并返回下一个空闲槽位，填充后调用 publish
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() throws IOException {
+        long t = tail;
+        if (t - head >= slots.length) {
+            producerWaits++;
+            for (int spins = 0; t - head >= slots.length; spins++) {
+                pause(spins);
+            }
+        }
+        return (T) slots[(int) (t & mask)];
+    }
+
+    public void publish() {
+        tail = tail + 1;
+    }
+
+    /**
+     * 生产者：不再有新的槽位
+     */
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * 消费者：等待并返回下一个已发布的槽位；生产者已结束且没有剩余槽位时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public T take() throws IOException {
+        long h = head;
+        if (h >= tail) {
+            consumerWaits++;
+            for (int spins = 0; h >= tail; spins++) {
+                // 先读finished再读tail，结束前发布的槽位不会被漏掉
+                if (finished && h >= tail) {
+                    return null;
+                }
+                pause(spins);
+            }
+        }
+        return (T) slots[(int) (h & mask)];
+    }
+
+    public void release() {
+        head = head + 1;
+    }
+
+    /**
+     * 任意一端出错时调用，唤醒另一端并让其等待以 IOException 结束
+     */
+    public void abort(Throwable cause) {
+        abortCause = cause;
+    }
+
+    private void pause(int spins) throws IOException {
+        if (abortCause != null) {
+            throw new IOException("Pipeline aborted", abortCause);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Pipeline interrupted");
+        }
+        if (spins < SPIN_YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * @return 生产者因缓冲区满而等待的次数，较大说明下游是瓶颈
+     */
+    public long getProducerWaits() {
+        return producerWaits;
+    }
+
+    /**
+     * @return 消费者因缓冲区空而等待的次数，较大说明上游是瓶颈
+     */
+    public long getConsumerWaits() {
+        return consumerWaits;
+    }
+
+    @Override
+    public String toString() {
+        return "capacity=" + slots.length + ", producerWaits=" + producerWaits + ", consumerWaits=" + consumerWaits;
+    }
+}
@@ -0,0 +1,189 @@
+package com.ow.util;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 直接写字节的CSV输出，流式转换使用。
+ * 转义规则和空行、去首尾空白等行为与 CSVRowWriter 完全一致，区别在于
+ * 共享字符串单元格从 SharedStringCache 取已经转义并编码好的字节，直接拷贝到输出缓冲区。
+ * 编码必须兼容ASCII（如UTF-8、GBK），去除行首尾空白是按字节进行的。
+ */
+public class CSVByteRowWriter implements RowHandler, Flushable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final String separator;
+    private final int formattingConvention;
+    private final Charset charset;
+    private final byte[] separatorBytes;
+    private final byte[] newline;
+    private final SharedStringCache cache;
+
+    private final byte[] buffer;
+    private int pos;
+    // 当前行先拼在这里，去掉首尾空白后再写入buffer
+    private byte[] line = new byte[1024];
+    private int lineLength;
+    private int nextRowNum;
+    private boolean firstLine = true;
+    private boolean padMissingRows = true;
+
+    public CSVByteRowWriter(OutputStream out, String separator, int formattingConvention, Charset charset) {
+        this(out, separator, formattingConvention, charset,
+                SharedStringCache.DEFAULT_CAPACITY, SharedStringCache.DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * @param cacheCapacity 共享字符串缓存的条目数，为0时不使用缓存
+     * @param cacheMaxChars 超过该长度的共享字符串不缓存
+     */
+    public CSVByteRowWriter(OutputStream out, String separator, int formattingConvention, Charset charset,
+                            int cacheCapacity, int cacheMaxChars) {
+        if(formattingConvention != ExcelToCSV.EXCEL_STYLE_ESCAPING &&
+                formattingConvention != ExcelToCSV.UNIX_STYLE_ESCAPING) {
+            throw new IllegalArgumentException("The value passed to the " +
+                    "formattingConvention parameter is out of range.");
+        }
+        this.out = out;
+        this.separator = separator;
+        this.formattingConvention = formattingConvention;
+        this.charset = charset;
+        this.separatorBytes = separator.getBytes(charset);
+        this.newline = System.lineSeparator().getBytes(charset);
+        this.cache = cacheCapacity > 0
+                ? new SharedStringCache(cacheCapacity, cacheMaxChars, this::encodeField) : null;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    @Override
+    public SharedStringCache getSharedStringCache() {
+        return cache;
+    }
+
+    @Override
+    public void handleRow(int rowNum, String[] record) throws IOException {
+        handleRow(rowNum, record, null);
+    }
+
+    /**
+     * 流式回调：sheet中缺失的行输出为空行，与整表转换的结果保持一致。
+     */
+    @Override
+    public void handleRow(int rowNum, String[] record, int[] sstIndexes) throws IOException {
+        while(this.padMissingRows && this.nextRowNum < rowNum) {
+            this.writeLine();
+            this.nextRowNum++;
+        }
+        this.appendRecord(record, sstIndexes);
+        this.writeLine();
+        this.nextRowNum = rowNum + 1;
+    }
+
+    /**
+     * 直接写出一行，不按行号补空行。合并多个工作簿时行号各自从0开始，使用此方法
+     */
+    public void writeRecord(String[] record) throws IOException {
+        this.appendRecord(record, null);
+        this.writeLine();
+    }
+
+    private void appendRecord(String[] record, int[] sstIndexes) {
+        for(int j = 0; j < record.length; j++) {
+            String field = record[j];
+            if(field != null) {
+                int sstIndex = sstIndexes != null && j < sstIndexes.length ? sstIndexes[j] : -1;
+                this.appendToLine(sstIndex >= 0 && this.cache != null
+                        ? this.cache.bytes(sstIndex, field) : this.encodeField(field));
+            }
+            if(j < (record.length - 1)) {
+                this.appendToLine(this.separatorBytes);
+            }
+        }
+    }
+
+    /**
+     * 是否按行号补空行，默认补。按条件过滤时关闭，被跳过的行不输出
+     */
+    public void setPadMissingRows(boolean padMissingRows) {
+        this.padMissingRows = padMissingRows;
+    }
+
+    /**
+     * 只取从rowNum开始的行时使用：从rowNum起补空行，之前的行不输出
+     */
+    public void setFirstRowNum(int rowNum) {
+        this.nextRowNum = rowNum;
+    }
+
+    /**
+     * 断点续转时使用，含义同 CSVRowWriter.resumeAfter
+     */
+    public void resumeAfter(int rowNum) {
+        this.nextRowNum = rowNum + 1;
+        this.firstLine = false;
+    }
+
+    private byte[] encodeField(String field) {
+        return CSVRowWriter.escapeEmbeddedCharacters(field, this.separator, this.formattingConvention)
+                .getBytes(this.charset);
+    }
+
+    private void appendToLine(byte[] bytes) {
+        if(this.lineLength + bytes.length > this.line.length) {
+            this.line = Arrays.copyOf(this.line, Math.max(this.line.length * 2, this.lineLength + bytes.length));
+        }
+        System.arraycopy(bytes, 0, this.line, this.lineLength, bytes.length);
+        this.lineLength += bytes.length;
+    }
+
+    /**
+     * 写出当前行并清空。与 String.trim() 一样去掉首尾不大于空格的字符，
+     * 行之间才加换行符，文件末尾没有多余的空行
+     */
+    private void writeLine() throws IOException {
+        int start = 0;
+        int end = this.lineLength;
+        while(start < end && (this.line[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while(end > start && (this.line[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        if(!this.firstLine) {
+            this.write(this.newline, 0, this.newline.length);
+        }
+        this.write(this.line, start, end - start);
+        this.firstLine = false;
+        this.lineLength = 0;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        if(len > this.buffer.length - this.pos) {
+            this.flushBuffer();
+            if(len > this.buffer.length) {
+                this.out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, this.buffer, this.pos, len);
+        this.pos += len;
+    }
+
+    private void flushBuffer() throws IOException {
+        if(this.pos > 0) {
+            this.out.write(this.buffer, 0, this.pos);
+            this.pos = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.flushBuffer();
+        this.out.flush();
+    }
+}
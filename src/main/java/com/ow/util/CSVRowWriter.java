@@ -0,0 +1,276 @@
+package com.ow.util;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * 把一行行单元格数据按指定分隔符和转义规则写成CSV。
+ * ExcelToCSV 的整表输出和 XLSXCovertCSVReader 的流式输出共用这一套转义逻辑，
+ * 保证两条路径产出的文件一致。
+ */
+public class CSVRowWriter implements RowHandler, Flushable {
+
+    // 批量写空行时每次写出的字符数
+    private static final int BULK_BLOCK_CHARS = 64 * 1024;
+
+    private final Writer writer;
+    private final String separator;
+    private final int formattingConvention;
+    private int nextRowNum;
+    private boolean firstLine = true;
+    private final StringBuilder buffer = new StringBuilder();
+    // 连续的分隔符，按需加长，补空字段时整段追加
+    private String separatorRun = "";
+
+    public CSVRowWriter(Writer writer, String separator, int formattingConvention) {
+        if(formattingConvention != ExcelToCSV.EXCEL_STYLE_ESCAPING &&
+                formattingConvention != ExcelToCSV.UNIX_STYLE_ESCAPING) {
+            throw new IllegalArgumentException("The value passed to the " +
+                    "formattingConvention parameter is out of range.");
+        }
+        this.writer = writer;
+        this.separator = separator;
+        this.formattingConvention = formattingConvention;
+    }
+
+    /**
+     * 流式回调：sheet中缺失的行输出为空行，与整表转换的结果保持一致。
+     */
+    @Override
+    public void handleRow(int rowNum, String[] record) throws IOException {
+        while(this.nextRowNum < rowNum) {
+            this.writeLine("");
+            this.nextRowNum++;
+        }
+        this.buffer.setLength(0);
+        for(int j = 0; j < record.length; j++) {
+            if(record[j] != null) {
+                this.buffer.append(this.escapeEmbeddedCharacters(record[j]));
+            }
+            if(j < (record.length - 1)) {
+                this.buffer.append(this.separator);
+            }
+        }
+        this.writeLine(this.buffer.toString().trim());
+        this.nextRowNum = rowNum + 1;
+    }
+
+    /**
+     * 写出一行，不足width的部分补空字段，使输出的CSV是一个完整的矩阵。
+     *
+     * @param line 该行各单元格格式化后的值
+     * @param width 输出的列数
+     * @throws IOException 写文件失败
+     */
+    public void writeRow(List<String> line, int width) throws IOException {
+        String csvLineElement;
+        this.buffer.setLength(0);
+        for(int j = 0; j < width; j++) {
+            if(line.size() > j) {
+                csvLineElement = line.get(j);
+                if(csvLineElement != null) {
+                    this.buffer.append(this.escapeEmbeddedCharacters(
+                            csvLineElement));
+                }
+            }
+            if(j < (width - 1)) {
+                this.buffer.append(this.separator);
+            }
+        }
+        this.writeLine(this.buffer.toString().trim());
+        this.nextRowNum++;
+    }
+
+    /**
+     * 写出count个空行，与逐行调用 writeRow(空行, width) 的结果相同，每块只拼接一次
+     *
+     * @param count 空行数
+     * @param width 输出的列数
+     * @throws IOException 写文件失败
+     */
+    public void writeEmptyRows(long count, int width) throws IOException {
+        if(count <= 0) {
+            return;
+        }
+        this.buffer.setLength(0);
+        this.appendSeparators(width - 1);
+        String line = this.buffer.toString().trim();
+        if(this.firstLine) {
+            this.writeLine(line);
+            count--;
+        }
+        String lineWithSeparator = System.lineSeparator() + line;
+        long perBlock = Math.max(1, BULK_BLOCK_CHARS / lineWithSeparator.length());
+        this.buffer.setLength(0);
+        for(long i = Math.min(count, perBlock); i > 0; i--) {
+            this.buffer.append(lineWithSeparator);
+        }
+        String block = this.buffer.toString();
+        for(long remaining = count; remaining > 0; remaining -= perBlock) {
+            int lines = (int) Math.min(remaining, perBlock);
+            this.writer.write(block, 0, lines * lineWithSeparator.length());
+        }
+        this.nextRowNum += count;
+    }
+
+    /**
+     * 写出一个稀疏行：columns[i]列的值为values中的第i个，其余列为空字段，超出width的列忽略。
+     * 与把该行展开后调用 writeRow 的结果相同，连续的空字段整段追加
+     *
+     * @param columns 列下标，递增
+     * @param values 与columns一一对应的值
+     * @param width 输出的列数
+     * @throws IOException 写文件失败
+     */
+    public void writeSparseRow(int[] columns, List<String> values, int width) throws IOException {
+        this.buffer.setLength(0);
+        // 已经写出的分隔符数，第j列之前有j个分隔符
+        int separators = 0;
+        for(int i = 0; i < values.size() && columns[i] < width; i++) {
+            this.appendSeparators(columns[i] - separators);
+            separators = columns[i];
+            String value = values.get(i);
+            if(value != null) {
+                this.buffer.append(this.escapeEmbeddedCharacters(value));
+            }
+        }
+        this.appendSeparators(width - 1 - separators);
+        this.writeLine(this.buffer.toString().trim());
+        this.nextRowNum++;
+    }
+
+    private void appendSeparators(int count) {
+        if(count <= 0) {
+            return;
+        }
+        int length = count * this.separator.length();
+        if(this.separatorRun.length() < length) {
+            int target = Math.max(length, this.separatorRun.length() * 2);
+            StringBuilder run = new StringBuilder(target);
+            while(run.length() < target) {
+                run.append(this.separator);
+            }
+            this.separatorRun = run.toString();
+        }
+        this.buffer.append(this.separatorRun, 0, length);
+    }
+
+    /**
+     * Condition the inclusion of new line characters so as to avoid an
+     * additional, superfluous, new line at the end of the file.
+     */
+    private void writeLine(String line) throws IOException {
+        if(!this.firstLine) {
+            this.writer.write(System.lineSeparator());
+        }
+        this.writer.write(line);
+        this.firstLine = false;
+    }
+
+    /**
+     * 断点续转时使用：告诉writer行号不大于rowNum的行已经写入输出，
+     * 之后的行直接接在已有内容后面
+     *
+     * @param rowNum 最后一个已完整写出的行号（从0开始）
+     */
+    public void resumeAfter(int rowNum) {
+        this.nextRowNum = rowNum + 1;
+        this.firstLine = false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    /**
+     * Checks to see whether the field - which consists of the formatted
+     * contents of an Excel worksheet cell encapsulated within a String - contains
+     * any embedded characters that must be escaped. The method is able to
+     * comply with either Excel's or UNIX formatting conventions in the
+     * following manner;
+     *
+     * With regard to UNIX conventions, if the field contains any embedded
+     * field separator or EOL characters they will each be escaped by prefixing
+     * a leading backspace character. These are the only changes that have yet
+     * emerged following some research as being required.
+     *
+     * Excel has other embedded character escaping requirements, some that emerged
+     * from empirical testing, other through research. Firstly, with regards to
+     * any embedded speech marks ("), each occurrence should be escaped with
+     * another speech mark and the whole field then surrounded with speech marks.
+     * Thus if a field holds <em>"Hello" he said</em> then it should be modified
+     * to appear as <em>"""Hello"" he said"</em>. Furthermore, if the field
+     * contains either embedded separator or EOL characters, it should also
+     * be surrounded with speech marks. As a result <em>1,400</em> would become
+     * <em>"1,400"</em> assuming that the comma is the required field separator.
+     * This has one consequence in, if a field contains embedded speech marks
+     * and embedded separator characters, checks for both are not required as the
+     * additional set of speech marks that should be placed around ay field
+     * containing embedded speech marks will also account for the embedded
+     * separator.
+     *
+     * It is worth making one further note with regard to embedded EOL
+     * characters. If the data in a worksheet is exported as a CSV file using
+     * Excel itself, then the field will be surounded with speech marks. If the
+     * resulting CSV file is then re-imports into another worksheet, the EOL
+     * character will result in the original simgle field occupying more than
+     * one cell. This same 'feature' is replicated in this classes behaviour.
+     *
+     * @param field An instance of the String class encapsulating the formatted
+     *        contents of a cell on an Excel worksheet.
+     * @return A String that encapsulates the formatted contents of that
+     *         Excel worksheet cell but with any embedded separator, EOL or
+     *         speech mark characters correctly escaped.
+     */
+    public String escapeEmbeddedCharacters(String field) {
+        return escapeEmbeddedCharacters(field, this.separator, this.formattingConvention);
+    }
+
+    static String escapeEmbeddedCharacters(String field, String separator, int formattingConvention) {
+        StringBuilder sb;
+
+        // If the fields contents should be formatted to confrom with Excel's
+        // convention....
+        if(formattingConvention == ExcelToCSV.EXCEL_STYLE_ESCAPING) {
+
+            // Firstly, check if there are any speech marks (") in the field;
+            // each occurrence must be escaped with another set of spech marks
+            // and then the entire field should be enclosed within another
+            // set of speech marks. Thus, "Yes" he said would become
+            // """Yes"" he said"
+            if(field.contains("\"")) {
+                sb = new StringBuilder(field.replace("\"", "\"\""));
+                sb.insert(0, "\"");
+                sb.append("\"");
+            }
+            else {
+                // If the field contains either embedded separator or EOL
+                // characters, then escape the whole field by surrounding it
+                // with speech marks.
+                if(field.contains(separator) || field.indexOf('\n') > -1) {
+                    sb = new StringBuilder(field.length() + 2);
+                    sb.append('"').append(field).append('"');
+                }
+                else {
+                    return field.trim();
+                }
+            }
+            return(sb.toString().trim());
+        }
+        // The only other formatting convention this class obeys is the UNIX one
+        // where any occurrence of the field separator or EOL character will
+        // be escaped by preceding it with a backslash.
+        else {
+            if(field.contains(separator)) {
+                field = field.replace(separator, "\\" + separator);
+            }
+            if(field.indexOf('\n') > -1) {
+                field = field.replace("\n", "\\\n");
+            }
+            return(field);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.ow.util;
+
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.LocaleUtil;
+
+/**
+ * 数值和日期单元格的快速渲染，线程安全，可在多个解析线程之间共享。
+ *
+ * 日期：Excel日期序列号直接用 java.time 的日期运算换算（1900日期系统，保留Excel把1900年当作闰年的处理），
+ * 不再经过 java.util.Date、Calendar 和每个单元格新建的 SimpleDateFormat；日期部分的字符串按天缓存。
+ *
+ * 数值：“常规”格式直接在 &lt;v&gt; 的文本上处理。Excel写出的是能还原该double的最短十进制表示，
+ * 有效数字不超过10位、不需要科学计数法时，常规格式的结果就是这些数字本身，无需转换成double再格式化；
+ * 需要舍入或科学计数法的少数情况交给 DataFormatter，结果与原来完全一致。
+ */
+public class CellValueRenderer {
+
+    public static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private static final int DAY_MILLISECONDS = 24 * 60 * 60 * 1000;
+    // 按天缓存的范围：1900-01-01 ~ 2099年底，覆盖绝大多数业务数据
+    private static final int CACHED_DAYS = 73050;
+    private static final LocalDate EXCEL_EPOCH = LocalDate.of(1899, 12, 30);
+
+    private static final CellValueRenderer DEFAULT = new CellValueRenderer(DEFAULT_DATE_PATTERN);
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // DataFormatter 不是线程安全的，慢路径每个线程各用一个
+    private static final ThreadLocal<DataFormatter> SLOW_PATH = ThreadLocal.withInitial(DataFormatter::new);
+
+    private final DateTimeFormatter dateFormatter;
+    private final boolean defaultPattern;
+    private final boolean fastGeneral;
+    // 按天缓存的日期字符串。String是不可变对象，并发写入同一位置时写入的值相同，无需加锁
+    private final String[] dayCache = new String[CACHED_DAYS];
+
+    /**
+     * @param datePattern 日期单元格的输出格式（DateTimeFormatter 语法）
+     */
+    public CellValueRenderer(String datePattern) {
+        this.defaultPattern = DEFAULT_DATE_PATTERN.equals(datePattern);
+        this.dateFormatter = DateTimeFormatter.ofPattern(datePattern);
+        // 快速路径按“.”作小数点输出，其他locale下全部交给 DataFormatter
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(LocaleUtil.getUserLocale());
+        this.fastGeneral = symbols.getDecimalSeparator() == '.' && symbols.getMinusSign() == '-';
+    }
+
+    public static CellValueRenderer getDefault() {
+        return DEFAULT;
+    }
+
+    static boolean isGeneralFormat(String formatString) {
+        return "General".equalsIgnoreCase(formatString) || "@".equals(formatString);
+    }
+
+    /**
+     * 把Excel日期序列号渲染成日期字符串，与 HSSFDateUtil.getJavaDate 的换算规则一致（毫秒四舍五入，秒截断）
+     *
+     * @param v 单元格 &lt;v&gt; 中的文本
+     * @return 日期字符串；序列号为负数等无效日期时原样返回文本
+     */
+    public String formatDate(CharSequence v) {
+        double serial = parseDouble(v);
+        if (!DateUtil.isValidExcelDate(serial)) {
+            return v.toString();
+        }
+        return formatValidDate(serial);
+    }
+
+    /**
+     * 同 formatDate(CharSequence)，供已经是double的来源（如xlsb）使用；无效日期按常规格式输出
+     */
+    public String formatDate(double serial) {
+        if (!DateUtil.isValidExcelDate(serial)) {
+            return formatGeneral(serial);
+        }
+        return formatValidDate(serial);
+    }
+
+    private String formatValidDate(double serial) {
+        int wholeDays = (int) Math.floor(serial);
+        int millis = (int) ((serial - wholeDays) * DAY_MILLISECONDS + 0.5);
+        if (millis >= DAY_MILLISECONDS) {
+            wholeDays++;
+            millis -= DAY_MILLISECONDS;
+        }
+        if (defaultPattern) {
+            String day = dayString(wholeDays);
+            int seconds = millis / 1000;
+            char[] buf = new char[day.length() + 9];
+            day.getChars(0, day.length(), buf, 0);
+            int p = day.length();
+            buf[p++] = ' ';
+            p = twoDigits(buf, p, seconds / 3600);
+            buf[p++] = ':';
+            p = twoDigits(buf, p, seconds / 60 % 60);
+            buf[p++] = ':';
+            twoDigits(buf, p, seconds % 60);
+            return new String(buf);
+        }
+        if (millis == 0 && wholeDays >= 0 && wholeDays < CACHED_DAYS) {
+            String cached = dayCache[wholeDays];
+            if (cached == null) {
+                cached = dateFormatter.format(toDate(wholeDays).atStartOfDay());
+                dayCache[wholeDays] = cached;
+            }
+            return cached;
+        }
+        LocalDateTime time = toDate(wholeDays).atStartOfDay().plusNanos(millis * 1000000L);
+        return dateFormatter.format(time);
+    }
+
+    /**
+     * Excel日期序列号换算成 LocalDateTime，换算规则与 formatDate 相同（毫秒四舍五入）
+     *
+     * @throws IllegalArgumentException 序列号不是有效的Excel日期
+     */
+    public static LocalDateTime toLocalDateTime(double serial) {
+        if (!DateUtil.isValidExcelDate(serial)) {
+            throw new IllegalArgumentException("Not a valid Excel date: " + serial);
+        }
+        int wholeDays = (int) Math.floor(serial);
+        int millis = (int) ((serial - wholeDays) * DAY_MILLISECONDS + 0.5);
+        return toDate(wholeDays).atStartOfDay().plusNanos(millis * 1000000L);
+    }
+
+    /**
+     * 解析文本形式的日期：yyyy-MM-dd HH:mm:ss（默认的日期输出格式）、yyyy-MM-dd 或ISO格式
+     *
+     * @throws java.time.format.DateTimeParseException 无法解析
+     */
+    public static LocalDateTime parseDateTime(String text) {
+        if (text.length() == 10) {
+            return LocalDate.parse(text).atStartOfDay();
+        }
+        if (text.length() == 19 && text.charAt(10) == ' ') {
+            return LocalDateTime.parse(text, DEFAULT.dateFormatter);
+        }
+        return LocalDateTime.parse(text);
+    }
+
+    /**
+     * 按“常规”格式渲染数值，结果与 DataFormatter.formatRawCellContents(value, 0, "General") 相同
+     *
+     * @param v 单元格 &lt;v&gt; 中的文本
+     */
+    public String formatGeneral(CharSequence v) {
+        if (fastGeneral) {
+            String fast = fastGeneral(v);
+            if (fast != null) {
+                return fast;
+            }
+        }
+        return SLOW_PATH.get().formatRawCellContents(parseDouble(v), 0, "General");
+    }
+
+    /**
+     * 同 formatGeneral(CharSequence)。Double.toString 的结果有效数字不超过10位时走快速路径，
+     * 否则（包括JDK8偶尔给出的非最短表示）交给 DataFormatter
+     */
+    public String formatGeneral(double value) {
+        if (fastGeneral && !Double.isNaN(value) && !Double.isInfinite(value)) {
+            String fast = fastGeneral(Double.toString(value));
+            if (fast != null) {
+                return fast;
+            }
+        }
+        return SLOW_PATH.get().formatRawCellContents(value, 0, "General");
+    }
+
+    /**
+     * 解析 &lt;v&gt; 中的数值，不创建中间String。
+     * 有效数字不超过15位、指数不大时，尾数和10的幂都能精确表示为double，一次乘除即得到正确舍入的结果；
+     * 其他情况交给 Double.parseDouble
+     */
+    public static double parseDouble(CharSequence s) {
+        int len = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    // 前导零不计入有效数字
+                } else if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                } else {
+                    return Double.parseDouble(s.toString());
+                }
+                if (seenPoint) {
+                    scale--;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return Double.parseDouble(s.toString());
+        }
+        if (i < len) {
+            char c = s.charAt(i);
+            if (c != 'E' && c != 'e') {
+                return Double.parseDouble(s.toString());
+            }
+            i++;
+            boolean negativeExp = false;
+            if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExp = s.charAt(i) == '-';
+                i++;
+            }
+            int exp = 0;
+            int expStart = i;
+            for (; i < len && exp < 10000; i++) {
+                c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return Double.parseDouble(s.toString());
+                }
+                exp = exp * 10 + (c - '0');
+            }
+            if (i == expStart || i < len) {
+                return Double.parseDouble(s.toString());
+            }
+            scale += negativeExp ? -exp : exp;
+        }
+        if (digits > 15 || scale < -22 || scale > 22) {
+            return Double.parseDouble(s.toString());
+        }
+        double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * 常规格式的快速路径：直接从文本中取出有效数字和小数点位置。
+     * 只处理不需要舍入的情况：整数部分不超过11位；有小数时整数部分不超过10位、
+     * 有效数字不超过10位且小数不超过10位。其余返回null走慢路径
+     */
+    private static String fastGeneral(CharSequence s) {
+        int len = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < len && s.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+        // 有效数字（去掉前导零）存入digits，pointPos为小数点相对第一个有效数字的位置
+        char[] digits = new char[10];
+        int count = 0;
+        int pointPos = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        int trailingZeros = 0;
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (count == 0 && c == '0') {
+                    if (seenPoint) {
+                        pointPos--;
+                    }
+                    continue;
+                }
+                if (c == '0') {
+                    trailingZeros++;
+                } else {
+                    // 中间的零补回有效数字
+                    if (count + trailingZeros + 1 > digits.length) {
+                        return null;
+                    }
+                    for (; trailingZeros > 0; trailingZeros--) {
+                        digits[count++] = '0';
+                    }
+                    digits[count++] = c;
+                }
+                if (!seenPoint) {
+                    pointPos++;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return null;
+        }
+        if (i < len) {
+            char c = s.charAt(i++);
+            if (c != 'E' && c != 'e') {
+                return null;
+            }
+            boolean negativeExp = false;
+            if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExp = s.charAt(i) == '-';
+                i++;
+            }
+            if (i == len || len - i > 3) {
+                return null;
+            }
+            int exp = 0;
+            for (; i < len; i++) {
+                c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                exp = exp * 10 + (c - '0');
+            }
+            pointPos += negativeExp ? -exp : exp;
+        }
+        if (count == 0) {
+            return "0";
+        }
+        StringBuilder sb = new StringBuilder(24);
+        if (negative) {
+            sb.append('-');
+        }
+        if (pointPos >= count) {
+            // 整数，小于1E11时按整数输出，末尾的零（如1200的后两位）不在digits中，补回
+            if (pointPos > 11) {
+                return null;
+            }
+            sb.append(digits, 0, count);
+            for (int z = count; z < pointPos; z++) {
+                sb.append('0');
+            }
+            return sb.toString();
+        }
+        // 小数：整数部分小于1E10，小数位数不超过10，且不小于1E-9（更小的用科学计数法）
+        if (pointPos > 10 || count - pointPos > 10 || pointPos < -8) {
+            return null;
+        }
+        if (pointPos <= 0) {
+            sb.append("0.");
+            for (int z = pointPos; z < 0; z++) {
+                sb.append('0');
+            }
+            sb.append(digits, 0, count);
+        } else {
+            sb.append(digits, 0, pointPos).append('.').append(digits, pointPos, count - pointPos);
+        }
+        return sb.toString();
+    }
+
+    private String dayString(int wholeDays) {
+        if (wholeDays < CACHED_DAYS) {
+            String cached = dayCache[wholeDays];
+            if (cached == null) {
+                cached = toDate(wholeDays).toString();
+                dayCache[wholeDays] = cached;
+            }
+            return cached;
+        }
+        return toDate(wholeDays).toString();
+    }
+
+    /**
+     * 1900日期系统：Excel把1900-02-29当作存在的日期，序列号61之前要少算一天
+     */
+    private static LocalDate toDate(int wholeDays) {
+        return EXCEL_EPOCH.plusDays(wholeDays < 61 ? wholeDays + 1 : wholeDays);
+    }
+
+    private static int twoDigits(char[] buf, int p, int n) {
+        buf[p] = (char) ('0' + n / 10);
+        buf[p + 1] = (char) ('0' + n % 10);
+        return p + 2;
+    }
+}
@@ -0,0 +1,72 @@
+package com.ow.util;
+
+import java.util.Arrays;
+
+/**
+ * 流式解析时一行中数值、日期和布尔单元格的原始值，与 RowHandler 收到的 record 按列对应。
+ *
+ * 由输出端通过 RowHandler.getCellValues 提供，解析器每行填充、回调后清空。
+ * 标记为原始值的列，解析器只填充这里的double，不再把数值格式化成字符串（record中该列为null），
+ * 供需要数值本身而不是显示文本的调用方（如 RowBinder）使用。非线程安全。
+ */
+public class CellValues {
+
+    public static final byte NONE = 0;
+    public static final byte NUMBER = 1;
+    public static final byte DATE = 2;
+    public static final byte BOOLEAN = 3;
+
+    private byte[] kinds = new byte[0];
+    private double[] numbers = new double[0];
+    private boolean[] rawColumns = new boolean[0];
+
+    /**
+     * @return 该列的值类型，不是数值、日期或布尔单元格时为 NONE
+     */
+    public byte kind(int column) {
+        return column < kinds.length ? kinds[column] : NONE;
+    }
+
+    /**
+     * @return 数值或日期序列号；布尔单元格为1或0
+     */
+    public double number(int column) {
+        return numbers[column];
+    }
+
+    /**
+     * 设置某列是否只保留原始值、不格式化
+     */
+    public void setRaw(int column, boolean raw) {
+        ensureWidth(column + 1);
+        rawColumns[column] = raw;
+    }
+
+    public boolean isRaw(int column) {
+        return column < rawColumns.length && rawColumns[column];
+    }
+
+    void setNumber(int column, double value, boolean date) {
+        ensureWidth(column + 1);
+        kinds[column] = date ? DATE : NUMBER;
+        numbers[column] = value;
+    }
+
+    void setBoolean(int column, boolean value) {
+        ensureWidth(column + 1);
+        kinds[column] = BOOLEAN;
+        numbers[column] = value ? 1 : 0;
+    }
+
+    void ensureWidth(int width) {
+        if (kinds.length < width) {
+            kinds = Arrays.copyOf(kinds, width);
+            numbers = Arrays.copyOf(numbers, width);
+            rawColumns = Arrays.copyOf(rawColumns, width);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(kinds, NONE);
+    }
+}
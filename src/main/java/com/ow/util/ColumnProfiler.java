@@ -0,0 +1,374 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * 转换过程中顺带统计每一列的概况，省去转换后再扫描一遍CSV推断表结构。
+ *
+ * 每列只保存固定大小的统计量：各类型的取值个数、空值数、数值和文本的最小最大值、最大长度，
+ * 以及用于估算不同值个数的 HyperLogLog（4096个寄存器，标准误差约1.6%）。
+ * 统计的是写入CSV的格式化后的文本，空字符串视为空值。非线程安全，一个sheet用一个实例。
+ */
+public class ColumnProfiler {
+
+    public static final String PROFILE_SUFFIX = ".profile.json";
+
+    static final int INTEGER = 0;
+    static final int DECIMAL = 1;
+    static final int BOOLEAN = 2;
+    static final int DATE = 3;
+    static final int STRING = 4;
+    private static final String[] TYPE_NAMES = {"integer", "decimal", "boolean", "date", "string"};
+
+    private final List<ColumnStats> columns = new ArrayList<>();
+    private long rows;
+
+    /**
+     * 统计一行，record中的null和空字符串视为空值
+     */
+    public void addRow(String[] record) {
+        rows++;
+        for (int i = 0; i < record.length; i++) {
+            String value = record[i];
+            if (value != null && !value.isEmpty()) {
+                column(i).add(value);
+            }
+        }
+    }
+
+    public void addRow(List<String> record) {
+        rows++;
+        for (int i = 0; i < record.size(); i++) {
+            String value = record.get(i);
+            if (value != null && !value.isEmpty()) {
+                column(i).add(value);
+            }
+        }
+    }
+
+    /**
+     * 统计一个稀疏行：columns[i]列的值为values中的第i个，其余列为空
+     */
+    public void addRow(int[] columns, List<String> values) {
+        rows++;
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (value != null && !value.isEmpty()) {
+                column(columns[i]).add(value);
+            }
+        }
+    }
+
+    /**
+     * sheet中缺失的行在CSV中是空行，同样计入行数
+     */
+    public void addEmptyRows(long count) {
+        rows += count;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    private ColumnStats column(int index) {
+        while (columns.size() <= index) {
+            columns.add(new ColumnStats());
+        }
+        return columns.get(index);
+    }
+
+    /**
+     * 把概况写成JSON
+     *
+     * @param file 输出文件，一般为CSV文件名加 .profile.json
+     * @param source 来源工作簿名称
+     * @param sheetName sheet名称
+     */
+    public void writeJson(File file, String source, String sheetName) throws IOException {
+        StringBuilder sb = new StringBuilder(256 + columns.size() * 256);
+        sb.append("{\n  \"source\": ");
+        JsonLinesRowWriter.appendJsonString(sb, source);
+        sb.append(",\n  \"sheet\": ");
+        JsonLinesRowWriter.appendJsonString(sb, sheetName);
+        sb.append(",\n  \"rows\": ").append(rows);
+        sb.append(",\n  \"columns\": [");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "\n    " : ",\n    ");
+            columns.get(i).appendJson(sb, i, rows);
+        }
+        sb.append(columns.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * CSV文件对应的概况文件：同目录下，扩展名换成 .profile.json
+     */
+    public static File profileFileFor(File csvFile) {
+        String name = csvFile.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(csvFile.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + PROFILE_SUFFIX);
+    }
+
+    /**
+     * 按格式化后的文本判断取值类型：整数、小数、布尔、日期（yyyy-MM-dd 或 yyyy/M/d，可带时间），其余为文本
+     */
+    static int classify(String s) {
+        int len = s.length();
+        char c0 = s.charAt(0);
+        if ((c0 == 'T' || c0 == 't' || c0 == 'F' || c0 == 'f')
+                && ("TRUE".equalsIgnoreCase(s) || "FALSE".equalsIgnoreCase(s))) {
+            return BOOLEAN;
+        }
+        int i = c0 == '-' || c0 == '+' ? 1 : 0;
+        int intDigits = 0;
+        while (i < len && isDigit(s.charAt(i))) {
+            i++;
+            intDigits++;
+        }
+        if (i == len) {
+            return intDigits > 0 ? INTEGER : STRING;
+        }
+        char c = s.charAt(i);
+        if ((c == '-' || c == '/') && intDigits == 4 && c0 != '-' && c0 != '+') {
+            return isDate(s, i) ? DATE : STRING;
+        }
+        int fracDigits = 0;
+        if (c == '.') {
+            i++;
+            while (i < len && isDigit(s.charAt(i))) {
+                i++;
+                fracDigits++;
+            }
+        }
+        if (intDigits + fracDigits == 0) {
+            return STRING;
+        }
+        if (i < len && (s.charAt(i) == 'E' || s.charAt(i) == 'e')) {
+            i++;
+            if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                i++;
+            }
+            int expDigits = 0;
+            while (i < len && isDigit(s.charAt(i))) {
+                i++;
+                expDigits++;
+            }
+            if (expDigits == 0) {
+                return STRING;
+            }
+        }
+        return i == len ? DECIMAL : STRING;
+    }
+
+    /**
+     * 从年份后的分隔符开始检查 -M-d 或 /M/d，之后可以有空格加 H:mm[:ss]
+     */
+    private static boolean isDate(String s, int i) {
+        int len = s.length();
+        char sep = s.charAt(i);
+        int[] next = {i + 1};
+        if (!digits(s, next, 1, 2) || next[0] >= len || s.charAt(next[0]) != sep) {
+            return false;
+        }
+        next[0]++;
+        if (!digits(s, next, 1, 2)) {
+            return false;
+        }
+        if (next[0] == len) {
+            return true;
+        }
+        if (s.charAt(next[0]) != ' ') {
+            return false;
+        }
+        next[0]++;
+        if (!digits(s, next, 1, 2) || next[0] >= len || s.charAt(next[0]) != ':') {
+            return false;
+        }
+        next[0]++;
+        if (!digits(s, next, 2, 2)) {
+            return false;
+        }
+        if (next[0] == len) {
+            return true;
+        }
+        if (s.charAt(next[0]) != ':') {
+            return false;
+        }
+        next[0]++;
+        return digits(s, next, 2, 2) && next[0] == len;
+    }
+
+    private static boolean digits(String s, int[] pos, int min, int max) {
+        int n = 0;
+        while (pos[0] < s.length() && n < max && isDigit(s.charAt(pos[0]))) {
+            pos[0]++;
+            n++;
+        }
+        return n >= min;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * 一列的统计量
+     */
+    static class ColumnStats {
+
+        private final long[] typeCounts = new long[TYPE_NAMES.length];
+        private final HyperLogLog distinct = new HyperLogLog();
+        private long nonNull;
+        private double minNumber = Double.POSITIVE_INFINITY;
+        private double maxNumber = Double.NEGATIVE_INFINITY;
+        private String minText;
+        private String maxText;
+        private int maxLength;
+
+        void add(String value) {
+            nonNull++;
+            int type = classify(value);
+            typeCounts[type]++;
+            if (type == INTEGER || type == DECIMAL) {
+                double d = CellValueRenderer.parseDouble(value);
+                if (d < minNumber) {
+                    minNumber = d;
+                }
+                if (d > maxNumber) {
+                    maxNumber = d;
+                }
+            }
+            if (minText == null || value.compareTo(minText) < 0) {
+                minText = value;
+            }
+            if (maxText == null || value.compareTo(maxText) > 0) {
+                maxText = value;
+            }
+            if (value.length() > maxLength) {
+                maxLength = value.length();
+            }
+            distinct.add(value);
+        }
+
+        /**
+         * 推断列类型：全部为整数时为integer，整数和小数混合为decimal，
+         * 全部为布尔或日期时为boolean/date，其余为string，没有任何值时为empty
+         */
+        String inferredType() {
+            if (nonNull == 0) {
+                return "empty";
+            }
+            if (typeCounts[INTEGER] == nonNull) {
+                return TYPE_NAMES[INTEGER];
+            }
+            if (typeCounts[INTEGER] + typeCounts[DECIMAL] == nonNull) {
+                return TYPE_NAMES[DECIMAL];
+            }
+            for (int t = BOOLEAN; t <= DATE; t++) {
+                if (typeCounts[t] == nonNull) {
+                    return TYPE_NAMES[t];
+                }
+            }
+            return TYPE_NAMES[STRING];
+        }
+
+        void appendJson(StringBuilder sb, int index, long rows) {
+            String type = inferredType();
+            boolean numeric = TYPE_NAMES[INTEGER].equals(type) || TYPE_NAMES[DECIMAL].equals(type);
+            sb.append("{\"index\": ").append(index);
+            sb.append(", \"column\": \"").append(CellReference.convertNumToColString(index)).append('"');
+            sb.append(", \"type\": \"").append(type).append('"');
+            sb.append(", \"nonNull\": ").append(nonNull);
+            sb.append(", \"nulls\": ").append(rows - nonNull);
+            sb.append(", \"distinct\": ").append(nonNull == 0 ? 0 : Math.min(nonNull, distinct.estimate()));
+            sb.append(", \"maxLength\": ").append(maxLength);
+            if (numeric) {
+                sb.append(", \"min\": ").append(numberJson(minNumber));
+                sb.append(", \"max\": ").append(numberJson(maxNumber));
+            } else if (nonNull > 0) {
+                sb.append(", \"min\": ");
+                JsonLinesRowWriter.appendJsonString(sb, minText);
+                sb.append(", \"max\": ");
+                JsonLinesRowWriter.appendJsonString(sb, maxText);
+            }
+            sb.append(", \"types\": {");
+            boolean first = true;
+            for (int t = 0; t < TYPE_NAMES.length; t++) {
+                if (typeCounts[t] > 0) {
+                    sb.append(first ? "" : ", ").append('"').append(TYPE_NAMES[t]).append("\": ").append(typeCounts[t]);
+                    first = false;
+                }
+            }
+            sb.append("}}");
+        }
+
+        private static String numberJson(double d) {
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                return Long.toString((long) d);
+            }
+            return Double.toString(d);
+        }
+    }
+
+    /**
+     * HyperLogLog 基数估计，2^12 个寄存器
+     */
+    static class HyperLogLog {
+
+        private static final int P = 12;
+        private static final int M = 1 << P;
+        private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+        private final byte[] registers = new byte[M];
+
+        void add(String value) {
+            long hash = hash(value);
+            int index = (int) (hash >>> (64 - P));
+            int rank = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1;
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+            }
+        }
+
+        long estimate() {
+            double sum = 0;
+            int zeros = 0;
+            for (byte r : registers) {
+                sum += 1.0 / (1L << r);
+                if (r == 0) {
+                    zeros++;
+                }
+            }
+            double estimate = ALPHA * M * M / sum;
+            if (estimate <= 2.5 * M && zeros > 0) {
+                // 小基数时用线性计数修正
+                estimate = M * Math.log((double) M / zeros);
+            }
+            return Math.round(estimate);
+        }
+
+        /**
+         * 64位哈希：FNV-1a逐字符累积，再用MurmurHash3的fmix64打散
+         */
+        private static long hash(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93e185a4d53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
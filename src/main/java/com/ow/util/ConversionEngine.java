@@ -0,0 +1,651 @@
+package com.ow.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 可在多个线程间共享的异步转换引擎，供嵌入到其他服务中使用。
+ *
+ * 引擎本身创建后不再修改，每次 submit 的状态（输出、行数、取消标记）都在各自的任务里，
+ * 不像 ExcelToCSV 那样把当前工作簿放在实例字段中。同时在执行和排队的任务数受 maxInFlight 限制：
+ * 超出时按 Admission 立即拒绝（返回的future以 RejectedExecutionException 失败），
+ * 或阻塞调用方直到有空位、超时后再拒绝。
+ *
+ * 取消（future.cancel）是协作式的：尚未开始的任务直接放弃；已经开始的任务在下一行或下一次写出时中止，
+ * 临时文件会被删除，目标文件不受影响。
+ *
+ * 只支持xlsx和xlsb：所有任务都以 OPCPackage 流式读取，不像 ExcelToCSV 那样用 HSSFWorkbook 整体加载xls，
+ * 因此创建xls的请求时直接抛出 IllegalArgumentException。
+ */
+public class ConversionEngine implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(ConversionEngine.class);
+
+    /**
+     * 引擎饱和时的处理方式：立即拒绝，或阻塞等待
+     */
+    public enum Admission { REJECT, BLOCK }
+
+    /**
+     * 输出格式，ROWS 表示把行交给调用方提供的 RowHandler
+     */
+    public enum Format { CSV, JSONL, HTML, ROWS }
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final Admission admission;
+    private final long admissionTimeoutMillis;
+    private volatile boolean closed;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param threads 同时执行的转换数
+     * @param queueCapacity 最多排队等待的转换数，超出后按 REJECT 处理
+     */
+    public ConversionEngine(int threads, int queueCapacity) {
+        this(Executors.newFixedThreadPool(threads), true, threads + queueCapacity, Admission.REJECT, 0);
+    }
+
+    /**
+     * 使用调用方提供的线程池，close 时不会关闭该线程池
+     *
+     * @param executor 执行转换的线程池
+     * @param maxInFlight 执行中和排队中的转换总数上限
+     * @param admission 达到上限时的处理方式
+     * @param admissionTimeoutMillis BLOCK 时最多等待的毫秒数，0表示一直等待
+     */
+    public ConversionEngine(ExecutorService executor, int maxInFlight, Admission admission,
+                            long admissionTimeoutMillis) {
+        this(executor, false, maxInFlight, admission, admissionTimeoutMillis);
+    }
+
+    private ConversionEngine(ExecutorService executor, boolean ownsExecutor, int maxInFlight,
+                             Admission admission, long admissionTimeoutMillis) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive.");
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.admission = admission;
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+    }
+
+    /**
+     * 提交一个转换。REJECT 模式下不会阻塞；BLOCK 模式下引擎饱和时阻塞调用线程
+     *
+     * @return 转换完成时完成的future；被拒绝时以 RejectedExecutionException 失败
+     * @throws RejectedExecutionException 引擎已经close
+     */
+    public CompletableFuture<ConversionResult> submit(ConversionRequest request) {
+        if (request == null) {
+            throw new NullPointerException("request");
+        }
+        if (closed) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Conversion engine is closed.");
+        }
+        submitted.incrementAndGet();
+        CompletableFuture<ConversionResult> future = new CompletableFuture<>();
+        if (!admit()) {
+            rejected.incrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException(
+                    "Conversion engine is saturated (" + maxInFlight + " in flight)."));
+            return future;
+        }
+        Task task = new Task(request, future);
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                task.cancel();
+            }
+        });
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭或调用方的线程池自身拒绝
+            task.releaseIfNotStarted();
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private boolean admit() {
+        if (admission == Admission.REJECT) {
+            return permits.tryAcquire();
+        }
+        try {
+            if (admissionTimeoutMillis <= 0) {
+                permits.acquire();
+                return true;
+            }
+            return permits.tryAcquire(admissionTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return 正在执行的转换数
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return 已接受但还没开始执行的转换数
+     */
+    public int getQueued() {
+        return Math.max(0, maxInFlight - permits.availablePermits() - running.get());
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "running=" + getRunning() + ", queued=" + getQueued() + ", submitted=" + getSubmitted()
+                + ", completed=" + getCompleted() + ", failed=" + getFailed()
+                + ", cancelled=" + getCancelled() + ", rejected=" + getRejected();
+    }
+
+    /**
+     * 不再接受新的转换，等待已接受的转换完成。使用外部线程池时只拒绝新的提交
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (!ownsExecutor) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                logger.warn("Conversions still running after 60 seconds: {}", this);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一次转换：自己的请求、输出和取消标记，不与其他任务共享可变状态
+     */
+    class Task implements Runnable {
+
+        private final ConversionRequest request;
+        private final CompletableFuture<ConversionResult> future;
+        private final long acceptedAt = System.nanoTime();
+        // 开始执行或被取消时置位，保证许可只归还一次
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile boolean cancelRequested;
+        private long rows;
+
+        Task(ConversionRequest request, CompletableFuture<ConversionResult> future) {
+            this.request = request;
+            this.future = future;
+        }
+
+        void cancel() {
+            cancelRequested = true;
+            if (releaseIfNotStarted()) {
+                cancelled.incrementAndGet();
+            }
+        }
+
+        boolean releaseIfNotStarted() {
+            if (claimed.compareAndSet(false, true)) {
+                permits.release();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            running.incrementAndGet();
+            long startedAt = System.nanoTime();
+            ConversionResult result = null;
+            Throwable error = null;
+            try {
+                checkCancelled();
+                boolean found = convert();
+                long bytes = request.destination != null && found ? request.destination.length() : -1;
+                result = new ConversionResult(request, found, rows, bytes,
+                        TimeUnit.NANOSECONDS.toMillis(startedAt - acceptedAt),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+                completed.incrementAndGet();
+            } catch (Throwable t) {
+                error = t;
+                if (cancelRequested) {
+                    cancelled.incrementAndGet();
+                    logger.debug("Conversion of {} cancelled", request.source);
+                } else {
+                    failed.incrementAndGet();
+                    logger.error("Conversion of {} failed", request.source, t);
+                }
+            } finally {
+                running.decrementAndGet();
+                permits.release();
+            }
+            // 先归还许可再完成future，回调中立即提交的下一个转换不会因为本任务被拒绝
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+
+        private void checkCancelled() throws InterruptedIOException {
+            if (cancelRequested) {
+                throw new InterruptedIOException("Conversion cancelled");
+            }
+        }
+
+        private boolean convert() throws Exception {
+            if (request.format == Format.ROWS) {
+                return readRows(request.rowHandler);
+            }
+            File part = new File(request.destination.getPath() + PART_SUFFIX);
+            boolean found;
+            try (OutputStream out = new FileOutputStream(part)) {
+                found = writeTo(out);
+            } catch (Exception e) {
+                Files.deleteIfExists(part.toPath());
+                throw e;
+            }
+            if (!found) {
+                Files.deleteIfExists(part.toPath());
+                return false;
+            }
+            ResumableSheetConverter.moveAtomically(part, request.destination);
+            return true;
+        }
+
+        private boolean writeTo(OutputStream out) throws Exception {
+            switch (request.format) {
+                case CSV: {
+                    CSVByteRowWriter csvWriter = new CSVByteRowWriter(out, request.separator,
+                            request.formattingConvention, StandardCharsets.UTF_8);
+                    boolean found = readRows(csvWriter);
+                    csvWriter.flush();
+                    return found;
+                }
+                case JSONL: {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    boolean found = readRows(new JsonLinesRowWriter(writer));
+                    writer.flush();
+                    return found;
+                }
+                case HTML: {
+                    if (request.isBinaryWorkbook()) {
+                        throw new IllegalArgumentException("HTML output is not supported for .xlsb: " + request.source);
+                    }
+                    try (OPCPackage pkg = OPCPackage.open(request.source, PackageAccess.READ)) {
+                        Writer writer = new CancellableWriter(
+                                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+                        XLSXStreamingHtmlRenderer renderer = new XLSXStreamingHtmlRenderer(pkg, writer);
+                        if (!renderer.hasSheet(request.sheetName)) {
+                            return false;
+                        }
+                        renderer.setCompleteHTML(true);
+                        return renderer.printPage(request.sheetName);
+                    }
+                }
+                default:
+                    throw new IllegalStateException("Unexpected format " + request.format);
+            }
+        }
+
+        /**
+         * 流式读取sheet，每行先检查取消标记再交给target
+         */
+        private boolean readRows(RowHandler target) throws Exception {
+            RowHandler handler = new RowHandler() {
+                @Override
+                public void handleRow(int rowNum, String[] record) throws IOException {
+                    checkCancelled();
+                    target.handleRow(rowNum, record);
+                    rows++;
+                }
+
+                @Override
+                public void handleRow(int rowNum, String[] record, int[] sstIndexes) throws IOException {
+                    checkCancelled();
+                    target.handleRow(rowNum, record, sstIndexes);
+                    rows++;
+                }
+
+                @Override
+                public SharedStringCache getSharedStringCache() {
+                    return target.getSharedStringCache();
+                }
+            };
+            try (OPCPackage pkg = OPCPackage.open(request.source, PackageAccess.READ)) {
+                if (request.isBinaryWorkbook()) {
+                    XLSBCovertCSVReader reader = new XLSBCovertCSVReader(pkg, System.out, request.sheetName);
+                    reader.setValueRenderer(request.valueRenderer);
+                    return reader.process(handler);
+                }
+                XLSXCovertCSVReader reader = new XLSXCovertCSVReader(pkg, System.out, request.sheetName, 0, -1);
+                reader.setValueRenderer(request.valueRenderer);
+                if (request.workbookCache != null) {
+                    reader.setCachedWorkbook(request.workbookCache.get(request.source, pkg));
+                }
+                return reader.process(handler);
+            }
+        }
+
+        /**
+         * HTML渲染没有行回调，在写出时检查取消标记
+         */
+        class CancellableWriter extends FilterWriter {
+
+            CancellableWriter(Writer out) {
+                super(out);
+            }
+
+            @Override
+            public void write(int c) throws IOException {
+                checkCancelled();
+                super.write(c);
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                checkCancelled();
+                super.write(cbuf, off, len);
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                checkCancelled();
+                super.write(str, off, len);
+            }
+        }
+    }
+
+    /**
+     * 一次转换请求。创建后只在提交前设置，提交后不要再修改
+     */
+    public static class ConversionRequest {
+
+        private final File source;
+        private final String sheetName;
+        private final Format format;
+        private final File destination;
+        private final RowHandler rowHandler;
+        private String separator = ExcelToCSV.DEFAULT_SEPARATOR;
+        private int formattingConvention = ExcelToCSV.EXCEL_STYLE_ESCAPING;
+        private CellValueRenderer valueRenderer = CellValueRenderer.getDefault();
+        private WorkbookCache workbookCache;
+
+        private ConversionRequest(File source, String sheetName, Format format, File destination,
+                                  RowHandler rowHandler) {
+            if (source == null) {
+                throw new NullPointerException("source");
+            }
+            if (source.getName().toLowerCase().endsWith(".xls")) {
+                throw new IllegalArgumentException("Only .xlsx and .xlsb are supported, convert .xls with ExcelToCSV: "
+                        + source);
+            }
+            this.source = source;
+            this.sheetName = sheetName;
+            this.format = format;
+            this.destination = destination;
+            this.rowHandler = rowHandler;
+        }
+
+        /**
+         * @param sheetName sheet名称，为null时转换第一个sheet
+         * @throws IllegalArgumentException source是xls文件
+         */
+        public static ConversionRequest toCsv(File source, String sheetName, File destination) {
+            return new ConversionRequest(source, sheetName, Format.CSV, destination, null);
+        }
+
+        public static ConversionRequest toJsonLines(File source, String sheetName, File destination) {
+            return new ConversionRequest(source, sheetName, Format.JSONL, destination, null);
+        }
+
+        /**
+         * 输出完整的HTML页面，仅支持xlsx
+         */
+        public static ConversionRequest toHtml(File source, String sheetName, File destination) {
+            return new ConversionRequest(source, sheetName, Format.HTML, destination, null);
+        }
+
+        /**
+         * 把行交给rowHandler，回调在引擎的工作线程中执行
+         */
+        public static ConversionRequest toRows(File source, String sheetName, RowHandler rowHandler) {
+            if (rowHandler == null) {
+                throw new NullPointerException("rowHandler");
+            }
+            return new ConversionRequest(source, sheetName, Format.ROWS, null, rowHandler);
+        }
+
+        public ConversionRequest setSeparator(String separator) {
+            this.separator = separator;
+            return this;
+        }
+
+        public ConversionRequest setFormattingConvention(int formattingConvention) {
+            this.formattingConvention = formattingConvention;
+            return this;
+        }
+
+        public ConversionRequest setValueRenderer(CellValueRenderer valueRenderer) {
+            this.valueRenderer = valueRenderer;
+            return this;
+        }
+
+        /**
+         * 同一个工作簿的多个sheet共用一个缓存时，共享字符串和样式只加载一次；HTML和xlsb不使用
+         */
+        public ConversionRequest setWorkbookCache(WorkbookCache workbookCache) {
+            this.workbookCache = workbookCache;
+            return this;
+        }
+
+        public File getSource() {
+            return source;
+        }
+
+        public String getSheetName() {
+            return sheetName;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public File getDestination() {
+            return destination;
+        }
+
+        boolean isBinaryWorkbook() {
+            return source.getName().toLowerCase().endsWith(".xlsb");
+        }
+    }
+
+    /**
+     * 转换结果和统计
+     */
+    public static class ConversionResult {
+
+        private final ConversionRequest request;
+        private final boolean sheetFound;
+        private final long rows;
+        private final long bytes;
+        private final long queuedMillis;
+        private final long elapsedMillis;
+
+        ConversionResult(ConversionRequest request, boolean sheetFound, long rows, long bytes,
+                         long queuedMillis, long elapsedMillis) {
+            this.request = request;
+            this.sheetFound = sheetFound;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.queuedMillis = queuedMillis;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public ConversionRequest getRequest() {
+            return request;
+        }
+
+        /**
+         * @return 是否找到了对应的sheet，没找到时不会生成目标文件
+         */
+        public boolean isSheetFound() {
+            return sheetFound;
+        }
+
+        /**
+         * @return 输出的行数（不含为缺失行补的空行），HTML格式为0
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return 目标文件的字节数，ROWS格式或没找到sheet时为-1
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getQueuedMillis() {
+            return queuedMillis;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return request.format + " " + request.source.getName() + "[" + request.sheetName + "]: "
+                    + (sheetFound ? rows + " rows, " + bytes + " bytes" : "sheet not found")
+                    + ", queued " + queuedMillis + " ms, took " + elapsedMillis + " ms";
+        }
+    }
+
+    /**
+     * @param args [xlsx/xlsb文件] [输出目录] [sheet名称...] [--format csv|jsonl|html] [--threads 线程数] [--queue 排队数]
+     *             [--workbook-cache 兆字节]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java ConversionEngine [Source File] [Destination Folder] [Sheet Name...] "
+                    + "[--format csv|jsonl|html] [--threads N] [--queue N] [--workbook-cache MB]");
+            return;
+        }
+        File source = new File(args[0]);
+        File destination = new File(args[1]);
+        Format format = Format.CSV;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = 16;
+        WorkbookCache workbookCache = null;
+        List<String> sheets = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if ("--format".equals(args[i])) {
+                format = Format.valueOf(args[++i].toUpperCase());
+            } else if ("--threads".equals(args[i])) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("--queue".equals(args[i])) {
+                queue = Integer.parseInt(args[++i]);
+            } else if ("--workbook-cache".equals(args[i])) {
+                workbookCache = new WorkbookCache(Long.parseLong(args[++i]) * 1024 * 1024);
+            } else {
+                sheets.add(args[i]);
+            }
+        }
+        if (!destination.isDirectory()) {
+            destination.mkdirs();
+        }
+        long startTime = System.currentTimeMillis();
+        try (ConversionEngine engine = new ConversionEngine(threads, queue)) {
+            List<CompletableFuture<ConversionResult>> futures = new ArrayList<>();
+            for (String sheet : sheets) {
+                File target = new File(destination, sheet + "." + format.name().toLowerCase());
+                ConversionRequest request = format == Format.HTML ? ConversionRequest.toHtml(source, sheet, target)
+                        : format == Format.JSONL ? ConversionRequest.toJsonLines(source, sheet, target)
+                        : ConversionRequest.toCsv(source, sheet, target);
+                request.setWorkbookCache(workbookCache);
+                futures.add(engine.submit(request));
+            }
+            for (CompletableFuture<ConversionResult> future : futures) {
+                try {
+                    System.out.println(future.join());
+                } catch (Exception e) {
+                    System.out.println("Conversion failed: " + e.getCause());
+                }
+            }
+            System.out.println(engine);
+            if (workbookCache != null) {
+                System.out.println("Workbook cache: " + workbookCache);
+            }
+        }
+        System.out.println("Conversion took " + ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+    }
+}
@@ -0,0 +1,24 @@
+package com.ow.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * RowBinder 使用：把字段或构造方法参数绑定到表头名称或列下标
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.PARAMETER})
+public @interface ExcelColumn {
+
+    /**
+     * 表头名称，为空时用字段名（构造方法参数必须指定名称或下标）
+     */
+    String value() default "";
+
+    /**
+     * 列下标（从0开始），指定后忽略表头名称
+     */
+    int index() default -1;
+}
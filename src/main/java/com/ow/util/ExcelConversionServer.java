@@ -0,0 +1,348 @@
+package com.ow.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于JDK自带 com.sun.net.httpserver 的本地转换服务，供集群内其他服务调用，
+ * 不需要再通过命令行调用jar包。
+ *
+ * <pre>
+ * POST /convert?sheet=表格一&amp;format=csv&amp;separator=,&amp;convention=0
+ * 请求体：xlsx（html格式也支持xls）文件内容，xlsx的html同样是流式渲染
+ * </pre>
+ *
+ * format 可选 csv（默认）、jsonl、html。请求体先写入临时文件（超过 maxUploadBytes 时返回413），
+ * 再从文件打开工作簿，堆内存不随上传文件大小增长；csv和jsonl边解析边输出（chunked），
+ * 不缓存整张sheet。同时处理的请求数受 maxConcurrent 限制，超出时直接返回503。
+ */
+public class ExcelConversionServer {
+
+    private static Logger logger = LoggerFactory.getLogger(ExcelConversionServer.class);
+
+    public static final int DEFAULT_PORT = 8090;
+    public static final String CONTEXT_PATH = "/convert";
+
+    public static final long DEFAULT_MAX_UPLOAD_BYTES = 512L * 1024 * 1024;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private volatile long maxUploadBytes = DEFAULT_MAX_UPLOAD_BYTES;
+
+    /**
+     * @param address 监听地址，默认只监听本机
+     * @param maxConcurrent 同时进行的转换数量上限
+     * @throws IOException 端口被占用等
+     */
+    public ExcelConversionServer(InetSocketAddress address, int maxConcurrent) throws IOException {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive.");
+        }
+        this.permits = new Semaphore(maxConcurrent);
+        // 多留一个线程用于快速拒绝超出并发上限的请求
+        this.executor = Executors.newFixedThreadPool(maxConcurrent + 1);
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(CONTEXT_PATH, new ConvertHandler());
+        this.server.setExecutor(this.executor);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Conversion server listening on {}", server.getAddress());
+    }
+
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * @param maxUploadBytes 单个请求体的大小上限，超出时返回413
+     */
+    public void setMaxUploadBytes(long maxUploadBytes) {
+        if (maxUploadBytes < 1) {
+            throw new IllegalArgumentException("maxUploadBytes must be positive.");
+        }
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    public long getMaxUploadBytes() {
+        return maxUploadBytes;
+    }
+
+    class ConvertHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendError(exchange, 405, "Only POST is supported.");
+                    return;
+                }
+                if (!permits.tryAcquire()) {
+                    sendError(exchange, 503, "Too many concurrent conversions.");
+                    return;
+                }
+                try {
+                    convert(exchange);
+                } finally {
+                    permits.release();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void convert(HttpExchange exchange) throws IOException {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String format = params.getOrDefault("format", "csv");
+            String sheet = params.get("sheet");
+            File upload = File.createTempFile("excel-upload", ".tmp");
+            try {
+                if (!spool(exchange.getRequestBody(), upload)) {
+                    sendError(exchange, 413, "Request body exceeds " + maxUploadBytes + " bytes.");
+                    return;
+                }
+                convert(exchange, upload, format, sheet, params);
+            } finally {
+                if (!upload.delete() && upload.exists()) {
+                    logger.warn("Could not delete upload spool file {}", upload);
+                }
+            }
+        }
+
+        /**
+         * 把请求体写入临时文件
+         *
+         * @return 请求体超过 maxUploadBytes 时为false
+         */
+        private boolean spool(InputStream body, File upload) throws IOException {
+            long limit = maxUploadBytes;
+            long total = 0;
+            byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+            try (InputStream in = body; OutputStream out = new FileOutputStream(upload)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    total += n;
+                    if (total > limit) {
+                        return false;
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            return true;
+        }
+
+        private void convert(HttpExchange exchange, File upload, String format, String sheet,
+                             Map<String, String> params) throws IOException {
+            LazyResponseStream response = new LazyResponseStream(exchange);
+            try {
+                if ("html".equals(format)) {
+                    exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                    if (FileMagic.valueOf(upload) == FileMagic.OOXML) {
+                        // xlsx走流式渲染，不加载整个工作簿
+                        try (OPCPackage pkg = OPCPackage.open(upload, PackageAccess.READ)) {
+                            XLSXStreamingHtmlRenderer renderer = new XLSXStreamingHtmlRenderer(pkg, newWriter(response));
+                            if (!renderer.hasSheet(sheet)) {
+                                sendError(exchange, 404, "Sheet not found: " + sheet);
+                                return;
+                            }
+                            renderer.setCompleteHTML(true);
+                            renderer.printPage(sheet);
+                        }
+                        return;
+                    }
+                    try (Workbook wb = WorkbookFactory.create(upload, null, true)) {
+                        ExcelToHtml toHtml = ExcelToHtml.create(wb, newWriter(response));
+                        toHtml.setCompleteHTML(true);
+                        toHtml.printPage();
+                    }
+                    return;
+                }
+
+                RowHandler rowHandler;
+                Flushable output;
+                if ("csv".equals(format)) {
+                    exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=UTF-8");
+                    String separator = params.getOrDefault("separator", ",");
+                    int convention = Integer.parseInt(params.getOrDefault("convention",
+                            String.valueOf(ExcelToCSV.EXCEL_STYLE_ESCAPING)));
+                    CSVByteRowWriter csvWriter = new CSVByteRowWriter(response, separator, convention,
+                            StandardCharsets.UTF_8);
+                    rowHandler = csvWriter;
+                    output = csvWriter;
+                } else if ("jsonl".equals(format)) {
+                    exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=UTF-8");
+                    Writer writer = newWriter(response);
+                    rowHandler = new JsonLinesRowWriter(writer);
+                    output = writer;
+                } else {
+                    sendError(exchange, 400, "Unknown format: " + format);
+                    return;
+                }
+
+                if (!XLSXCovertCSVReader.readerExcel(upload, sheet, rowHandler, null)) {
+                    sendError(exchange, 404, "Sheet not found: " + sheet);
+                    return;
+                }
+                output.flush();
+                response.close();
+                if (rowHandler.getSharedStringCache() != null) {
+                    logger.debug("Shared string cache: {}", rowHandler.getSharedStringCache());
+                }
+            } catch (IllegalArgumentException e) {
+                if (!response.isCommitted()) {
+                    sendError(exchange, 400, e.getMessage());
+                } else {
+                    logger.warn("Conversion aborted after response was committed", e);
+                }
+            } catch (Exception e) {
+                // 响应已经开始输出时只能中断连接，客户端会收到不完整的chunked响应
+                logger.error("Conversion failed", e);
+                if (!response.isCommitted()) {
+                    sendError(exchange, 500, e.getClass().getName() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        private Writer newWriter(OutputStream out) {
+            return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        }
+
+        private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+            byte[] body = (message == null ? "" : message).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+        }
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    /**
+     * 第一次真正写出数据时才发送200响应头（chunked），
+     * 在此之前发生的错误（sheet不存在、文件格式不对等）仍然可以返回对应的错误码。
+     */
+    static class LazyResponseStream extends OutputStream {
+
+        private final HttpExchange exchange;
+        private OutputStream body;
+
+        LazyResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean isCommitted() {
+            return body != null;
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                body().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            body().close();
+        }
+    }
+
+    /**
+     * 启动本地转换服务
+     *
+     * @param args [端口] [最大并发数] [请求体上限MB]
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxConcurrent = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        final ExcelConversionServer server = new ExcelConversionServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxConcurrent);
+        if (args.length > 2) {
+            server.setMaxUploadBytes(Long.parseLong(args[2]) * 1024 * 1024);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        server.start();
+        System.out.println("Conversion server started on " + server.getAddress()
+                + ", POST a workbook to " + CONTEXT_PATH + "?sheet=...&format=csv|jsonl|html");
+    }
+}
@@ -8,9 +8,16 @@ import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DataFormatter;
@@ -19,21 +26,36 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.SAXException;
 
 public class ExcelToCSV {
 
     private static Logger logger = LoggerFactory.getLogger(ExcelToCSV.class);
 
     private Workbook workbook;
-    private ArrayList<ArrayList<String>> csvData;
+    // 当前sheet格式化后的数据，按行存放在堆外内存中，超过预算时溢出到临时文件
+    private RowStore csvData;
+    private long rowStoreBudget = RowStore.DEFAULT_MEMORY_BUDGET;
     private int maxRowWidth;
     private int formattingConvention;
     private DataFormatter formatter;
     private FormulaEvaluator evaluator;
     private String separator;
+    private boolean profiling;
+    private ColumnProfiler profiler;
+    // 是否去掉末尾没有值的行和列，dataWidth为本sheet有值的最右一列加一
+    private boolean trimEmptyEdges;
+    private int dataWidth;
+    // 当前行有值的单元格的列下标和格式化后的值
+    private int[] sparseColumns = new int[16];
+    private final ArrayList<String> sparseValues = new ArrayList<>();
 
     private static final String CSV_FILE_EXTENSION = ".csv";
-    private static final String DEFAULT_SEPARATOR = ",";
+    private static final String XLSB_FILE_EXTENSION = ".xlsb";
+    private static final String XLSX_FILE_EXTENSION = ".xlsx";
+    private static final String XLS_FILE_EXTENSION = ".xls";
+    static final String DEFAULT_SEPARATOR = ",";
 
     public static final int EXCEL_STYLE_ESCAPING = 0;
     public static final int UNIX_STYLE_ESCAPING = 1;
@@ -98,6 +120,10 @@ public class ExcelToCSV {
         if (filesList != null) {
             for(File excelFile : filesList) {
 
+                if(excelFile.getName().endsWith(XLSB_FILE_EXTENSION)) {
+                    this.convertXlsbToCSV(excelFile, strDestination);
+                    continue;
+                }
                 this.openWorkbook(excelFile);
 //                this.convertToCSV();
 
@@ -116,12 +142,58 @@ public class ExcelToCSV {
                     if(!destination.isDirectory()){
                         destination.mkdirs();
                     }
-                    this.saveCSVFile(new File(destination, destinationFile));
+                    File csvFile = new File(destination, destinationFile);
+                    this.saveCSVFile(csvFile);
+                    if(this.profiler != null) {
+                        this.profiler.writeJson(ColumnProfiler.profileFileFor(csvFile), fileName, sheetName);
+                    }
                 }
+                this.workbook.close();
+                this.workbook = null;
+                this.evaluator = null;
             }
         }
     }
 
+    /**
+     * xlsb不经过WorkbookFactory（POI没有xlsb的用户模型），用 XLSBCovertCSVReader 逐个sheet流式转换，
+     * 输出目录结构与其他格式相同：目标目录/工作簿名/sheet名/sheet名.csv
+     */
+    private void convertXlsbToCSV(File excelFile, String strDestination) throws IOException {
+        String fileName = excelFile.getName();
+        String excelFilename = fileName.substring(0, fileName.lastIndexOf("."));
+        System.out.println("Opening binary workbook [" + fileName + "]");
+        try (OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ)) {
+            XLSBCovertCSVReader reader = new XLSBCovertCSVReader(pkg, System.out, null);
+            for (String sheetName : reader.getSheetNames()) {
+                File destination = new File(strDestination + "/" + excelFilename + "/" + sheetName);
+                if(!destination.isDirectory()){
+                    destination.mkdirs();
+                }
+                File csvFile = new File(destination, sheetName + ExcelToCSV.CSV_FILE_EXTENSION);
+                File part = new File(csvFile.getPath() + ".part");
+                ColumnProfiler sheetProfiler = this.profiling ? new ColumnProfiler() : null;
+                reader.setProfiler(sheetProfiler);
+                System.out.println("Saving the CSV file [" + csvFile.getName() + "]");
+                try (BufferedWriter bw = new BufferedWriter(new FileWriter(part))) {
+                    reader.process(sheetName, new CSVRowWriter(bw, this.separator, this.formattingConvention));
+                }
+                catch(IOException | SAXException ex) {
+                    part.delete();
+                    throw ex instanceof IOException ? (IOException) ex
+                            : new IOException("Failed to parse sheet [" + sheetName + "] of " + fileName, ex);
+                }
+                ResumableSheetConverter.moveAtomically(part, csvFile);
+                if(sheetProfiler != null) {
+                    sheetProfiler.writeJson(ColumnProfiler.profileFileFor(csvFile), fileName, sheetName);
+                }
+            }
+        }
+        catch(OpenXML4JException ex) {
+            throw new IOException("Failed to open binary workbook " + fileName, ex);
+        }
+    }
+
     /**
      * Open an Excel workbook ready for conversion.
      *
@@ -134,27 +206,57 @@ public class ExcelToCSV {
     private void openWorkbook(File file) throws FileNotFoundException,
             IOException {
         System.out.println("Opening workbook [" + file.getName() + "]");
-        try (FileInputStream fis = new FileInputStream(file)) {
+        // 按扩展名直接打开，只加载对应格式的类；WorkbookFactory 会探测文件类型并把整个流读入内存。
+        // FormulaEvaluator 在遇到第一个公式单元格时才创建，见 getEvaluator
+        String name = file.getName();
+        if(name.endsWith(XLSX_FILE_EXTENSION)) {
+            OPCPackage pkg;
+            try {
+                pkg = OPCPackage.open(file, PackageAccess.READ);
+            }
+            catch(InvalidFormatException ex) {
+                throw new IOException("Failed to open workbook " + name, ex);
+            }
+            try {
+                this.workbook = new XSSFWorkbook(pkg);
+            }
+            catch(IOException | RuntimeException ex) {
+                // 工作簿没有建立起来，由这里释放只读打开的包
+                pkg.revert();
+                throw ex;
+            }
+        }
+        else if(name.endsWith(XLS_FILE_EXTENSION)) {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                this.workbook = new HSSFWorkbook(fis);
+            }
+        }
+        else {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                this.workbook = WorkbookFactory.create(fis);
+            }
+        }
+        this.formatter = new DataFormatter(true);
+    }
 
-            // Open the workbook and then create the FormulaEvaluator and
-            // DataFormatter instances that will be needed to, respectively,
-            // force evaluation of forumlae found in cells and create a
-            // formatted String encapsulating the cells contents.
-            this.workbook = WorkbookFactory.create(fis);
+    /**
+     * 公式计算器加载的类很多，只在sheet中有公式时创建
+     */
+    private FormulaEvaluator getEvaluator() {
+        if(this.evaluator == null) {
             this.evaluator = this.workbook.getCreationHelper().createFormulaEvaluator();
-            this.formatter = new DataFormatter(true);
         }
+        return this.evaluator;
     }
 
     /**
      * Called to convert the contents of the currently opened workbook into
      * a CSV file.
      */
-    private void convertToCSV() {
+    private void convertToCSV() throws IOException {
         Sheet sheet;
-        Row row;
-        int lastRowNum;
-        this.csvData = new ArrayList<>();
+        this.csvData = new RowStore(RowStore.DEFAULT_SLAB_SIZE, this.rowStoreBudget);
+        this.dataWidth = 0;
 
         System.out.println("Converting files contents to CSV format.");
 
@@ -164,13 +266,7 @@ public class ExcelToCSV {
         // and then iterate through them.
         for(int i = 0; i < numSheets; i++) {
             sheet = this.workbook.getSheetAt(i);
-            if(sheet.getPhysicalNumberOfRows() > 0) {
-                lastRowNum = sheet.getLastRowNum();
-                for(int j = 0; j <= lastRowNum; j++) {
-                    row = sheet.getRow(j);
-                    this.rowToCSV(row);
-                }
-            }
+            this.sheetToCSV(sheet);
         }
     }
 
@@ -179,19 +275,59 @@ public class ExcelToCSV {
      * 功能：转换单个sheet为csv文件
      * @param sheet
      */
-    private void convertToCSV(Sheet sheet){
-        Row row;
-        int lastRowNum;
-        this.csvData = new ArrayList<>();
+    private void convertToCSV(Sheet sheet) throws IOException {
+        this.csvData = new RowStore(RowStore.DEFAULT_SLAB_SIZE, this.rowStoreBudget);
+        this.profiler = this.profiling ? new ColumnProfiler() : null;
+        this.dataWidth = 0;
 
         System.out.println("Converting files contents to CSV format.");
 
-        if(sheet.getPhysicalNumberOfRows() > 0) {
-            lastRowNum = sheet.getLastRowNum();
-            for(int j = 0; j <= lastRowNum; j++) {
-                row = sheet.getRow(j);
-                this.rowToCSV(row);
+        try {
+            this.sheetToCSV(sheet);
+        }
+        catch(IOException | RuntimeException ex) {
+            // 成功时由saveCSVFile关闭，失败时在这里删除已经溢出的临时文件
+            try {
+                this.csvData.close();
+            }
+            catch(IOException closeEx) {
+                ex.addSuppressed(closeEx);
             }
+            throw ex;
+        }
+    }
+
+    /**
+     * 只遍历sheet中实际存在的行。行号之间缺失的行和没有值的行只计数，
+     * 遇到下一个有值的行时作为一段空行写入行存储；时间和内存与有值的单元格数成正比，与行号跨度无关
+     */
+    private void sheetToCSV(Sheet sheet) throws IOException {
+        long emptyRows = 0;
+        int nextRowNum = 0;
+        for(Row row : sheet) {
+            emptyRows += row.getRowNum() - nextRowNum;
+            nextRowNum = row.getRowNum() + 1;
+            if(!this.rowToCSV(row)) {
+                emptyRows++;
+                continue;
+            }
+            this.addEmptyRows(emptyRows);
+            emptyRows = 0;
+            this.csvData.addSparseRow(this.sparseColumns, this.sparseValues);
+            if(this.profiler != null) {
+                this.profiler.addRow(this.sparseColumns, this.sparseValues);
+            }
+        }
+        // 去掉末尾空行时，最后一个有值的行之后的空行不再写入
+        if(!this.trimEmptyEdges) {
+            this.addEmptyRows(emptyRows);
+        }
+    }
+
+    private void addEmptyRows(long count) throws IOException {
+        this.csvData.addEmptyRows(count);
+        if(this.profiler != null) {
+            this.profiler.addEmptyRows(count);
         }
     }
 
@@ -207,189 +343,118 @@ public class ExcelToCSV {
      */
     private void saveCSVFile(File file)
             throws FileNotFoundException, IOException {
-        ArrayList<String> line;
-        StringBuffer buffer;
-        String csvLineElement;
 
-        // Open a writer onto the CSV file.
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+        // Write to a temporary file alongside the target and rename it once
+        // complete so that a half-written CSV never appears under its final
+        // name.
+        File part = new File(file.getPath() + ".part");
+
+        // Open a writer onto the temporary CSV file.
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(part))) {
 
             System.out.println("Saving the CSV file [" + file.getName() + "]");
 
-            // Step through the elements of the ArrayList that was used to hold
-            // all of the data recovered from the Excel workbooks' sheets, rows
-            // and cells.
-            for(int i = 0; i < this.csvData.size(); i++) {
-                buffer = new StringBuffer();
-
-                // Get an element from the ArrayList that contains the data for
-                // the workbook. This element will itself be an ArrayList
-                // containing Strings and each String will hold the data recovered
-                // from a single cell. The for() loop is used to recover elements
-                // from this 'row' ArrayList one at a time and to write the Strings
-                // away to a StringBuffer thus assembling a single line for inclusion
-                // in the CSV file. If a row was empty or if it was short, then
-                // the ArrayList that contains it's data will also be shorter than
-                // some of the others. Therefore, it is necessary to check within
-                // the for loop to ensure that the ArrayList contains data to be
-                // processed. If it does, then an element will be recovered and
-                // appended to the StringBuffer.
-                line = this.csvData.get(i);
-                for(int j = 0; j < this.maxRowWidth; j++) {
-                    if(line.size() > j) {
-                        csvLineElement = line.get(j);
-                        if(csvLineElement != null) {
-                            buffer.append(this.escapeEmbeddedCharacters(
-                                    csvLineElement));
-                        }
-                    }
-                    if(j < (this.maxRowWidth - 1)) {
-                        buffer.append(this.separator);
-                    }
+            // Replay, in order, the rows held in the row store that was used to
+            // hold all of the data recovered from the Excel workbooks' sheets,
+            // rows and cells. Rows are stored sparsely and runs of empty rows
+            // as a single record; the writer pads every row out to the same
+            // number of fields, writing runs of empty fields and rows in bulk.
+            CSVRowWriter csvWriter = new CSVRowWriter(bw, this.separator,
+                    this.formattingConvention);
+            int width = this.trimEmptyEdges ? this.dataWidth : this.maxRowWidth;
+            this.csvData.replay(new RowStore.RowConsumer() {
+                @Override
+                public void accept(List<String> row) throws IOException {
+                    csvWriter.writeRow(row, width);
                 }
 
-                // Once the line is built, write it away to the CSV file.
-                bw.write(buffer.toString().trim());
+                @Override
+                public void acceptEmptyRows(long count) throws IOException {
+                    csvWriter.writeEmptyRows(count, width);
+                }
 
-                // Condition the inclusion of new line characters so as to
-                // avoid an additional, superfluous, new line at the end of
-                // the file.
-                if(i < (this.csvData.size() - 1)) {
-                    bw.newLine();
+                @Override
+                public void acceptSparse(int[] columns, List<String> values) throws IOException {
+                    csvWriter.writeSparseRow(columns, values, width);
                 }
-            }
+            });
+        }
+        catch(IOException ex) {
+            part.delete();
+            throw ex;
+        }
+        finally {
+            this.csvData.close();
         }
+        ResumableSheetConverter.moveAtomically(part, file);
     }
 
     /**
      * Called to convert a row of cells into a line of data that can later be
-     * output to the CSV file.
+     * output to the CSV file. Only the cells that physically exist on the row
+     * are visited and only those with a non-empty value are kept, as a sparse
+     * row in sparseColumns and sparseValues; missing and blank cells become
+     * empty fields when the row is written out.
      *
      * @param row An instance of either the HSSFRow or XSSFRow classes that
      *            encapsulates information about a row of cells recovered from
      *            an Excel workbook.
+     * @return 该行是否有非空的值
      */
-    private void rowToCSV(Row row) {
-        Cell cell;
-        int lastCellNum;
-        ArrayList<String> csvLine = new ArrayList<>();
-
-        // Check to ensure that a row was recovered from the sheet as it is
-        // possible that one or more rows between other populated rows could be
-        // missing - blank. If the row does contain cells then...
-        if(row != null) {
-
-            // Get the index for the right most cell on the row and then
-            // step along the row from left to right recovering the contents
-            // of each cell, converting that into a formatted String and
-            // then storing the String into the csvLine ArrayList.
-            lastCellNum = row.getLastCellNum();
-            for(int i = 0; i <= lastCellNum; i++) {
-                cell = row.getCell(i);
-                if(cell == null) {
-                    csvLine.add("");
-                }
-                else {
-                    if(cell.getCellType() != CellType.FORMULA) {
-                        csvLine.add(this.formatter.formatCellValue(cell));
-                    }
-                    else {
-                        csvLine.add(this.formatter.formatCellValue(cell, this.evaluator));
-                    }
-                }
+    private boolean rowToCSV(Row row) {
+        this.sparseValues.clear();
+        for(Cell cell : row) {
+            String value;
+            if(cell.getCellType() != CellType.FORMULA) {
+                value = this.formatter.formatCellValue(cell);
+            }
+            else {
+                value = this.formatter.formatCellValue(cell, this.getEvaluator());
+            }
+            if(value.isEmpty()) {
+                continue;
             }
-            // Make a note of the index number of the right most cell. This value
-            // will later be used to ensure that the matrix of data in the CSV file
-            // is square.
-            if(lastCellNum > this.maxRowWidth) {
-                this.maxRowWidth = lastCellNum;
+            int size = this.sparseValues.size();
+            if(size == this.sparseColumns.length) {
+                this.sparseColumns = Arrays.copyOf(this.sparseColumns, size * 2);
             }
+            this.sparseColumns[size] = cell.getColumnIndex();
+            this.sparseValues.add(value);
         }
-        this.csvData.add(csvLine);
+        // Make a note of the index number of the right most cell. This value
+        // will later be used to ensure that the matrix of data in the CSV file
+        // is square.
+        int lastCellNum = row.getLastCellNum();
+        if(lastCellNum > this.maxRowWidth) {
+            this.maxRowWidth = lastCellNum;
+        }
+        int size = this.sparseValues.size();
+        if(size > 0 && this.sparseColumns[size - 1] + 1 > this.dataWidth) {
+            this.dataWidth = this.sparseColumns[size - 1] + 1;
+        }
+        return size > 0;
     }
 
     /**
-     * Checks to see whether the field - which consists of the formatted
-     * contents of an Excel worksheet cell encapsulated within a String - contains
-     * any embedded characters that must be escaped. The method is able to
-     * comply with either Excel's or UNIX formatting conventions in the
-     * following manner;
-     *
-     * With regard to UNIX conventions, if the field contains any embedded
-     * field separator or EOL characters they will each be escaped by prefixing
-     * a leading backspace character. These are the only changes that have yet
-     * emerged following some research as being required.
-     *
-     * Excel has other embedded character escaping requirements, some that emerged
-     * from empirical testing, other through research. Firstly, with regards to
-     * any embedded speech marks ("), each occurrence should be escaped with
-     * another speech mark and the whole field then surrounded with speech marks.
-     * Thus if a field holds <em>"Hello" he said</em> then it should be modified
-     * to appear as <em>"""Hello"" he said"</em>. Furthermore, if the field
-     * contains either embedded separator or EOL characters, it should also
-     * be surrounded with speech marks. As a result <em>1,400</em> would become
-     * <em>"1,400"</em> assuming that the comma is the required field separator.
-     * This has one consequence in, if a field contains embedded speech marks
-     * and embedded separator characters, checks for both are not required as the
-     * additional set of speech marks that should be placed around ay field
-     * containing embedded speech marks will also account for the embedded
-     * separator.
-     *
-     * It is worth making one further note with regard to embedded EOL
-     * characters. If the data in a worksheet is exported as a CSV file using
-     * Excel itself, then the field will be surounded with speech marks. If the
-     * resulting CSV file is then re-imports into another worksheet, the EOL
-     * character will result in the original simgle field occupying more than
-     * one cell. This same 'feature' is replicated in this classes behaviour.
-     *
-     * @param field An instance of the String class encapsulating the formatted
-     *        contents of a cell on an Excel worksheet.
-     * @return A String that encapsulates the formatted contents of that
-     *         Excel worksheet cell but with any embedded separator, EOL or
-     *         speech mark characters correctly escaped.
+     * 每个sheet的数据在内存中最多占用的字节数，超过后溢出到临时文件
      */
-    private String escapeEmbeddedCharacters(String field) {
-        StringBuffer buffer;
-
-        // If the fields contents should be formatted to confrom with Excel's
-        // convention....
-        if(this.formattingConvention == ExcelToCSV.EXCEL_STYLE_ESCAPING) {
-
-            // Firstly, check if there are any speech marks (") in the field;
-            // each occurrence must be escaped with another set of spech marks
-            // and then the entire field should be enclosed within another
-            // set of speech marks. Thus, "Yes" he said would become
-            // """Yes"" he said"
-            if(field.contains("\"")) {
-                buffer = new StringBuffer(field.replaceAll("\"", "\\\"\\\""));
-                buffer.insert(0, "\"");
-                buffer.append("\"");
-            }
-            else {
-                // If the field contains either embedded separator or EOL
-                // characters, then escape the whole field by surrounding it
-                // with speech marks.
-                buffer = new StringBuffer(field);
-                if((buffer.indexOf(this.separator)) > -1 ||
-                        (buffer.indexOf("\n")) > -1) {
-                    buffer.insert(0, "\"");
-                    buffer.append("\"");
-                }
-            }
-            return(buffer.toString().trim());
-        }
-        // The only other formatting convention this class obeys is the UNIX one
-        // where any occurrence of the field separator or EOL character will
-        // be escaped by preceding it with a backslash.
-        else {
-            if(field.contains(this.separator)) {
-                field = field.replaceAll(this.separator, ("\\\\" + this.separator));
-            }
-            if(field.contains("\n")) {
-                field = field.replaceAll("\n", "\\\\\n");
-            }
-            return(field);
-        }
+    public void setRowStoreBudget(long rowStoreBudget) {
+        this.rowStoreBudget = rowStoreBudget;
+    }
+
+    /**
+     * 是否去掉每个sheet末尾没有值的行和列：列数按有值的最右一列计算，最后一个有值的行之后的空行不输出。
+     * 默认与Excel的行列范围一致，末尾的空单元格也输出为空字段
+     */
+    public void setTrimEmptyEdges(boolean trimEmptyEdges) {
+        this.trimEmptyEdges = trimEmptyEdges;
+    }
+
+    /**
+     * 是否在转换的同时统计每列的概况，在每个CSV旁边写出 .profile.json
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
     }
 
     /**
@@ -417,11 +482,27 @@ public class ExcelToCSV {
         // with matching names but different extensions - Test.xls and Test.xlsx
         // for example - then the CSV file generated from one will overwrite
         // that generated from the other.
+        // 目标为 "-" 时进入管道模式，CSV写到标准输出，详见 PipeConverter
+        if(args.length >= 2 && PipeConverter.STDIO.equals(args[1])) {
+            PipeConverter.main(args);
+            return;
+        }
         ExcelToCSV converter;
         boolean converted = true;
         long startTime = System.currentTimeMillis();
+        // 可选的 --profile、--trim 参数放在最后
+        boolean profile = false;
+        boolean trim = false;
+        while(args.length > 0 && ("--profile".equals(args[args.length - 1])
+                || "--trim".equals(args[args.length - 1]))) {
+            profile |= "--profile".equals(args[args.length - 1]);
+            trim |= "--trim".equals(args[args.length - 1]);
+            args = Arrays.copyOf(args, args.length - 1);
+        }
         try {
             converter = new ExcelToCSV();
+            converter.setProfiling(profile);
+            converter.setTrimEmptyEdges(trim);
             if(args.length == 2) {
                 // Just the Source File/Folder and Destination Folder were
                 // passed to the main method.
@@ -509,12 +590,13 @@ public class ExcelToCSV {
          * @return A boolean value that indicates whether the file should be
          *         included in the array retirned by the call to the listFiles()
          *         method. In this case true will be returned if the name of the
-         *         file ends with either '.xls' or '.xlsx' and false will be
+         *         file ends with '.xls', '.xlsx' or '.xlsb' and false will be
          *         returned in all other instances.
          */
         @Override
         public boolean accept(File file, String name) {
-            return(name.endsWith(".xls") || name.endsWith(".xlsx"));
+            return(name.endsWith(XLS_FILE_EXTENSION) || name.endsWith(XLSX_FILE_EXTENSION)
+                    || name.endsWith(XLSB_FILE_EXTENSION));
         }
     }
 }
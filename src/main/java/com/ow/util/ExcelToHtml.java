@@ -1,19 +1,23 @@
 package com.ow.util;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.examples.html.HSSFHtmlHelper;
 import org.apache.poi.ss.examples.html.HtmlHelper;
 import org.apache.poi.ss.examples.html.XSSFHtmlHelper;
-import org.apache.poi.ss.format.CellFormat;
 import org.apache.poi.ss.format.CellFormatResult;
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.Cell;
@@ -35,15 +39,15 @@ public class ExcelToHtml {
     private final Workbook wb;
     private final Appendable output;
     private boolean completeHTML;
-    private Formatter out;
-    private boolean gotBounds;
-    private int firstColumn;
-    private int endColumn;
+    private HtmlWriter out;
+    private int threads;
     private HtmlHelper helper;
+    private final HtmlRenderContext renderContext;
 
-    private static final String DEFAULTS_CLASS = "excelDefaults";
-    private static final String COL_HEAD_CLASS = "colHeader";
-    private static final String ROW_HEAD_CLASS = "rowHeader";
+    static final String DEFAULTS_CLASS = "excelDefaults";
+    static final String COL_HEAD_CLASS = "colHeader";
+    static final String ROW_HEAD_CLASS = "rowHeader";
+    static final String SHEET_CLASS = "excelSheet";
 
     private static final Map<HorizontalAlignment, String> HALIGN = mapFor(
             HorizontalAlignment.LEFT, "left",
@@ -134,6 +138,7 @@ public class ExcelToHtml {
         }
         this.wb = wb;
         this.output = output;
+        this.renderContext = new HtmlRenderContext(wb::getCellStyleAt);
         setupColorMap();
     }
 
@@ -157,20 +162,20 @@ public class ExcelToHtml {
         try {
             ensureOut();
             if (completeHTML) {
-                out.format(
-                        "<?xml version=\"1.0\" encoding=\"iso-8859-1\" ?>%n");
-                out.format("<html>%n");
-                out.format("<head>%n");
-                out.format("</head>%n");
-                out.format("<body>%n");
+                out.raw("<?xml version=\"1.0\" encoding=\"iso-8859-1\" ?>").newline();
+                out.raw("<html>").newline();
+                out.raw("<head>").newline();
+                out.raw("</head>").newline();
+                out.raw("<body>").newline();
             }
 
             print();
 
             if (completeHTML) {
-                out.format("</body>%n");
-                out.format("</html>%n");
+                out.raw("</body>").newline();
+                out.raw("</html>").newline();
             }
+            out.flush();
             System.out.println("导入成功！");
         } finally {
             IOUtils.closeQuietly(out);
@@ -188,79 +193,81 @@ public class ExcelToHtml {
     }
 
     private void printInlineStyle() {
-        //out.format("<link href=\"excelStyle.css\" rel=\"stylesheet\" type=\"text/css\">%n");
-        out.format("<style type=\"text/css\">%n");
+        //out.raw("<link href=\"excelStyle.css\" rel=\"stylesheet\" type=\"text/css\">").newline();
+        out.raw("<style type=\"text/css\">").newline();
         printStyles();
-        out.format("</style>%n");
+        out.raw("</style>").newline();
     }
 
     private void ensureOut() {
         if (out == null) {
-            out = new Formatter(output);
+            out = new HtmlWriter(output);
         }
     }
 
     public void printStyles() {
         System.out.println("开始读取excelStyle.css文件...");
-        InputStream InputStream = null;
         ensureOut();
-        InputStream = ExcelToHtml.class.getClassLoader().getResourceAsStream("excelStyle.css");
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(InputStream))){
+        printDefaultStyles(out);
+
+        // css直接取自样式表，不需要在并行渲染之前先遍历一遍所有单元格
+        for (int i = 0; i < wb.getNumCellStyles(); i++) {
+            printStyle(wb.getCellStyleAt(i));
+        }
+    }
+
+    /**
+     * 输出 excelStyle.css 中的默认样式
+     */
+    static void printDefaultStyles(HtmlWriter out) {
+        printResource(out, "excelStyle.css");
+    }
+
+    /**
+     * 把classpath下的资源文件原样输出到页面中
+     */
+    static void printResource(HtmlWriter out, String name) {
+        InputStream InputStream = ExcelToHtml.class.getClassLoader().getResourceAsStream(name);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(InputStream, StandardCharsets.UTF_8))){
             String line;
             while ((line = in.readLine()) != null) {
-                out.format("%s%n", line);
+                out.raw(line).newline();
             }
         } catch (IOException e) {
-            throw new IllegalStateException("Reading standard css", e);
-        }
-
-        // now add css for each used style
-        Set<CellStyle> seen = new HashSet<>();
-        for (int i = 0; i < wb.getNumberOfSheets(); i++) {
-            Sheet sheet = wb.getSheetAt(i);
-            Iterator<Row> rows = sheet.rowIterator();
-            while (rows.hasNext()) {
-                Row row = rows.next();
-                for (Cell cell : row) {
-                    CellStyle style = cell.getCellStyle();
-                    if (!seen.contains(style)) {
-                        printStyle(style);
-                        seen.add(style);
-                    }
-                }
-            }
+            throw new IllegalStateException("Reading " + name, e);
         }
     }
 
     private void printStyle(CellStyle style) {
-        out.format(".%s .%s {%n", DEFAULTS_CLASS, styleName(style));
-        styleContents(style);
-        out.format("}%n");
+        printStyle(out, style, wb.getFontAt(style.getFontIndexAsInt()), helper);
     }
 
-    private void styleContents(CellStyle style) {
-        styleOut("text-align", style.getAlignment(), HALIGN);
-        styleOut("vertical-align", style.getVerticalAlignment(), VALIGN);
-        fontStyle(style);
-        borderStyles(style);
-        helper.colorStyles(style, out);
+    /**
+     * 输出一个单元格样式对应的css，DOM和流式两种渲染方式共用
+     */
+    static void printStyle(HtmlWriter out, CellStyle style, Font font, HtmlHelper helper) {
+        out.raw('.').raw(DEFAULTS_CLASS).raw(" .").raw(styleName(style.getIndex())).raw(" {").newline();
+        styleOut(out, "text-align", style.getAlignment(), HALIGN);
+        styleOut(out, "vertical-align", style.getVerticalAlignment(), VALIGN);
+        fontStyle(out, font);
+        borderStyles(out, style);
+        helper.colorStyles(style, out.formatter());
+        out.raw("}").newline();
     }
 
-    private void borderStyles(CellStyle style) {
-        styleOut("border-left", style.getBorderLeft(), BORDER);
-        styleOut("border-right", style.getBorderRight(), BORDER);
-        styleOut("border-top", style.getBorderTop(), BORDER);
-        styleOut("border-bottom", style.getBorderBottom(), BORDER);
+    private static void borderStyles(HtmlWriter out, CellStyle style) {
+        styleOut(out, "border-left", style.getBorderLeft(), BORDER);
+        styleOut(out, "border-right", style.getBorderRight(), BORDER);
+        styleOut(out, "border-top", style.getBorderTop(), BORDER);
+        styleOut(out, "border-bottom", style.getBorderBottom(), BORDER);
     }
 
-    private void fontStyle(CellStyle style) {
-        Font font = wb.getFontAt(style.getFontIndexAsInt());
-
+    private static void fontStyle(HtmlWriter out, Font font) {
         if (font.getBold()) {
-            out.format("  font-weight: bold;%n");
+            out.raw("  font-weight: bold;").newline();
         }
         if (font.getItalic()) {
-            out.format("  font-style: italic;%n");
+            out.raw("  font-style: italic;").newline();
         }
 
         int fontheight = font.getFontHeightInPoints();
@@ -268,26 +275,23 @@ public class ExcelToHtml {
             //fix for stupid ol Windows
             fontheight = 10;
         }
-        out.format("  font-size: %dpt;%n", fontheight);
+        out.raw("  font-size: ").number(fontheight).raw("pt;").newline();
 
         // Font color is handled with the other colors
     }
 
-    private String styleName(CellStyle style) {
-        if (style == null) {
-            style = wb.getCellStyleAt((short) 0);
-        }
+    static String styleName(int styleIndex) {
         StringBuilder sb = new StringBuilder();
         try (Formatter fmt = new Formatter(sb)) {
-            fmt.format("style_%02x", style.getIndex());
+            fmt.format("style_%02x", styleIndex);
             return fmt.toString();
         }
     }
 
-    private <K> void styleOut(String attr, K key, Map<K, String> mapping) {
+    private static <K> void styleOut(HtmlWriter out, String attr, K key, Map<K, String> mapping) {
         String value = mapping.get(key);
         if (value != null) {
-            out.format("  %s: %s;%n", attr, value);
+            out.raw("  ").raw(attr).raw(": ").raw(value).raw(';').newline();
         }
     }
 
@@ -301,79 +305,80 @@ public class ExcelToHtml {
 
     private void printSheets() {
         ensureOut();
-        Sheet sheet = wb.getSheetAt(0);
-        printSheet(sheet);
-    }
+        int numSheets = wb.getNumberOfSheets();
+        if (numSheets == 1) {
+            printSheet(wb.getSheetAt(0));
+            return;
+        }
 
-    public void printSheet(Sheet sheet) {
-        ensureOut();
-        Map<Integer, Integer> widths = computeWidths(sheet);
-        int tableWidth = widths.get(IDX_TABLE_WIDTH);
-        out.format("<table class=%s style=\"width:%dpx;\">%n", DEFAULTS_CLASS, tableWidth);
-        printCols(widths);
-        printSheetContent(sheet);
-        out.format("</table>%n");
+        // 各sheet在线程池中并行渲染到各自的缓冲区，再按原顺序拼接到输出中。
+        // 样式先全部解析好，渲染线程只读共享的样式缓存
+        renderContext.preload(wb.getNumCellStyles());
+        int threads = this.threads > 0 ? this.threads
+                : Math.min(numSheets, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<StringBuilder>> results = new ArrayList<>(numSheets);
+            for (int i = 0; i < numSheets; i++) {
+                final Sheet sheet = wb.getSheetAt(i);
+                results.add(executor.submit(() -> {
+                    StringBuilder buffer = new StringBuilder();
+                    HtmlWriter sheetOut = new HtmlWriter(buffer);
+                    new SheetRenderer(sheet, sheetOut).print();
+                    sheetOut.flush();
+                    return buffer;
+                }));
+            }
+            for (int i = 0; i < numSheets; i++) {
+                printSheetSection(wb.getSheetAt(i), results.get(i));
+                // 拼接完成的sheet立即释放缓冲区
+                results.set(i, null);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private Map<Integer, Integer> computeWidths(Sheet sheet) {
-        Map<Integer, Integer> ret = new TreeMap<>();
-        int tableWidth = 0;
-
-        ensureColumnBounds(sheet);
-
-        // compute width of the header column
-        int lastRowNum = sheet.getLastRowNum();
-        int headerCharCount = String.valueOf(lastRowNum).length();
-        int headerColWidth = widthToPixels((headerCharCount + 1) * 256.0);
-        ret.put(IDX_HEADER_COL_WIDTH, headerColWidth);
-        tableWidth += headerColWidth;
-
-        for (int i = firstColumn; i < endColumn; i++) {
-            int colWidth = widthToPixels(sheet.getColumnWidth(i));
-            ret.put(i, colWidth);
-            tableWidth += colWidth;
+    private void printSheetSection(Sheet sheet, Future<StringBuilder> result) {
+        StringBuilder buffer;
+        try {
+            buffer = result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering sheet " + sheet.getSheetName(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Rendering sheet " + sheet.getSheetName(), cause);
         }
-
-        ret.put(IDX_TABLE_WIDTH, tableWidth);
-        return ret ;
+        out.raw("<div class=").raw(SHEET_CLASS).raw('>').newline();
+        out.raw("<h3>").text(sheet.getSheetName()).raw("</h3>").newline();
+        out.append(buffer);
+        out.raw("</div>").newline();
     }
 
-    protected int widthToPixels(final double widthUnits) {
-        return Math.toIntExact(Math.round(widthUnits * 9 / 256));
+    /**
+     * 设置多sheet并行渲染的线程数，默认取sheet数和CPU核数中的较小值
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
     }
 
-    private void printCols(Map<Integer, Integer> widths) {
-        int headerColWidth = widths.get(IDX_HEADER_COL_WIDTH);
-        out.format("<col style=\"width:%dpx\"/>%n", headerColWidth);
-        for (int i = firstColumn; i < endColumn; i++) {
-            int colWidth = widths.get(i);
-            out.format("<col style=\"width:%dpx;\"/>%n", colWidth);
-        }
+    public void printSheet(Sheet sheet) {
+        ensureOut();
+        new SheetRenderer(sheet, out).print();
     }
 
-    private void ensureColumnBounds(Sheet sheet) {
-        if (gotBounds) {
-            return;
-        }
-
-        Iterator<Row> iter = sheet.rowIterator();
-        firstColumn = (iter.hasNext() ? Integer.MAX_VALUE : 0);
-        endColumn = 0;
-        while (iter.hasNext()) {
-            Row row = iter.next();
-            short firstCell = row.getFirstCellNum();
-            if (firstCell >= 0) {
-                firstColumn = Math.min(firstColumn, firstCell);
-                endColumn = Math.max(endColumn, row.getLastCellNum());
-            }
-        }
-        gotBounds = true;
+    protected static int widthToPixels(final double widthUnits) {
+        return Math.toIntExact(Math.round(widthUnits * 9 / 256));
     }
 
-    private void printColumnHeads() {
-        out.format("<thead>%n");
-        out.format("  <tr class=%s>%n", COL_HEAD_CLASS);
-        out.format("    <th class=%s>&#x25CA;</th>%n", COL_HEAD_CLASS);
+    static void printColumnHeads(HtmlWriter out, int firstColumn, int endColumn) {
+        out.raw("<thead>").newline();
+        out.raw("  <tr class=").raw(COL_HEAD_CLASS).raw('>').newline();
+        out.raw("    <th class=").raw(COL_HEAD_CLASS).raw(">&#x25CA;</th>").newline();
         //noinspection UnusedDeclaration
         StringBuilder colName = new StringBuilder();
         for (int i = firstColumn; i < endColumn; i++) {
@@ -383,65 +388,145 @@ public class ExcelToHtml {
                 colName.insert(0, (char) ('A' + cnum % 26));
                 cnum /= 26;
             } while (cnum > 0);
-            out.format("    <th class=%s>%s</th>%n", COL_HEAD_CLASS, colName);
+            out.raw("    <th class=").raw(COL_HEAD_CLASS).raw('>').text(colName).raw("</th>").newline();
+        }
+        out.raw("  </tr>").newline();
+        out.raw("</thead>").newline();
+    }
+
+    static void printTableStart(HtmlWriter out, int tableWidth) {
+        out.raw("<table class=").raw(DEFAULTS_CLASS).raw(" style=\"width:").number(tableWidth)
+                .raw("px;\">").newline();
+    }
+
+    static void printHeaderCol(HtmlWriter out, int width) {
+        out.raw("<col style=\"width:").number(width).raw("px\"/>").newline();
+    }
+
+    static void printCol(HtmlWriter out, int width) {
+        out.raw("<col style=\"width:").number(width).raw("px;\"/>").newline();
+    }
+
+    static void printRowHead(HtmlWriter out, int rowNum) {
+        out.raw("    <td class=").raw(ROW_HEAD_CLASS).raw('>').number(rowNum).raw("</td>").newline();
+    }
+
+    /**
+     * 输出一个单元格，内容做html转义，空内容输出为&amp;nbsp;
+     */
+    static void printCell(HtmlWriter out, String className, String attrs, String content) {
+        out.raw("    <td class=").raw(className).raw(' ').raw(attrs).raw('>');
+        if (content == null || content.isEmpty()) {
+            out.raw("&nbsp;");
+        } else {
+            out.text(content);
         }
-        out.format("  </tr>%n");
-        out.format("</thead>%n");
+        out.raw("</td>").newline();
     }
 
-    private void printSheetContent(Sheet sheet) {
-        printColumnHeads();
+    /**
+     * 渲染单个sheet，列范围和列宽等状态都属于各自的sheet，不会串到下一个sheet
+     */
+    class SheetRenderer {
+
+        private final Sheet sheet;
+        private final HtmlWriter out;
+        private int firstColumn;
+        private int endColumn;
 
-        out.format("<tbody>%n");
-        Iterator<Row> rows = sheet.rowIterator();
-        while (rows.hasNext()) {
-            Row row = rows.next();
+        SheetRenderer(Sheet sheet, HtmlWriter out) {
+            this.sheet = sheet;
+            this.out = out;
+        }
+
+        void print() {
+            Map<Integer, Integer> widths = computeWidths();
+            int tableWidth = widths.get(IDX_TABLE_WIDTH);
+            printTableStart(out, tableWidth);
+            printCols(widths);
+            printSheetContent();
+            out.raw("</table>").newline();
+        }
+
+        private Map<Integer, Integer> computeWidths() {
+            Map<Integer, Integer> ret = new TreeMap<>();
+            int tableWidth = 0;
+
+            computeColumnBounds();
+
+            // compute width of the header column
+            int lastRowNum = sheet.getLastRowNum();
+            int headerCharCount = String.valueOf(lastRowNum).length();
+            int headerColWidth = widthToPixels((headerCharCount + 1) * 256.0);
+            ret.put(IDX_HEADER_COL_WIDTH, headerColWidth);
+            tableWidth += headerColWidth;
 
-            out.format("  <tr>%n");
-            out.format("    <td class=%s>%d</td>%n", ROW_HEAD_CLASS,
-                    row.getRowNum() + 1);
             for (int i = firstColumn; i < endColumn; i++) {
-                String content = "&nbsp;";
-                String attrs = "";
-                CellStyle style = null;
-                if (i >= row.getFirstCellNum() && i < row.getLastCellNum()) {
-                    Cell cell = row.getCell(i);
-                    if (cell != null) {
-                        style = cell.getCellStyle();
-                        attrs = tagStyle(cell, style);
-                        //Set the value that is rendered for the cell
-                        //also applies the format
-                        CellFormat cf = CellFormat.getInstance(
-                                style.getDataFormatString());
-                        CellFormatResult result = cf.apply(cell);
-                        content = result.text; //never null
-                        if (content.isEmpty()) {
-                            content = "&nbsp;";
-                        }
-                    }
+                int colWidth = widthToPixels(sheet.getColumnWidth(i));
+                ret.put(i, colWidth);
+                tableWidth += colWidth;
+            }
+
+            ret.put(IDX_TABLE_WIDTH, tableWidth);
+            return ret ;
+        }
+
+        private void printCols(Map<Integer, Integer> widths) {
+            int headerColWidth = widths.get(IDX_HEADER_COL_WIDTH);
+            printHeaderCol(out, headerColWidth);
+            for (int i = firstColumn; i < endColumn; i++) {
+                int colWidth = widths.get(i);
+                printCol(out, colWidth);
+            }
+        }
+
+        private void computeColumnBounds() {
+            Iterator<Row> iter = sheet.rowIterator();
+            firstColumn = (iter.hasNext() ? Integer.MAX_VALUE : 0);
+            endColumn = 0;
+            while (iter.hasNext()) {
+                Row row = iter.next();
+                short firstCell = row.getFirstCellNum();
+                if (firstCell >= 0) {
+                    firstColumn = Math.min(firstColumn, firstCell);
+                    endColumn = Math.max(endColumn, row.getLastCellNum());
                 }
-                out.format("    <td class=%s %s>%s</td>%n", styleName(style),
-                        attrs, content);
             }
-            out.format("  </tr>%n");
         }
-        out.format("</tbody>%n");
-    }
-
-    private String tagStyle(Cell cell, CellStyle style) {
-        if (style.getAlignment() == HorizontalAlignment.GENERAL) {
-            switch (ultimateCellType(cell)) {
-                case STRING:
-                    return "style=\"text-align: left;\"";
-                case BOOLEAN:
-                case ERROR:
-                    return "style=\"text-align: center;\"";
-                case NUMERIC:
-                default:
-                    // "right" is the default
-                    break;
+
+        private void printSheetContent() {
+            printColumnHeads(out, firstColumn, endColumn);
+            HtmlRenderContext.StyleEntry defaultEntry = renderContext.get(0);
+
+            out.raw("<tbody>").newline();
+            Iterator<Row> rows = sheet.rowIterator();
+            while (rows.hasNext()) {
+                Row row = rows.next();
+
+                out.raw("  <tr>").newline();
+                printRowHead(out, row.getRowNum() + 1);
+                short firstCellNum = row.getFirstCellNum();
+                short lastCellNum = row.getLastCellNum();
+                for (int i = firstColumn; i < endColumn; i++) {
+                    String content = "";
+                    String attrs = "";
+                    HtmlRenderContext.StyleEntry entry = defaultEntry;
+                    if (i >= firstCellNum && i < lastCellNum) {
+                        Cell cell = row.getCell(i);
+                        if (cell != null) {
+                            entry = renderContext.get(cell.getCellStyle().getIndex());
+                            attrs = entry.alignAttrs(ultimateCellType(cell));
+                            //Set the value that is rendered for the cell
+                            //also applies the format
+                            CellFormatResult result = entry.apply(cell);
+                            content = result.text; //never null
+                        }
+                    }
+                    printCell(out, entry.className, attrs, content);
+                }
+                out.raw("  </tr>").newline();
             }
+            out.raw("</tbody>").newline();
         }
-        return "";
     }
 }
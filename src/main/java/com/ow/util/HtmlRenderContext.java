@@ -0,0 +1,176 @@
+package com.ow.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntFunction;
+
+import org.apache.poi.ss.format.CellFormat;
+import org.apache.poi.ss.format.CellFormatResult;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.util.LocaleUtil;
+
+/**
+ * html渲染上下文：每个单元格样式按下标只解析一次，缓存css类名、解析好的 CellFormat
+ * 和默认对齐属性，逐单元格输出时只做查表和取值格式化。
+ * get() 本身不是线程安全的；多线程共享时需先调用 preload() 把全部样式解析好，之后只读。
+ */
+class HtmlRenderContext {
+
+    private static final String ALIGN_LEFT = "style=\"text-align: left;\"";
+    private static final String ALIGN_CENTER = "style=\"text-align: center;\"";
+
+    private static final String GENERAL = "General";
+    // “常规”和“@”格式每次格式化都新建格式化器，可以共享；其余格式的 CellFormat 持有 DecimalFormat、
+    // SimpleDateFormat 等非线程安全的对象，而POI按格式串共享实例，所以每个线程通过私有构造器各自创建一份。
+    // 构造器不可用时退回共享实例加锁
+    private static final Constructor<CellFormat> FORMAT_CONSTRUCTOR = findFormatConstructor();
+
+    private final IntFunction<? extends CellStyle> styleLookup;
+    private StyleEntry[] entries = new StyleEntry[64];
+
+    /**
+     * @param styleLookup 按下标取单元格样式，如 wb::getCellStyleAt 或 stylesTable::getStyleAt
+     */
+    HtmlRenderContext(IntFunction<? extends CellStyle> styleLookup) {
+        this.styleLookup = styleLookup;
+    }
+
+    /**
+     * 预先解析下标小于count的全部样式，之后多个线程可以同时只读访问
+     */
+    void preload(int count) {
+        for (int i = 0; i < count; i++) {
+            get(i);
+        }
+    }
+
+    StyleEntry get(int styleIndex) {
+        if (styleIndex >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(styleIndex + 1, entries.length * 2));
+        }
+        StyleEntry entry = entries[styleIndex];
+        if (entry == null) {
+            entry = new StyleEntry(styleIndex, styleLookup.apply(styleIndex));
+            entries[styleIndex] = entry;
+        }
+        return entry;
+    }
+
+    private static Constructor<CellFormat> findFormatConstructor() {
+        try {
+            Constructor<CellFormat> constructor = CellFormat.class.getDeclaredConstructor(Locale.class, String.class);
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isThreadSafe(String pattern) {
+        return GENERAL.equals(pattern) || "@".equals(pattern);
+    }
+
+    /**
+     * 创建一个不与其他线程共享的 CellFormat，与 CellFormat.getInstance(pattern) 等价
+     */
+    private static CellFormat newFormat(String pattern) {
+        try {
+            return FORMAT_CONSTRUCTOR.newInstance(LocaleUtil.getUserLocale(), pattern);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Creating format " + pattern, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Creating format " + pattern, e);
+        }
+    }
+
+    /**
+     * 一个单元格样式预先计算好的渲染信息
+     */
+    static final class StyleEntry {
+
+        final CellStyle style;
+        final String className;
+        final short formatIndex;
+        final String formatString;
+        final boolean dateFormat;
+        private final boolean generalAlignment;
+        // POI按格式串缓存并共享的实例，threadFormats为null时使用；locked表示共享实例需要加锁
+        private final CellFormat sharedFormat;
+        private final ThreadLocal<CellFormat> threadFormats;
+        private final boolean locked;
+
+        StyleEntry(int styleIndex, CellStyle style) {
+            this.style = style;
+            this.className = ExcelToHtml.styleName(styleIndex);
+            this.formatIndex = style.getDataFormat();
+            String fmt = style.getDataFormatString();
+            if (fmt == null) {
+                fmt = BuiltinFormats.getBuiltinFormat(this.formatIndex);
+            }
+            this.formatString = fmt;
+            String pattern = fmt == null ? GENERAL : fmt;
+            this.sharedFormat = CellFormat.getInstance(pattern);
+            this.threadFormats = isThreadSafe(pattern) || FORMAT_CONSTRUCTOR == null ? null
+                    : ThreadLocal.withInitial(() -> newFormat(pattern));
+            this.locked = !isThreadSafe(pattern) && FORMAT_CONSTRUCTOR == null;
+            this.dateFormat = DateUtil.isADateFormat(this.formatIndex, fmt);
+            this.generalAlignment = style.getAlignment() == HorizontalAlignment.GENERAL;
+        }
+
+        /**
+         * 按样式的数据格式格式化单元格的值
+         */
+        CellFormatResult apply(Cell cell) {
+            CellFormat format = threadFormats != null ? threadFormats.get() : sharedFormat;
+            if (!locked) {
+                return format.apply(cell);
+            }
+            synchronized (format) {
+                return format.apply(cell);
+            }
+        }
+
+        /**
+         * 按样式的数据格式格式化一个值（数值、日期、布尔或文本）
+         */
+        CellFormatResult apply(Object value) {
+            CellFormat format = threadFormats != null ? threadFormats.get() : sharedFormat;
+            if (!locked) {
+                return format.apply(value);
+            }
+            synchronized (format) {
+                return format.apply(value);
+            }
+        }
+
+        /**
+         * 对齐方式为“常规”时，按单元格类型决定对齐：文本靠左，布尔和错误居中，数字使用默认的靠右
+         */
+        String alignAttrs(CellType type) {
+            if (generalAlignment) {
+                switch (type) {
+                    case STRING:
+                        return ALIGN_LEFT;
+                    case BOOLEAN:
+                    case ERROR:
+                        return ALIGN_CENTER;
+                    case NUMERIC:
+                    default:
+                        // "right" is the default
+                        break;
+                }
+            }
+            return "";
+        }
+    }
+}
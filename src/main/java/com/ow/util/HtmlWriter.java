@@ -0,0 +1,220 @@
+package com.ow.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Formatter;
+
+/**
+ * html输出：标签等固定片段原样追加，单元格文本通过查表一次完成转义，
+ * 全部先写入一块可复用的大字符缓冲区，满了再整块写到目标 Appendable。
+ * 代替逐单元格的 Formatter.format，避免格式串解析和可变参数装箱。
+ */
+class HtmlWriter implements Appendable, Flushable, Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final String NEWLINE = System.lineSeparator();
+
+    // ASCII范围内需要转义的字符，其余字符原样输出
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        ESCAPES['&'] = "&amp;";
+        ESCAPES['<'] = "&lt;";
+        ESCAPES['>'] = "&gt;";
+        ESCAPES['"'] = "&quot;";
+        ESCAPES['\''] = "&#39;";
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Appendable target;
+    private final char[] buffer;
+    private int pos;
+    private Formatter formatter;
+
+    HtmlWriter(Appendable target) {
+        this(target, DEFAULT_BUFFER_SIZE);
+    }
+
+    HtmlWriter(Appendable target, int bufferSize) {
+        this.target = target;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * 原样追加固定片段（标签、属性、css等）
+     */
+    HtmlWriter raw(String s) {
+        int len = s.length();
+        int off = 0;
+        while (len > 0) {
+            if (pos == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(len, buffer.length - pos);
+            s.getChars(off, off + n, buffer, pos);
+            pos += n;
+            off += n;
+            len -= n;
+        }
+        return this;
+    }
+
+    HtmlWriter raw(char c) {
+        if (pos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[pos++] = c;
+        return this;
+    }
+
+    /**
+     * 追加整数，不经过装箱和格式化
+     */
+    HtmlWriter number(long n) {
+        if (n == Long.MIN_VALUE) {
+            return raw(Long.toString(n));
+        }
+        if (n < 0) {
+            raw('-');
+            n = -n;
+        }
+        if (buffer.length - pos < 20) {
+            flushBuffer();
+        }
+        int start = pos;
+        do {
+            buffer[pos++] = (char) ('0' + (n % 10));
+            n /= 10;
+        } while (n > 0);
+        // 反转刚写入的数字
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            char t = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = t;
+        }
+        return this;
+    }
+
+    /**
+     * 追加文本内容，一遍扫描完成html转义
+     */
+    HtmlWriter text(CharSequence s) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            String escape = c < 128 ? ESCAPES[c] : null;
+            if (escape != null) {
+                raw(escape);
+            } else {
+                if (pos == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[pos++] = c;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 追加 &lt;script&gt; 中JS字符串字面量的内容（不含引号）。脚本中不解码html实体，不能用 text 转义：
+     * 引号、反斜杠、换行和U+2028/2029按JS转义，'&lt;' 写成 \\u003c，避免出现 &lt;/script&gt;
+     */
+    HtmlWriter jsString(CharSequence s) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    raw("\\\\");
+                    break;
+                case '"':
+                    raw("\\\"");
+                    break;
+                case '\'':
+                    raw("\\'");
+                    break;
+                case '\n':
+                    raw("\\n");
+                    break;
+                case '\r':
+                    raw("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '\u2028' || c == '\u2029') {
+                        raw("\\u").raw(HEX[c >> 12 & 0xf]).raw(HEX[c >> 8 & 0xf]).raw(HEX[c >> 4 & 0xf])
+                                .raw(HEX[c & 0xf]);
+                    } else {
+                        raw(c);
+                    }
+                    break;
+            }
+        }
+        return this;
+    }
+
+    HtmlWriter newline() {
+        return raw(NEWLINE);
+    }
+
+    /**
+     * 给只接受 Formatter 的接口使用（如 HtmlHelper.colorStyles），内容同样写入本缓冲区
+     */
+    Formatter formatter() {
+        if (formatter == null) {
+            formatter = new Formatter(this);
+        }
+        return formatter;
+    }
+
+    @Override
+    public HtmlWriter append(CharSequence csq) {
+        return raw(String.valueOf(csq));
+    }
+
+    @Override
+    public HtmlWriter append(CharSequence csq, int start, int end) {
+        return raw(String.valueOf(csq).substring(start, end));
+    }
+
+    @Override
+    public HtmlWriter append(char c) {
+        return raw(c);
+    }
+
+    private void flushBuffer() {
+        if (pos == 0) {
+            return;
+        }
+        try {
+            if (target instanceof Writer) {
+                ((Writer) target).write(buffer, 0, pos);
+            } else {
+                target.append(CharBuffer.wrap(buffer, 0, pos));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pos = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (target instanceof Flushable) {
+            ((Flushable) target).flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (target instanceof Closeable) {
+            ((Closeable) target).close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.ow.util;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 把sheet的每一行输出为一行JSON（JSON Lines格式）：
+ * <pre>{"row":1,"cells":["a","b",null]}</pre>
+ * 空单元格输出为null，行号从1开始，与Excel中看到的一致。
+ */
+public class JsonLinesRowWriter implements RowHandler, Flushable {
+
+    private final Writer writer;
+    private final StringBuilder buffer = new StringBuilder();
+
+    public JsonLinesRowWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void handleRow(int rowNum, String[] record) throws IOException {
+        buffer.setLength(0);
+        buffer.append("{\"row\":").append(rowNum + 1).append(",\"cells\":[");
+        for (int i = 0; i < record.length; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            appendJsonString(buffer, record[i]);
+        }
+        buffer.append("]}\n");
+        writer.write(buffer.toString());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    static void appendJsonString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,399 @@
+package com.ow.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.model.StylesTable;
+import org.xml.sax.SAXException;
+
+/**
+ * 单个大sheet的并行解析（见 XLSXCovertCSVReader.setParallelism），输出与顺序解析逐行相同。
+ *
+ * 切块线程把解压后的sheet XML按 blockSize 读成块，每块在最后一个带 r 属性的 &lt;row 之前截断，
+ * 截断处之后的半行并入下一块，所以每块只含完整的行，块的第一行有行号。
+ * 工作线程给块拼上sheet开头到 &lt;sheetData&gt; 的部分和结束标签，用与顺序解析相同的 MyXSSFSheetHandler
+ * 解析成行批次；调用线程按块的顺序（即行号顺序）把行批次交给输出端。
+ *
+ * 同时在途的块数为线程数的两倍，内存约为 块大小 × 在途块数 再加上这些块解析出的行。
+ * 共享字符串表和样式表只读共享；每个工作线程有自己的字符串缓存，只用来得到SST下标，
+ * 编码后的字节仍由输出端的缓存在调用线程中处理。
+ *
+ * 第一行没有 r 属性、找不到 sheetData 或sheet开头超过一块时按顺序解析。
+ */
+class ParallelSheetParser {
+
+    static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private static final Future<RowBatch> END = completed();
+
+    private final XLSXCovertCSVReader reader;
+    private final StylesTable styles;
+    private final ReadOnlySharedStringsTable strings;
+    private final int threads;
+    private final int blockSize;
+    private final ThreadLocal<SharedStringCache> workerCache = ThreadLocal.withInitial(
+            () -> new SharedStringCache(SharedStringCache.DEFAULT_CAPACITY, SharedStringCache.DEFAULT_MAX_CHARS, null));
+
+    // sheet开头到 <sheetData> 开始标签结束，以及补在块后面的结束标签
+    private byte[] header;
+    private byte[] closing;
+
+    ParallelSheetParser(XLSXCovertCSVReader reader, StylesTable styles, ReadOnlySharedStringsTable strings,
+                        int threads, int blockSize) {
+        this.reader = reader;
+        this.styles = styles;
+        this.strings = strings;
+        this.threads = threads;
+        this.blockSize = blockSize;
+    }
+
+    void parse(InputStream in, RowHandler rowHandler)
+            throws IOException, ParserConfigurationException, SAXException {
+        byte[] first = new byte[blockSize];
+        int length = readFully(in, first, 0);
+        int headerEnd = findSheetData(first, length);
+        if (headerEnd < 0 || !firstRowHasNumber(first, headerEnd, length)) {
+            reader.parseFragment(styles, strings,
+                    new SequenceInputStream(new ByteArrayInputStream(first, 0, length), in), rowHandler);
+            return;
+        }
+        header = Arrays.copyOf(first, headerEnd);
+
+        BlockingQueue<Future<RowBatch>> pending = new ArrayBlockingQueue<>(threads * 2);
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "sheet-parse-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread splitter = new Thread(() -> split(in, first, headerEnd, length, workers, pending), "sheet-split");
+        splitter.setDaemon(true);
+        splitter.start();
+        try {
+            int width = 0;
+            for (RowBatch batch = take(pending); batch != null; batch = take(pending)) {
+                width = batch.replay(rowHandler, width);
+            }
+        } finally {
+            splitter.interrupt();
+            workers.shutdownNow();
+            try {
+                // 切块线程还在读调用方的流，等它结束后调用方才能关闭流
+                splitter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 切块线程：按顺序提交每块的解析任务，最后放入结束标记；失败时放入失败的结果
+     */
+    private void split(InputStream in, byte[] data, int start, int filled, ExecutorService workers,
+                       BlockingQueue<Future<RowBatch>> pending) {
+        try {
+            boolean eof = filled < data.length;
+            while (!eof) {
+                int cut = lastRowStart(data, start, filled);
+                if (cut < 0) {
+                    // 块中没有可以截断的行（一行比块还大），扩大后继续读
+                    data = Arrays.copyOf(data, data.length * 2);
+                    filled += readFully(in, data, filled);
+                    eof = filled < data.length;
+                    continue;
+                }
+                submit(workers, pending, data, start, cut - start, false);
+                int rest = filled - cut;
+                byte[] next = new byte[rest + blockSize];
+                System.arraycopy(data, cut, next, 0, rest);
+                data = next;
+                start = 0;
+                filled = rest + readFully(in, next, rest);
+                eof = filled < next.length;
+            }
+            submit(workers, pending, data, start, filled - start, true);
+            pending.put(END);
+        } catch (InterruptedException e) {
+            // 调用线程已经结束
+        } catch (Throwable t) {
+            FutureTask<RowBatch> failed = new FutureTask<>(() -> {
+                throw t instanceof Exception ? (Exception) t : new ExecutionException(t);
+            });
+            failed.run();
+            try {
+                pending.put(failed);
+            } catch (InterruptedException e) {
+                // 调用线程已经结束
+            }
+        }
+    }
+
+    private void submit(ExecutorService workers, BlockingQueue<Future<RowBatch>> pending, byte[] data, int offset,
+                        int length, boolean last) throws InterruptedException {
+        pending.put(workers.submit(() -> parseBlock(data, offset, length, last)));
+    }
+
+    /**
+     * 工作线程：解析一块，最后一块本身带有 sheetData 之后的部分
+     */
+    private RowBatch parseBlock(byte[] data, int offset, int length, boolean last) throws Exception {
+        InputStream xml = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(header),
+                new ByteArrayInputStream(data, offset, length),
+                new ByteArrayInputStream(last ? new byte[0] : closing))));
+        RowBatch batch = new RowBatch(workerCache.get());
+        batch.width = reader.parseFragment(styles, strings, xml, batch);
+        return batch;
+    }
+
+    private static RowBatch take(BlockingQueue<Future<RowBatch>> pending)
+            throws IOException, ParserConfigurationException, SAXException {
+        try {
+            return pending.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for parsed rows");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExecutionException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Parallel parsing failed", cause);
+        }
+    }
+
+    /**
+     * 找 sheetData 开始标签，记下它和根元素的名称用于拼结束标签
+     *
+     * @return 开始标签之后的偏移，找不到或 sheetData 为空元素时为-1
+     */
+    private int findSheetData(byte[] data, int length) {
+        String root = null;
+        for (int i = 0; i < length; i++) {
+            if (data[i] != '<' || i + 1 >= length || data[i + 1] == '?' || data[i + 1] == '!'
+                    || data[i + 1] == '/') {
+                continue;
+            }
+            int nameEnd = nameEnd(data, i + 1, length);
+            String name = new String(data, i + 1, nameEnd - i - 1, StandardCharsets.UTF_8);
+            if (root == null) {
+                root = name;
+            }
+            if (!isLocalName(data, i + 1, nameEnd, "sheetData")) {
+                continue;
+            }
+            int end = tagEnd(data, nameEnd, length);
+            if (end < 0 || data[end - 1] == '/') {
+                return -1;
+            }
+            closing = ("</" + name + "></" + root + ">").getBytes(StandardCharsets.UTF_8);
+            return end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 第一个 row 标签是否完整且带 r 属性；行号是从上一行推出来的sheet无法从中间开始解析
+     */
+    private static boolean firstRowHasNumber(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == '<' && i + 1 < to && data[i + 1] != '/') {
+                int nameEnd = nameEnd(data, i + 1, to);
+                if (isLocalName(data, i + 1, nameEnd, "row")) {
+                    return hasRowNumber(data, nameEnd, to);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从后往前找最后一个完整且带 r 属性的 row 标签
+     *
+     * @return 该标签 &lt; 的偏移，没有或只在from处时为-1
+     */
+    private static int lastRowStart(byte[] data, int from, int to) {
+        for (int i = to - 1; i > from; i--) {
+            if (data[i] != '<') {
+                continue;
+            }
+            int nameEnd = nameEnd(data, i + 1, to);
+            if (isLocalName(data, i + 1, nameEnd, "row") && hasRowNumber(data, nameEnd, to)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从标签名之后读到 &gt;，是否有名为 r 的属性；标签不完整时为false
+     */
+    private static boolean hasRowNumber(byte[] data, int i, int to) {
+        boolean found = false;
+        while (i < to && data[i] != '>') {
+            byte b = data[i];
+            if (b == '"' || b == '\'') {
+                i++;
+                while (i < to && data[i] != b) {
+                    i++;
+                }
+            } else if (b == 'r' && data[i - 1] <= ' ') {
+                int j = i + 1;
+                while (j < to && data[j] <= ' ') {
+                    j++;
+                }
+                found |= j < to && data[j] == '=';
+            }
+            i++;
+        }
+        return i < to && found;
+    }
+
+    private static int nameEnd(byte[] data, int i, int to) {
+        while (i < to && data[i] > ' ' && data[i] != '>' && data[i] != '/') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int tagEnd(byte[] data, int i, int to) {
+        while (i < to && data[i] != '>') {
+            i++;
+        }
+        return i < to ? i : -1;
+    }
+
+    private static boolean isLocalName(byte[] data, int start, int end, String expected) {
+        int local = end - expected.length();
+        if (local < start || (local > start && data[local - 1] != ':')) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (data[local + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读满data[offset, data.length)或读到流结束
+     *
+     * @return 读到的字节数
+     */
+    private static int readFully(InputStream in, byte[] data, int offset) throws IOException {
+        int total = 0;
+        while (offset + total < data.length) {
+            int n = in.read(data, offset + total, data.length - offset - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static Future<RowBatch> completed() {
+        FutureTask<RowBatch> end = new FutureTask<>(() -> null);
+        end.run();
+        return end;
+    }
+
+    /**
+     * 一块解析出的行，行和SST下标都是拷贝
+     */
+    private static class RowBatch implements RowHandler {
+        private final SharedStringCache cache;
+        private int count;
+        private int[] rowNums = new int[256];
+        private String[][] records = new String[256][];
+        private int[][] sstIndexes = new int[256][];
+        // 解析结束时的列数，包括被过滤掉的行撑开的列
+        private int width;
+
+        RowBatch(SharedStringCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] record) {
+            handleRow(rowNum, record, null);
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] record, int[] sstIndexes) {
+            if (count == rowNums.length) {
+                rowNums = Arrays.copyOf(rowNums, count * 2);
+                records = Arrays.copyOf(records, count * 2);
+                this.sstIndexes = Arrays.copyOf(this.sstIndexes, count * 2);
+            }
+            rowNums[count] = rowNum;
+            records[count] = record.clone();
+            this.sstIndexes[count] = sstIndexes == null ? null : sstIndexes.clone();
+            count++;
+        }
+
+        @Override
+        public SharedStringCache getSharedStringCache() {
+            return cache;
+        }
+
+        /**
+         * 交给输出端。顺序解析时行数组只增不减，这里把较窄的行补齐到之前各块达到的列数
+         *
+         * @param width 之前各块达到的列数
+         * @return 本块之后的列数
+         */
+        int replay(RowHandler rowHandler, int width) throws IOException {
+            for (int i = 0; i < count; i++) {
+                String[] record = records[i];
+                int[] indexes = sstIndexes[i];
+                if (record.length < width) {
+                    record = Arrays.copyOf(record, width);
+                    if (indexes != null) {
+                        int old = indexes.length;
+                        indexes = Arrays.copyOf(indexes, width);
+                        Arrays.fill(indexes, old, width, -1);
+                    }
+                } else {
+                    width = record.length;
+                }
+                records[i] = null;
+                rowHandler.handleRow(rowNums[i], record, indexes);
+            }
+            return Math.max(width, this.width);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.ow.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * 输出 PostgreSQL COPY 二进制格式（COPY ... FROM STDIN WITH (FORMAT binary)），
+ * 省去数据库端解析CSV：
+ * <pre>
+ * 文件头：PGCOPY\n\377\r\n\0 + 标志位(int32, 0) + 扩展区长度(int32, 0)
+ * 每行：  字段数(int16) + 每个字段 [长度(int32)，NULL为-1][内容]
+ * 结尾：  -1(int16)
+ * </pre>
+ * 数值均为大端序。支持的类型：int8、float8、bool、date（距2000-01-01的天数，int32）、
+ * timestamp（距2000-01-01的微秒数，int64）、text（UTF-8）。
+ *
+ * 列类型可以显式声明；不声明时先缓冲前 inferRows 行，按解析器给出的单元格类型推断后再输出。
+ * 非text列直接取解析器提供的原始值（见 CellValues），不经过格式化成字符串再解析；
+ * 文本单元格出现在非text列时按文本解析，无法解析时报错并指出行列；date列中出现带时间的值同样报错，
+ * 不截断为日期。
+ * 表头行（前 headerRows 行）、sheet中缺失的行和全部为空的行不输出；空字符串按NULL输出。
+ * 写完后必须调用 finish 写出结尾标记。
+ */
+public class PgCopyBinaryWriter implements RowHandler, Flushable {
+
+    /**
+     * 支持的列类型
+     */
+    public enum PgType { INT8, FLOAT8, BOOL, DATE, TIMESTAMP, TEXT }
+
+    public static final int DEFAULT_INFER_ROWS = 1000;
+
+    static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // PostgreSQL 的日期时间以2000-01-01为原点
+    private static final long PG_EPOCH_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final int MAX_COLUMNS = 1600;
+
+    private final DataOutputStream out;
+    private final CellValues cellValues = new CellValues();
+    private List<PgType> schema;
+    private int headerRows;
+    private int inferRows = DEFAULT_INFER_ROWS;
+    // 推断类型期间缓冲的行
+    private List<BufferedRow> pending = new ArrayList<>();
+    private int width;
+    private boolean started;
+    private long rows;
+
+    /**
+     * @param out 输出流
+     * @param schema 各列类型，为null时按前 inferRows 行推断
+     */
+    public PgCopyBinaryWriter(OutputStream out, List<PgType> schema) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, WRITE_BUFFER_SIZE));
+        if (schema != null) {
+            if (schema.isEmpty() || schema.size() > MAX_COLUMNS) {
+                throw new IllegalArgumentException("Schema must have 1 to " + MAX_COLUMNS + " columns.");
+            }
+            useSchema(new ArrayList<>(schema));
+        }
+    }
+
+    /**
+     * 解析逗号分隔的列类型，如 "int8,text,timestamp"
+     */
+    public static List<PgType> parseSchema(String spec) {
+        List<PgType> types = new ArrayList<>();
+        for (String name : spec.split(",")) {
+            types.add(PgType.valueOf(name.trim().toUpperCase()));
+        }
+        return types;
+    }
+
+    /**
+     * 表头行数，这些行不输出，默认0
+     */
+    public void setHeaderRows(int headerRows) {
+        this.headerRows = headerRows;
+    }
+
+    /**
+     * 未声明列类型时，用于推断的行数
+     */
+    public void setInferRows(int inferRows) {
+        if (inferRows < 1) {
+            throw new IllegalArgumentException("inferRows must be positive.");
+        }
+        this.inferRows = inferRows;
+    }
+
+    /**
+     * @return 实际使用的列类型，推断完成前为null
+     */
+    public List<PgType> getSchema() {
+        return schema == null ? null : Collections.unmodifiableList(schema);
+    }
+
+    /**
+     * @return 已输出的行数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public CellValues getCellValues() {
+        return cellValues;
+    }
+
+    @Override
+    public void handleRow(int rowNum, String[] record) throws IOException {
+        if (rowNum < headerRows || isBlank(record, cellValues)) {
+            return;
+        }
+        if (schema != null) {
+            writeRow(rowNum, record, cellValues);
+            return;
+        }
+        pending.add(new BufferedRow(rowNum, record, cellValues));
+        // 列数与CSV相同，按sheet声明的范围
+        width = Math.max(width, record.length);
+        if (pending.size() >= inferRows) {
+            inferAndFlush();
+        }
+    }
+
+    /**
+     * 写出缓冲的行和结尾标记并刷新输出
+     */
+    public void finish() throws IOException {
+        if (schema == null) {
+            inferAndFlush();
+        }
+        writeHeaderIfNeeded();
+        out.writeShort(-1);
+        out.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void useSchema(List<PgType> types) {
+        this.schema = types;
+        // 非text列只需要原始值，解析器不再格式化
+        for (int i = 0; i < types.size(); i++) {
+            cellValues.setRaw(i, types.get(i) != PgType.TEXT);
+        }
+    }
+
+    private void inferAndFlush() throws IOException {
+        List<PgType> types = new ArrayList<>();
+        for (int col = 0; col < Math.max(width, 1); col++) {
+            types.add(infer(col));
+        }
+        if (types.size() > MAX_COLUMNS) {
+            throw new IOException("Sheet has " + types.size() + " columns, PostgreSQL allows " + MAX_COLUMNS);
+        }
+        useSchema(types);
+        for (BufferedRow row : pending) {
+            writeRow(row.rowNum, row.record, row.values);
+        }
+        pending = null;
+    }
+
+    /**
+     * 按缓冲行中该列的单元格类型推断：全部为整数时int8，含小数时float8，全部为日期时date或timestamp，
+     * 全部为布尔时bool，其余（含文本、混合类型、全部为空）为text
+     */
+    private PgType infer(int col) {
+        boolean integral = true;
+        boolean midnight = true;
+        byte seen = -1;
+        for (BufferedRow row : pending) {
+            byte kind = row.values.kind(col);
+            if (kind == CellValues.NONE) {
+                String text = col < row.record.length ? row.record[col] : null;
+                if (text == null || text.isEmpty()) {
+                    continue;
+                }
+                return PgType.TEXT;
+            }
+            if (seen >= 0 && seen != kind) {
+                return PgType.TEXT;
+            }
+            seen = kind;
+            double d = row.values.number(col);
+            integral &= d == Math.rint(d) && Math.abs(d) < 9.2e18;
+            midnight &= d == Math.floor(d);
+        }
+        switch (seen) {
+            case CellValues.NUMBER:
+                return integral ? PgType.INT8 : PgType.FLOAT8;
+            case CellValues.DATE:
+                return midnight ? PgType.DATE : PgType.TIMESTAMP;
+            case CellValues.BOOLEAN:
+                return PgType.BOOL;
+            default:
+                return PgType.TEXT;
+        }
+    }
+
+    private void writeHeaderIfNeeded() throws IOException {
+        if (!started) {
+            out.write(SIGNATURE);
+            out.writeInt(0);
+            out.writeInt(0);
+            started = true;
+        }
+    }
+
+    private void writeRow(int rowNum, String[] record, CellValues values) throws IOException {
+        writeHeaderIfNeeded();
+        int columns = schema.size();
+        int last = lastNonBlank(record, values);
+        if (last >= columns) {
+            throw new IOException("Row " + (rowNum + 1) + " has a value in column "
+                    + CellReference.convertNumToColString(last) + ", beyond the " + columns + " declared columns");
+        }
+        out.writeShort(columns);
+        for (int col = 0; col < columns; col++) {
+            String text = col < record.length ? record[col] : null;
+            byte kind = values.kind(col);
+            if (kind == CellValues.NONE && (text == null || text.isEmpty())) {
+                out.writeInt(-1);
+                continue;
+            }
+            try {
+                writeField(schema.get(col), text, kind, kind == CellValues.NONE ? 0 : values.number(col));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IOException("Row " + (rowNum + 1) + ", column " + CellReference.convertNumToColString(col)
+                        + ": cannot write " + (text != null ? "'" + text + "'" : "numeric value")
+                        + " as " + schema.get(col).name().toLowerCase(), e);
+            }
+        }
+        rows++;
+    }
+
+    private void writeField(PgType type, String text, byte kind, double number) throws IOException {
+        boolean typed = kind != CellValues.NONE;
+        switch (type) {
+            case INT8: {
+                long v;
+                if (typed) {
+                    if (number != Math.rint(number) || Math.abs(number) >= 9.2e18) {
+                        throw new IllegalArgumentException("Not an integer: " + number);
+                    }
+                    v = (long) number;
+                } else {
+                    v = Long.parseLong(text.trim());
+                }
+                out.writeInt(8);
+                out.writeLong(v);
+                break;
+            }
+            case FLOAT8:
+                out.writeInt(8);
+                out.writeDouble(typed ? number : Double.parseDouble(text.trim()));
+                break;
+            case BOOL: {
+                boolean v;
+                if (typed) {
+                    v = number != 0;
+                } else if ("TRUE".equalsIgnoreCase(text.trim())) {
+                    v = true;
+                } else if ("FALSE".equalsIgnoreCase(text.trim())) {
+                    v = false;
+                } else {
+                    throw new IllegalArgumentException("Not a boolean: " + text);
+                }
+                out.writeInt(1);
+                out.writeByte(v ? 1 : 0);
+                break;
+            }
+            case DATE: {
+                LocalDateTime time = typed ? CellValueRenderer.toLocalDateTime(number)
+                        : CellValueRenderer.parseDateTime(text.trim());
+                if (!time.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+                    // 推断只看前 inferRows 行，之后出现带时间的值时不能静默截断
+                    throw new IllegalArgumentException("Not a date without time: " + time);
+                }
+                out.writeInt(4);
+                out.writeInt((int) (time.toLocalDate().toEpochDay() - PG_EPOCH_DAY));
+                break;
+            }
+            case TIMESTAMP: {
+                LocalDateTime time = typed ? CellValueRenderer.toLocalDateTime(number)
+                        : CellValueRenderer.parseDateTime(text.trim());
+                long days = time.toLocalDate().toEpochDay() - PG_EPOCH_DAY;
+                out.writeInt(8);
+                out.writeLong(days * 86_400_000_000L + time.toLocalTime().toNanoOfDay() / 1000);
+                break;
+            }
+            default: {
+                if (text == null) {
+                    // text列不会被标记为原始值，这里只有推断期间的数值单元格
+                    text = CellValueRenderer.getDefault().formatGeneral(number);
+                }
+                if (text.indexOf('\0') >= 0) {
+                    throw new IllegalArgumentException("PostgreSQL text cannot contain NUL characters");
+                }
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                break;
+            }
+        }
+    }
+
+    private static boolean isBlank(String[] record, CellValues values) {
+        return lastNonBlank(record, values) < 0;
+    }
+
+    private static int lastNonBlank(String[] record, CellValues values) {
+        for (int i = record.length - 1; i >= 0; i--) {
+            if (values.kind(i) != CellValues.NONE || (record[i] != null && !record[i].isEmpty())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 推断类型期间缓冲的一行，连同单元格的原始值
+     */
+    static class BufferedRow {
+
+        final int rowNum;
+        final String[] record;
+        final CellValues values = new CellValues();
+
+        BufferedRow(int rowNum, String[] record, CellValues source) {
+            this.rowNum = rowNum;
+            this.record = record.clone();
+            for (int i = 0; i < record.length; i++) {
+                byte kind = source.kind(i);
+                if (kind == CellValues.BOOLEAN) {
+                    values.setBoolean(i, source.number(i) != 0);
+                } else if (kind != CellValues.NONE) {
+                    values.setNumber(i, source.number(i), kind == CellValues.DATE);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按文档规定的格式检查一个COPY二进制流：文件头、每行字段数一致、字段长度不越界、以-1结尾
+     *
+     * @return 行数
+     * @throws IOException 格式不正确
+     */
+    public static long verify(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] signature = new byte[SIGNATURE.length];
+        data.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("Missing PGCOPY signature");
+        }
+        int flags = data.readInt();
+        // 低16位保留给向后兼容的格式，读者应忽略；高16位是关键标志（包括OID），不认识时必须中止
+        if ((flags & 0xffff0000) != 0) {
+            throw new IOException("Unsupported header flags: " + Integer.toHexString(flags));
+        }
+        int extension = data.readInt();
+        if (extension < 0 || data.skipBytes(extension) != extension) {
+            throw new IOException("Bad header extension length: " + extension);
+        }
+        long tuples = 0;
+        int fieldCount = -1;
+        while (true) {
+            short fields;
+            try {
+                fields = data.readShort();
+            } catch (EOFException e) {
+                throw new IOException("Missing trailer after " + tuples + " rows");
+            }
+            if (fields == -1) {
+                break;
+            }
+            if (fields < 0 || (fieldCount >= 0 && fields != fieldCount)) {
+                throw new IOException("Row " + (tuples + 1) + " has " + fields + " fields, expected " + fieldCount);
+            }
+            fieldCount = fields;
+            for (int i = 0; i < fields; i++) {
+                int length = data.readInt();
+                if (length < -1 || (length > 0 && data.skipBytes(length) != length)) {
+                    throw new IOException("Bad length " + length + " in row " + (tuples + 1) + ", field " + (i + 1));
+                }
+            }
+            tuples++;
+        }
+        if (data.read() != -1) {
+            throw new IOException("Data after trailer");
+        }
+        return tuples;
+    }
+}
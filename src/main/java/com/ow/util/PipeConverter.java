@@ -0,0 +1,317 @@
+package com.ow.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * 管道模式：从标准输入（或文件）读取xlsx，把一个sheet以CSV、JSON Lines或PostgreSQL COPY二进制格式
+ * 流式写到标准输出，不产生任何临时文件，例如：
+ * <pre>cat x.xlsx | java -jar ExcelToCsv.jar - - --sheet 表格一 | loader
+ * java -jar ExcelToCsv.jar x.xlsx - --format pgcopy | psql -c "COPY t FROM STDIN WITH (FORMAT binary)"</pre>
+ *
+ * 可以只输出部分行：--rows 2:101 按Excel行号取范围，--limit 100 输出够100行即停止解析，
+ * --where B=die、--not-empty A,C 按列过滤（条件列之外的单元格在行通过后才格式化）。
+ * 反复读取大sheet的不同行范围时加上 --row-index 目录，第一次建立行索引，之后从最近的检查点开始解析（见 SheetRowIndex）。
+ *
+ * 标准输出只输出数据，提示和错误信息全部写到标准错误。
+ * 下游提前关闭管道（如 head、loader退出）时，JVM不会收到SIGPIPE而是写出失败（EPIPE），
+ * 此时停止解析并安静退出，退出码为0；磁盘写满等其他写出错误仍按出错处理。
+ */
+public class PipeConverter {
+
+    public static final String STDIO = "-";
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    private String source;
+    private String sheetName;
+    private String format = "csv";
+    private String separator = ExcelToCSV.DEFAULT_SEPARATOR;
+    private int formattingConvention = ExcelToCSV.EXCEL_STYLE_ESCAPING;
+    // pgcopy：列类型（为null时推断）和不输出的表头行数
+    private List<PgCopyBinaryWriter.PgType> schema;
+    private int headerRows = 1;
+    // 行范围（从0开始，lastRow为-1时不限）、行数上限和行过滤
+    private int firstRow;
+    private int lastRow = -1;
+    private long limit = -1;
+    private RowFilter rowFilter;
+    // 行索引目录，为null时不使用
+    private File rowIndexDir;
+    private int indexInterval = SheetRowIndex.DEFAULT_INTERVAL;
+    // 并行解析的线程数
+    private int threads = 1;
+
+    /**
+     * 解析命令行：[源文件|-] - [--sheet 名称] [--format csv|jsonl|pgcopy] [--separator 分隔符] [--convention 0|1]
+     * [--schema int8,text,...] [--header-rows 行数] [--rows 起始行:结束行] [--limit 行数]
+     * [--where 列=值] [--not-empty 列,列] [--row-index 目录] [--index-interval 行数] [--threads 线程数]，
+     * 行号和列名与Excel中相同，如 --rows 2:101 --where B=die
+     */
+    static PipeConverter parseArgs(String[] args) {
+        PipeConverter converter = new PipeConverter();
+        converter.source = args[0];
+        for (int i = 2; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            if ("--sheet".equals(option)) {
+                converter.sheetName = value;
+            } else if ("--format".equals(option)) {
+                if (!"csv".equals(value) && !"jsonl".equals(value) && !"pgcopy".equals(value)) {
+                    throw new IllegalArgumentException("Unknown format: " + value);
+                }
+                converter.format = value;
+            } else if ("--separator".equals(option)) {
+                converter.separator = value;
+            } else if ("--convention".equals(option)) {
+                converter.formattingConvention = Integer.parseInt(value);
+            } else if ("--schema".equals(option)) {
+                converter.schema = PgCopyBinaryWriter.parseSchema(value);
+            } else if ("--header-rows".equals(option)) {
+                converter.headerRows = Integer.parseInt(value);
+            } else if ("--rows".equals(option)) {
+                int colon = value.indexOf(':');
+                String first = colon < 0 ? value : value.substring(0, colon);
+                String last = colon < 0 ? value : value.substring(colon + 1);
+                converter.firstRow = first.isEmpty() ? 0 : Integer.parseInt(first) - 1;
+                converter.lastRow = last.isEmpty() ? -1 : Integer.parseInt(last) - 1;
+            } else if ("--limit".equals(option)) {
+                converter.limit = Long.parseLong(value);
+            } else if ("--where".equals(option)) {
+                int eq = value.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Expected COLUMN=VALUE for --where: " + value);
+                }
+                converter.addFilter(RowFilter.equalTo(
+                        CellReference.convertColStringToIndex(value.substring(0, eq)), value.substring(eq + 1)));
+            } else if ("--not-empty".equals(option)) {
+                String[] names = value.split(",");
+                int[] columns = new int[names.length];
+                for (int c = 0; c < names.length; c++) {
+                    columns[c] = CellReference.convertColStringToIndex(names[c].trim());
+                }
+                converter.addFilter(RowFilter.notEmpty(columns));
+            } else if ("--row-index".equals(option)) {
+                converter.rowIndexDir = new File(value);
+            } else if ("--index-interval".equals(option)) {
+                converter.indexInterval = Integer.parseInt(value);
+            } else if ("--threads".equals(option)) {
+                converter.threads = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (converter.rowIndexDir != null && STDIO.equals(converter.source)) {
+            throw new IllegalArgumentException("--row-index needs a source file, not standard input.");
+        }
+        return converter;
+    }
+
+    private void addFilter(RowFilter filter) {
+        this.rowFilter = this.rowFilter == null ? filter : this.rowFilter.and(filter);
+    }
+
+    /**
+     * 执行转换
+     *
+     * @return 进程退出码：0成功（包括下游关闭管道），1出错，2找不到sheet
+     */
+    int run() {
+        // System.out 是PrintStream，会吞掉写出异常，这里直接写文件描述符
+        DownstreamOutputStream stdout = new DownstreamOutputStream(new FileOutputStream(FileDescriptor.out));
+        try {
+            boolean found;
+            if (STDIO.equals(source)) {
+                found = convert(new BufferedInputStream(System.in, WRITE_BUFFER_SIZE), stdout);
+            } else {
+                try (OPCPackage pkg = OPCPackage.open(new File(source), PackageAccess.READ)) {
+                    found = convert(pkg, stdout);
+                }
+            }
+            stdout.flush();
+            if (!found) {
+                System.err.println("Sheet [" + sheetName + "] not found.");
+                return 2;
+            }
+            return 0;
+        } catch (Exception ex) {
+            if (stdout.isClosedDownstream()) {
+                return 0;
+            }
+            System.err.println("Caught an: " + ex.getClass().getName());
+            System.err.println("Message: " + ex.getMessage());
+            ex.printStackTrace(System.err);
+            return 1;
+        }
+    }
+
+    private boolean convert(InputStream in, OutputStream out) throws Exception {
+        InputStream is = FileMagic.prepareToCheckMagic(in);
+        if (FileMagic.valueOf(is) != FileMagic.OOXML) {
+            throw new IllegalArgumentException("Only xlsx workbooks can be read from standard input.");
+        }
+        OPCPackage pkg = OPCPackage.open(is);
+        try {
+            return convert(pkg, out);
+        } finally {
+            // 从流打开的包没有对应的文件，只能revert不能close
+            pkg.revert();
+        }
+    }
+
+    boolean convert(OPCPackage pkg, OutputStream out) throws Exception {
+        XLSXCovertCSVReader reader = new XLSXCovertCSVReader(pkg, System.err, sheetName, 0, -1);
+        reader.setRowRange(firstRow, lastRow);
+        reader.setMaxRows(limit);
+        reader.setRowFilter(rowFilter);
+        reader.setParallelism(threads);
+        if ("pgcopy".equals(format)) {
+            PgCopyBinaryWriter copyWriter = new PgCopyBinaryWriter(out, schema);
+            copyWriter.setHeaderRows(headerRows);
+            boolean found = process(reader, pkg, copyWriter);
+            if (found) {
+                copyWriter.finish();
+                System.err.println("Wrote " + copyWriter.getRows() + " rows, columns: " + copyWriter.getSchema());
+            }
+            return found;
+        }
+        if ("jsonl".equals(format)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            boolean found = process(reader, pkg, new JsonLinesRowWriter(writer));
+            writer.flush();
+            return found;
+        }
+        CSVByteRowWriter csvWriter = new CSVByteRowWriter(out, separator, formattingConvention,
+                StandardCharsets.UTF_8);
+        // 按条件过滤时被跳过的行不输出为空行；只取部分行时范围内的空行照常输出
+        csvWriter.setPadMissingRows(rowFilter == null);
+        csvWriter.setFirstRowNum(firstRow);
+        boolean found = process(reader, pkg, csvWriter);
+        csvWriter.flush();
+        return found;
+    }
+
+    /**
+     * 有行索引时从起始行附近的检查点开始解析，否则从头解析
+     */
+    private boolean process(XLSXCovertCSVReader reader, OPCPackage pkg, RowHandler handler) throws Exception {
+        if (rowIndexDir == null) {
+            return reader.process(handler);
+        }
+        SheetRowIndex index = SheetRowIndex.open(pkg, new File(source), sheetName, rowIndexDir, indexInterval);
+        if (index == null) {
+            return false;
+        }
+        reader.setStreamStartRow(index.startRowOf(firstRow));
+        try (InputStream in = index.openFrom(firstRow)) {
+            reader.process(in, handler);
+        }
+        return true;
+    }
+
+    /**
+     * 记录写出是否因下游关闭管道（EPIPE）而失败，以便和真正的错误区分
+     */
+    static class DownstreamOutputStream extends FilterOutputStream {
+
+        private boolean closedDownstream;
+
+        DownstreamOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                failed(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed(e);
+                throw e;
+            }
+        }
+
+        private void failed(IOException e) {
+            if (isBrokenPipe(e)) {
+                closedDownstream = true;
+            }
+        }
+
+        boolean isClosedDownstream() {
+            return closedDownstream;
+        }
+
+        /**
+         * JDK不区分写出异常的类型，只能按系统错误信息判断：Linux/macOS为EPIPE（Broken pipe），
+         * Windows为管道已关闭
+         */
+        static boolean isBrokenPipe(IOException e) {
+            String message = e.getMessage();
+            return message != null && (message.contains("Broken pipe") || message.contains("EPIPE")
+                    || message.contains("pipe is being closed") || message.contains("pipe has been ended"));
+        }
+    }
+
+    /**
+     * @param args [源文件|-] - [--sheet 名称] [--format csv|jsonl|pgcopy] [--separator 分隔符] [--convention 0|1]
+     *             [--schema int8,text,...] [--header-rows 行数] [--rows 起始行:结束行] [--limit 行数]
+     *             [--where 列=值] [--not-empty 列,列] [--row-index 目录] [--index-interval 行数] [--threads 线程数]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || !STDIO.equals(args[1])) {
+            System.err.println("Usage: java PipeConverter [Source xlsx|-] - [--sheet Name] "
+                    + "[--format csv|jsonl|pgcopy] [--separator Separator] [--convention 0|1] "
+                    + "[--schema int8,float8,bool,date,timestamp,text,...] [--header-rows N] "
+                    + "[--rows First:Last] [--limit N] [--where Column=Value] [--not-empty Column,...] "
+                    + "[--row-index Directory] [--index-interval N] [--threads N]");
+            System.exit(1);
+        }
+        PipeConverter converter;
+        try {
+            converter = parseArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.exit(converter.run());
+    }
+}
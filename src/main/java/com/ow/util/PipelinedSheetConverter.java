@@ -0,0 +1,362 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分阶段流水线转换一个sheet（可选，结果与 ResumableSheetConverter 逐字节相同）。
+ *
+ * 单线程转换时解压、解析、转义编码和写盘依次进行，写盘时CPU空闲、解析时磁盘空闲。
+ * 这里拆成三个线程：
+ * <ol>
+ * <li>解析：解压并SAX解析sheet，查共享字符串、格式化数值，按 batchRows 行一批放入行环形缓冲区；</li>
+ * <li>编码：转义、编码成CSV字节（共享字符串的字节有缓存），每批行编码成一个字节批次；</li>
+ * <li>写出：把字节批次写入临时文件，完成后改名为目标文件（调用线程）。</li>
+ * </ol>
+ * 两个 BatchRing 的批次都是预先分配、循环复用的，深度为 ringSize，内存占用有上限。
+ */
+public class PipelinedSheetConverter {
+
+    private static Logger logger = LoggerFactory.getLogger(PipelinedSheetConverter.class);
+
+    public static final int DEFAULT_BATCH_ROWS = 512;
+    public static final int DEFAULT_RING_SIZE = 8;
+
+    private static final int INITIAL_BYTE_BATCH = 256 * 1024;
+
+    private final String separator;
+    private final int formattingConvention;
+    private int batchRows = DEFAULT_BATCH_ROWS;
+    private int ringSize = DEFAULT_RING_SIZE;
+    private CellValueRenderer valueRenderer = CellValueRenderer.getDefault();
+
+    public PipelinedSheetConverter(String separator, int formattingConvention) {
+        this.separator = separator;
+        this.formattingConvention = formattingConvention;
+    }
+
+    /**
+     * 每个行批次的行数
+     */
+    public void setBatchRows(int batchRows) {
+        if (batchRows < 1) {
+            throw new IllegalArgumentException("batchRows must be positive.");
+        }
+        this.batchRows = batchRows;
+    }
+
+    /**
+     * 两个环形缓冲区的深度（批次数）
+     */
+    public void setRingSize(int ringSize) {
+        if (ringSize < 1) {
+            throw new IllegalArgumentException("ringSize must be positive.");
+        }
+        this.ringSize = ringSize;
+    }
+
+    public void setValueRenderer(CellValueRenderer valueRenderer) {
+        this.valueRenderer = valueRenderer;
+    }
+
+    /**
+     * 把xlsx中的一个sheet转换为CSV
+     *
+     * @param source xlsx文件
+     * @param sheetName sheet名称，为null时转换第一个sheet
+     * @param destination CSV文件，先写临时文件，成功后再改名
+     * @return 是否找到了对应的sheet
+     * @throws IOException 任一阶段失败，其他阶段随之结束，不会生成目标文件
+     */
+    public boolean convert(File source, String sheetName, File destination) throws IOException {
+        BatchRing<RowBatch> rowRing = new BatchRing<>(ringSize, () -> new RowBatch(batchRows));
+        BatchRing<ByteBatch> byteRing = new BatchRing<>(ringSize, ByteBatch::new);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ParseStage parse = new ParseStage(source, sheetName, rowRing);
+        EncodeStage encode = new EncodeStage(rowRing, byteRing);
+
+        Thread parseThread = startStage("parse", parse, failure, rowRing, byteRing);
+        Thread encodeThread = startStage("encode", encode, failure, rowRing, byteRing);
+
+        File part = new File(destination.getPath() + ".part");
+        try {
+            try (OutputStream out = new FileOutputStream(part)) {
+                for (ByteBatch batch = byteRing.take(); batch != null; batch = byteRing.take()) {
+                    out.write(batch.data, 0, batch.length);
+                    byteRing.release();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (failure.compareAndSet(null, e)) {
+                    rowRing.abort(e);
+                    byteRing.abort(e);
+                }
+            }
+            join(parseThread);
+            join(encodeThread);
+            Throwable cause = failure.get();
+            if (cause != null) {
+                throw cause instanceof IOException ? (IOException) cause
+                        : new IOException("Pipelined conversion of " + source + " failed", cause);
+            }
+            if (!parse.found) {
+                Files.deleteIfExists(part.toPath());
+                return false;
+            }
+            ResumableSheetConverter.moveAtomically(part, destination);
+        } catch (IOException e) {
+            Files.deleteIfExists(part.toPath());
+            throw e;
+        }
+        logger.debug("Pipeline rows={}, row ring [{}], byte ring [{}], shared string cache [{}]",
+                parse.rows, rowRing, byteRing, encode.cache);
+        return true;
+    }
+
+    private static Thread startStage(String name, Stage stage, AtomicReference<Throwable> failure,
+                                     BatchRing<?> rowRing, BatchRing<?> byteRing) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (Throwable t) {
+                // 只记录第一个失败，其他阶段因abort而结束的异常忽略
+                if (failure.compareAndSet(null, t)) {
+                    rowRing.abort(t);
+                    byteRing.abort(t);
+                }
+            }
+        }, "pipeline-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(Thread thread) throws IOException {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Interrupted while waiting for " + thread.getName());
+        }
+    }
+
+    interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * 第一阶段：解析sheet，行拷贝进行批次
+     */
+    class ParseStage implements Stage, RowHandler {
+
+        private final File source;
+        private final String sheetName;
+        private final BatchRing<RowBatch> ring;
+        // 解析线程自己的共享字符串缓存，只用来让重复的SST下标得到同一个String并带出下标
+        private final SharedStringCache parseCache = new SharedStringCache(
+                SharedStringCache.DEFAULT_CAPACITY, SharedStringCache.DEFAULT_MAX_CHARS, s -> null);
+        private RowBatch current;
+        private volatile boolean found;
+        private long rows;
+
+        ParseStage(File source, String sheetName, BatchRing<RowBatch> ring) {
+            this.source = source;
+            this.sheetName = sheetName;
+            this.ring = ring;
+        }
+
+        @Override
+        public void run() throws Exception {
+            try (OPCPackage pkg = OPCPackage.open(source, PackageAccess.READ)) {
+                XLSXCovertCSVReader reader = new XLSXCovertCSVReader(pkg, System.out, sheetName, 0, -1);
+                reader.setValueRenderer(valueRenderer);
+                found = reader.process(this);
+            }
+            if (current != null && current.size > 0) {
+                ring.publish();
+            }
+            ring.finish();
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] record) throws IOException {
+            handleRow(rowNum, record, null);
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] record, int[] sstIndexes) throws IOException {
+            if (current == null) {
+                current = ring.claim();
+                current.size = 0;
+            }
+            current.add(rowNum, record, sstIndexes);
+            rows++;
+            if (current.size == current.rowNums.length) {
+                ring.publish();
+                current = null;
+            }
+        }
+
+        @Override
+        public SharedStringCache getSharedStringCache() {
+            return parseCache;
+        }
+    }
+
+    /**
+     * 第二阶段：行批次编码成CSV字节批次
+     */
+    class EncodeStage implements Stage {
+
+        private final BatchRing<RowBatch> rowRing;
+        private final BatchRing<ByteBatch> byteRing;
+        private final BatchOutputStream out;
+        private final CSVByteRowWriter csvWriter;
+        private final SharedStringCache cache;
+
+        EncodeStage(BatchRing<RowBatch> rowRing, BatchRing<ByteBatch> byteRing) {
+            this.rowRing = rowRing;
+            this.byteRing = byteRing;
+            this.out = new BatchOutputStream(byteRing);
+            this.csvWriter = new CSVByteRowWriter(out, separator, formattingConvention, StandardCharsets.UTF_8);
+            this.cache = csvWriter.getSharedStringCache();
+        }
+
+        @Override
+        public void run() throws Exception {
+            for (RowBatch batch = rowRing.take(); batch != null; batch = rowRing.take()) {
+                for (int i = 0; i < batch.size; i++) {
+                    String[] record = batch.records[i];
+                    int[] sst = batch.sstIndexes[i];
+                    for (int j = 0; j < sst.length; j++) {
+                        // 解析线程对同一个下标给出的是同一个String，按下标登记后编码结果即可复用
+                        if (sst[j] >= 0 && cache.text(sst[j]) != record[j]) {
+                            cache.put(sst[j], record[j]);
+                        }
+                    }
+                    csvWriter.handleRow(batch.rowNums[i], record, sst);
+                }
+                rowRing.release();
+                csvWriter.flush();
+            }
+            csvWriter.flush();
+            byteRing.finish();
+        }
+    }
+
+    /**
+     * 一批行。行数组按列数复用，列数变化时才重新分配
+     */
+    static class RowBatch {
+
+        final int[] rowNums;
+        final String[][] records;
+        final int[][] sstIndexes;
+        int size;
+
+        RowBatch(int rows) {
+            this.rowNums = new int[rows];
+            this.records = new String[rows][];
+            this.sstIndexes = new int[rows][];
+        }
+
+        void add(int rowNum, String[] record, int[] sst) {
+            int i = size++;
+            rowNums[i] = rowNum;
+            if (records[i] == null || records[i].length != record.length) {
+                records[i] = new String[record.length];
+                sstIndexes[i] = new int[record.length];
+            }
+            System.arraycopy(record, 0, records[i], 0, record.length);
+            if (sst != null && sst.length >= record.length) {
+                System.arraycopy(sst, 0, sstIndexes[i], 0, record.length);
+            } else {
+                Arrays.fill(sstIndexes[i], -1);
+            }
+        }
+    }
+
+    /**
+     * 一批编码好的CSV字节
+     */
+    static class ByteBatch {
+
+        byte[] data = new byte[INITIAL_BYTE_BATCH];
+        int length;
+    }
+
+    /**
+     * CSVByteRowWriter 的输出端：写入当前字节批次，flush 时把批次交给写出阶段
+     */
+    static class BatchOutputStream extends OutputStream {
+
+        private final BatchRing<ByteBatch> ring;
+        private ByteBatch current;
+
+        BatchOutputStream(BatchRing<ByteBatch> ring) {
+            this.ring = ring;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (current == null) {
+                current = ring.claim();
+                current.length = 0;
+            }
+            if (current.length + len > current.data.length) {
+                current.data = Arrays.copyOf(current.data, Math.max(current.data.length * 2, current.length + len));
+            }
+            System.arraycopy(b, off, current.data, current.length, len);
+            current.length += len;
+        }
+
+        @Override
+        public void flush() {
+            if (current != null) {
+                ring.publish();
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * @param args [xlsx文件] [sheet名称] [输出的CSV文件] [--batch-rows 行数] [--ring-size 批次数]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java PipelinedSheetConverter [Source File] [Sheet Name] [Destination CSV] "
+                    + "[--batch-rows N] [--ring-size N]");
+            return;
+        }
+        PipelinedSheetConverter converter = new PipelinedSheetConverter(ExcelToCSV.DEFAULT_SEPARATOR,
+                ExcelToCSV.EXCEL_STYLE_ESCAPING);
+        for (int i = 3; i < args.length; i++) {
+            if ("--batch-rows".equals(args[i])) {
+                converter.setBatchRows(Integer.parseInt(args[++i]));
+            } else if ("--ring-size".equals(args[i])) {
+                converter.setRingSize(Integer.parseInt(args[++i]));
+            }
+        }
+        long startTime = System.currentTimeMillis();
+        if (!converter.convert(new File(args[0]), args[1], new File(args[2]))) {
+            System.out.println("Sheet [" + args[1] + "] not found.");
+            return;
+        }
+        System.out.println("Conversion took " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+}
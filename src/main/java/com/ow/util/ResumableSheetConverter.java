@@ -0,0 +1,297 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 可断点续转的大sheet转换（流式SAX路径）。
+ *
+ * 转换过程中先写入 <code>xxx.csv.part</code>，每写完 checkpointRows 行就把缓冲刷到磁盘，
+ * 并在 <code>xxx.csv.ckpt</code> 中记录最后一个完整写出的行号和对应的文件字节偏移。
+ * 进程被杀或机器重启后再次执行同样的转换时，先把 .part 文件截断到检查点的位置，
+ * 然后跳过已经写出的行（只解析XML，不格式化、不写出），从下一行继续。
+ * 全部完成后再把 .part 原子地重命名为最终文件名，半截的CSV不会以正式文件名出现。
+ */
+public class ResumableSheetConverter {
+
+    private static Logger logger = LoggerFactory.getLogger(ResumableSheetConverter.class);
+
+    public static final int DEFAULT_CHECKPOINT_ROWS = 100000;
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    private final String separator;
+    private final int formattingConvention;
+    private final int checkpointRows;
+    private boolean profiling;
+
+    public ResumableSheetConverter(String separator, int formattingConvention, int checkpointRows) {
+        if (checkpointRows < 1) {
+            throw new IllegalArgumentException("checkpointRows must be positive.");
+        }
+        this.separator = separator;
+        this.formattingConvention = formattingConvention;
+        this.checkpointRows = checkpointRows;
+    }
+
+    /**
+     * 是否同时统计每列的概况，写到CSV旁边的 .profile.json。
+     * 从检查点继续的转换只解析了后半部分行，不生成概况
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /**
+     * 把xlsx中的一个sheet转换为CSV，如存在同一源文件的检查点则从检查点继续
+     *
+     * @param source xlsx文件
+     * @param sheetName sheet名称，为null时转换第一个sheet
+     * @param destination 最终的CSV文件
+     * @return 是否找到了对应的sheet
+     * @throws Exception 读取或写出失败，检查点会保留以便下次继续
+     */
+    public boolean convert(File source, String sheetName, File destination) throws Exception {
+        File part = new File(destination.getPath() + PART_SUFFIX);
+        File checkpointFile = new File(destination.getPath() + CHECKPOINT_SUFFIX);
+
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile, source, sheetName);
+        if (checkpoint != null && part.exists() && part.length() >= checkpoint.offset) {
+            System.out.println("Resuming [" + destination.getName() + "] after row "
+                    + (checkpoint.rowNum + 1));
+            try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+                raf.setLength(checkpoint.offset);
+            }
+        } else {
+            checkpoint = null;
+            Files.deleteIfExists(part.toPath());
+        }
+
+        ColumnProfiler profiler = null;
+        if (profiling && checkpoint != null) {
+            System.out.println("Resumed conversion, column profile will not be written.");
+        } else if (profiling) {
+            profiler = new ColumnProfiler();
+        }
+
+        boolean found;
+        try (CountingOutputStream counter = new CountingOutputStream(
+                new FileOutputStream(part, checkpoint != null), checkpoint != null ? checkpoint.offset : 0)) {
+            CSVByteRowWriter csvWriter = new CSVByteRowWriter(counter, this.separator,
+                    this.formattingConvention, StandardCharsets.UTF_8);
+            CheckpointingRowHandler handler = new CheckpointingRowHandler(csvWriter, counter,
+                    checkpointFile, source, sheetName);
+
+            try (OPCPackage pkg = OPCPackage.open(source, PackageAccess.READ)) {
+                XLSXCovertCSVReader reader = new XLSXCovertCSVReader(pkg, System.out, sheetName, 0, -1);
+                if (checkpoint != null) {
+                    reader.setResumeAfterRow(checkpoint.rowNum);
+                    csvWriter.resumeAfter(checkpoint.rowNum);
+                }
+                reader.setProfiler(profiler);
+                found = reader.process(handler);
+            }
+            csvWriter.flush();
+            counter.sync();
+            logger.debug("Shared string cache: {}", csvWriter.getSharedStringCache());
+        }
+
+        if (!found) {
+            Files.deleteIfExists(part.toPath());
+            Files.deleteIfExists(checkpointFile.toPath());
+            return false;
+        }
+        moveAtomically(part, destination);
+        Files.deleteIfExists(checkpointFile.toPath());
+        if (profiler != null) {
+            profiler.writeJson(ColumnProfiler.profileFileFor(destination), source.getName(), sheetName);
+        }
+        return true;
+    }
+
+    /**
+     * 先写临时文件再重命名，目标文件要么是完整的旧文件，要么是完整的新文件
+     */
+    static void moveAtomically(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            logger.warn("Atomic move not supported for {}, falling back to plain rename", to);
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 写出行的同时每隔checkpointRows行记录一次检查点
+     */
+    class CheckpointingRowHandler implements RowHandler {
+
+        private final CSVByteRowWriter csvWriter;
+        private final CountingOutputStream counter;
+        private final File checkpointFile;
+        private final File source;
+        private final String sheetName;
+        private int rowsSinceCheckpoint;
+
+        CheckpointingRowHandler(CSVByteRowWriter csvWriter, CountingOutputStream counter,
+                                File checkpointFile, File source, String sheetName) {
+            this.csvWriter = csvWriter;
+            this.counter = counter;
+            this.checkpointFile = checkpointFile;
+            this.source = source;
+            this.sheetName = sheetName;
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] record) throws IOException {
+            handleRow(rowNum, record, null);
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] record, int[] sstIndexes) throws IOException {
+            csvWriter.handleRow(rowNum, record, sstIndexes);
+            if (++rowsSinceCheckpoint >= checkpointRows) {
+                // 先把数据刷到磁盘，再记录偏移，保证检查点之前的内容一定完整
+                csvWriter.flush();
+                counter.sync();
+                new Checkpoint(rowNum, counter.getCount()).save(checkpointFile, source, sheetName);
+                rowsSinceCheckpoint = 0;
+            }
+        }
+
+        @Override
+        public SharedStringCache getSharedStringCache() {
+            return csvWriter.getSharedStringCache();
+        }
+    }
+
+    /**
+     * 检查点：最后一个完整写出的行号和此时输出文件的字节数。
+     * 同时记录源文件的大小和修改时间，源文件变化后检查点作废。
+     */
+    static class Checkpoint {
+
+        final int rowNum;
+        final long offset;
+
+        Checkpoint(int rowNum, long offset) {
+            this.rowNum = rowNum;
+            this.offset = offset;
+        }
+
+        void save(File file, File source, String sheetName) throws IOException {
+            Properties props = new Properties();
+            props.setProperty("row", String.valueOf(rowNum));
+            props.setProperty("offset", String.valueOf(offset));
+            props.setProperty("source.length", String.valueOf(source.length()));
+            props.setProperty("source.lastModified", String.valueOf(source.lastModified()));
+            props.setProperty("sheet", sheetName == null ? "" : sheetName);
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                props.store(fos, "ExcelToCSV checkpoint");
+                fos.getFD().sync();
+            }
+            moveAtomically(tmp, file);
+        }
+
+        static Checkpoint load(File file, File source, String sheetName) {
+            if (!file.exists()) {
+                return null;
+            }
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+                if (source.length() != Long.parseLong(props.getProperty("source.length"))
+                        || source.lastModified() != Long.parseLong(props.getProperty("source.lastModified"))
+                        || !(sheetName == null ? "" : sheetName).equals(props.getProperty("sheet"))) {
+                    System.out.println("Source changed since checkpoint, starting over.");
+                    return null;
+                }
+                return new Checkpoint(Integer.parseInt(props.getProperty("row")),
+                        Long.parseLong(props.getProperty("offset")));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Ignoring unreadable checkpoint {}", file, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 统计写出的字节数，用于记录检查点的文件偏移
+     */
+    static class CountingOutputStream extends FilterOutputStream {
+
+        private final FileOutputStream file;
+        private long count;
+
+        CountingOutputStream(FileOutputStream out, long initialCount) {
+            super(out);
+            this.file = out;
+            this.count = initialCount;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        void sync() throws IOException {
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * @param args [xlsx文件] [sheet名称] [输出的CSV文件] [每多少行记录一次检查点] [--profile]
+     */
+    public static void main(String[] args) throws Exception {
+        boolean profile = args.length > 0 && "--profile".equals(args[args.length - 1]);
+        if (profile) {
+            args = Arrays.copyOf(args, args.length - 1);
+        }
+        if (args.length < 3) {
+            System.out.println("Usage: java ResumableSheetConverter [Source xlsx] [Sheet Name] "
+                    + "[Destination CSV] [Checkpoint Rows] [--profile]");
+            return;
+        }
+        int checkpointRows = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CHECKPOINT_ROWS;
+        long startTime = System.currentTimeMillis();
+        ResumableSheetConverter converter = new ResumableSheetConverter(",",
+                ExcelToCSV.EXCEL_STYLE_ESCAPING, checkpointRows);
+        converter.setProfiling(profile);
+        if (!converter.convert(new File(args[0]), args[1], new File(args[2]))) {
+            System.out.println("Sheet [" + args[1] + "] not found.");
+            return;
+        }
+        System.out.println("Conversion took " +
+                ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+    }
+}
@@ -0,0 +1,635 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.xml.sax.SAXException;
+
+/**
+ * 把流式解析的行直接绑定成对象，逐个交给consumer，不再先拿到全部 String[] 再手工转换。
+ *
+ * 绑定关系在创建时一次算好：字段通过公开的setter（LambdaMetafactory生成的函数接口）
+ * 或字段本身的 MethodHandle 赋值；没有无参构造方法时使用全部参数都带 @ExcelColumn 的构造方法。
+ * 每行只做类型转换和一次接口调用，不使用反射。
+ * 目标类来自RowBinder看不到的子类加载器（servlet容器、插件）时，函数接口的实现类改用目标类的lookup生成，
+ * 仍然无法生成时退回到 MethodHandle 调用。
+ *
+ * 目标类型为数值、日期或布尔的列，解析器只提供原始值（见 CellValues），不格式化成字符串再解析；
+ * String 类型的列得到与CSV相同的显示文本。
+ * 支持的类型：int、long、double、boolean 及其包装类，String、BigDecimal、LocalDate、LocalDateTime、Date。
+ *
+ * 列的确定：字段或参数上的 @ExcelColumn 指定表头名称或列下标；类中没有任何 @ExcelColumn 时，
+ * 所有非static、非transient字段按字段名匹配表头。headerRow 之前的行忽略，所有绑定列都为空的行跳过。
+ */
+public class RowBinder<T> implements RowHandler {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    // Java 9+ 的 MethodHandles.privateLookupIn，Java 8 上为null
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    private final Class<T> type;
+    private final Consumer<? super T> consumer;
+    private final List<Column> columns = new ArrayList<>();
+    private final CellValues cellValues = new CellValues();
+    // 字段模式
+    private Supplier<T> factory;
+    // 构造方法模式：参数为 Object[]，返回新对象
+    private MethodHandle constructor;
+    private int headerRow;
+    private boolean resolved;
+    private long count;
+
+    /**
+     * @param type 目标类
+     * @param consumer 每绑定一行调用一次，在解析线程中执行
+     */
+    public RowBinder(Class<T> type, Consumer<? super T> consumer) {
+        this.type = type;
+        this.consumer = consumer;
+        try {
+            Constructor<?> ctor = findBindingConstructor(type);
+            if (ctor == null) {
+                this.factory = createFactory(type);
+                collectFields(type);
+            } else {
+                collectParameters(ctor);
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalArgumentException("Cannot bind rows to " + type.getName(), t);
+        }
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("No bindable fields in " + type.getName());
+        }
+    }
+
+    /**
+     * 表头所在的行号（从0开始），默认0；为-1时没有表头，所有列都必须用下标指定
+     */
+    public RowBinder<T> setHeaderRow(int headerRow) {
+        this.headerRow = headerRow;
+        return this;
+    }
+
+    /**
+     * @return 已绑定并交给consumer的对象数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public CellValues getCellValues() {
+        return cellValues;
+    }
+
+    @Override
+    public void handleRow(int rowNum, String[] record) throws IOException {
+        if (rowNum < headerRow) {
+            return;
+        }
+        if (!resolved) {
+            resolve(rowNum == headerRow ? record : null);
+            if (rowNum == headerRow) {
+                return;
+            }
+        }
+        boolean blank = true;
+        for (Column column : columns) {
+            if (!column.isBlank(record, cellValues)) {
+                blank = false;
+                break;
+            }
+        }
+        if (blank) {
+            return;
+        }
+        T target;
+        try {
+            if (factory != null) {
+                target = factory.get();
+                for (Column column : columns) {
+                    column.assign(target, record, cellValues, rowNum);
+                }
+            } else {
+                Object[] args = new Object[columns.size()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = columns.get(i).value(record, cellValues, rowNum);
+                }
+                target = type.cast(constructor.invokeExact(args));
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("Failed to create " + type.getName() + " for row " + (rowNum + 1), t);
+        }
+        consumer.accept(target);
+        count++;
+    }
+
+    /**
+     * 按表头确定各列下标，并把非字符串类型的列标记为只取原始值
+     */
+    private void resolve(String[] header) throws IOException {
+        Map<String, Integer> names = new HashMap<>();
+        if (header != null) {
+            for (int i = 0; i < header.length; i++) {
+                if (header[i] != null) {
+                    names.putIfAbsent(header[i].trim(), i);
+                }
+            }
+        }
+        for (Column column : columns) {
+            if (column.index < 0) {
+                Integer index = names.get(column.name);
+                if (index == null) {
+                    throw new IOException(header == null
+                            ? "Header row " + (headerRow + 1) + " not found"
+                            : "Column '" + column.name + "' not found in header row " + (headerRow + 1));
+                }
+                column.index = index;
+            }
+            if (column.kind != Kind.STRING) {
+                cellValues.setRaw(column.index, true);
+            }
+        }
+        resolved = true;
+    }
+
+    private static Constructor<?> findBindingConstructor(Class<?> type) {
+        Constructor<?> annotated = null;
+        for (Constructor<?> ctor : type.getDeclaredConstructors()) {
+            if (ctor.getParameterCount() == 0) {
+                return null;
+            }
+            boolean all = true;
+            for (Parameter p : ctor.getParameters()) {
+                all &= p.isAnnotationPresent(ExcelColumn.class);
+            }
+            if (all) {
+                annotated = ctor;
+            }
+        }
+        if (annotated == null) {
+            throw new IllegalArgumentException(type.getName()
+                    + " needs a no-arg constructor or a constructor with @ExcelColumn on every parameter");
+        }
+        return annotated;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> createFactory(Class<T> type) throws Throwable {
+        Constructor<T> ctor = type.getDeclaredConstructor();
+        if (Modifier.isPublic(type.getModifiers()) && Modifier.isPublic(ctor.getModifiers())) {
+            try {
+                MethodHandles.Lookup lookup = lookupFor(type);
+                MethodHandle handle = lookup.findConstructor(type, MethodType.methodType(void.class));
+                CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                        MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+                return (Supplier<T>) site.getTarget().invokeExact();
+            } catch (ReflectiveOperationException | LambdaConversionException | LinkageError e) {
+                // 无法在目标类中生成实现类，使用下面的 MethodHandle
+            }
+        }
+        ctor.setAccessible(true);
+        MethodHandle handle = LOOKUP.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+        return () -> {
+            try {
+                return (T) handle.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+    private void collectFields(Class<?> type) throws Throwable {
+        List<Field> fields = new ArrayList<>();
+        boolean annotated = false;
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                int mod = f.getModifiers();
+                if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || f.isSynthetic()) {
+                    continue;
+                }
+                fields.add(f);
+                annotated |= f.isAnnotationPresent(ExcelColumn.class);
+            }
+        }
+        for (Field f : fields) {
+            ExcelColumn ann = f.getAnnotation(ExcelColumn.class);
+            if (annotated && ann == null) {
+                continue;
+            }
+            if (Modifier.isFinal(f.getModifiers())) {
+                throw new IllegalArgumentException("Field " + f.getName() + " is final, bind it through a constructor");
+            }
+            Column column = new Column(f.getName(), f.getType(), ann);
+            column.setter = createSetter(f, column.kind);
+            columns.add(column);
+        }
+    }
+
+    private void collectParameters(Constructor<?> ctor) throws Throwable {
+        for (Parameter p : ctor.getParameters()) {
+            ExcelColumn ann = p.getAnnotation(ExcelColumn.class);
+            if (ann.value().isEmpty() && ann.index() < 0) {
+                throw new IllegalArgumentException("Constructor parameter " + p.getName()
+                        + " needs a header name or column index");
+            }
+            columns.add(new Column(p.getName(), p.getType(), ann));
+        }
+        ctor.setAccessible(true);
+        this.constructor = LOOKUP.unreflectConstructor(ctor)
+                .asSpreader(Object[].class, ctor.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    /**
+     * 有公开的 setXxx 时用 LambdaMetafactory 生成setter，否则直接用字段的 MethodHandle
+     */
+    private static Object createSetter(Field field, Kind kind) throws Throwable {
+        Class<?> owner = field.getDeclaringClass();
+        Class<?> fieldType = field.getType();
+        Class<?> iface = kind.setterInterface;
+        Class<?> valueType = kind.primitive ? fieldType : Object.class;
+        String setterName = "set" + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        Method method = null;
+        try {
+            method = owner.getMethod(setterName, fieldType);
+        } catch (NoSuchMethodException e) {
+            // 没有setter，使用字段
+        }
+        MethodHandle assign;
+        if (method != null && Modifier.isPublic(owner.getModifiers()) && !Modifier.isStatic(method.getModifiers())) {
+            assign = LOOKUP.unreflect(method);
+            try {
+                MethodHandles.Lookup lookup = lookupFor(owner);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "set", MethodType.methodType(iface),
+                        MethodType.methodType(void.class, Object.class, valueType), lookup.unreflect(method),
+                        MethodType.methodType(void.class, owner, fieldType));
+                return site.getTarget().invoke();
+            } catch (ReflectiveOperationException | LambdaConversionException | LinkageError e) {
+                // 无法在目标类中生成实现类，通过setter的 MethodHandle 调用
+            }
+        } else {
+            field.setAccessible(true);
+            assign = LOOKUP.unreflectSetter(field);
+        }
+        MethodHandle handle = assign.asType(MethodType.methodType(void.class, Object.class, valueType));
+        switch (kind) {
+            case INT:
+                return (IntSetter) (target, v) -> invokeSetter(() -> {
+                    handle.invokeExact(target, v);
+                });
+            case LONG:
+                return (LongSetter) (target, v) -> invokeSetter(() -> {
+                    handle.invokeExact(target, v);
+                });
+            case DOUBLE:
+                return (DoubleSetter) (target, v) -> invokeSetter(() -> {
+                    handle.invokeExact(target, v);
+                });
+            case BOOLEAN:
+                return (BooleanSetter) (target, v) -> invokeSetter(() -> {
+                    handle.invokeExact(target, v);
+                });
+            default:
+                return (ObjectSetter) (target, v) -> invokeSetter(() -> {
+                    handle.invokeExact(target, v);
+                });
+        }
+    }
+
+    /**
+     * 生成函数接口实现类所用的lookup。目标类对RowBinder的类加载器可见时用RowBinder自己的lookup；
+     * 否则生成的类必须定义在目标类一侧才能链接到目标类：Java 9+ 用 privateLookupIn，Java 8 用 in()。
+     * 目标类在另一个模块（包括另一个类加载器的未命名模块）中时，较新的JDK会拒绝这样的lookup，由调用方退回
+     */
+    private static MethodHandles.Lookup lookupFor(Class<?> target) throws ReflectiveOperationException {
+        if (visibleFromBinder(target)) {
+            return LOOKUP;
+        }
+        if (PRIVATE_LOOKUP_IN == null) {
+            return LOOKUP.in(target);
+        }
+        try {
+            return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, target, LOOKUP);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ReflectiveOperationException) {
+                throw (ReflectiveOperationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean visibleFromBinder(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, RowBinder.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static void invokeSetter(HandleCall call) {
+        try {
+            call.invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    interface HandleCall {
+        void invoke() throws Throwable;
+    }
+
+    // 实现类可能生成在目标类一侧（其他包、其他类加载器），setter接口需要是public的
+    public interface IntSetter {
+        void set(Object target, int value);
+    }
+
+    public interface LongSetter {
+        void set(Object target, long value);
+    }
+
+    public interface DoubleSetter {
+        void set(Object target, double value);
+    }
+
+    public interface BooleanSetter {
+        void set(Object target, boolean value);
+    }
+
+    public interface ObjectSetter {
+        void set(Object target, Object value);
+    }
+
+    /**
+     * 目标类型的分类，决定取值方式和setter接口
+     */
+    enum Kind {
+        INT(IntSetter.class, true), LONG(LongSetter.class, true), DOUBLE(DoubleSetter.class, true),
+        BOOLEAN(BooleanSetter.class, true), BOXED(ObjectSetter.class, false), STRING(ObjectSetter.class, false),
+        DECIMAL(ObjectSetter.class, false), DATE_TIME(ObjectSetter.class, false);
+
+        final Class<?> setterInterface;
+        final boolean primitive;
+
+        Kind(Class<?> setterInterface, boolean primitive) {
+            this.setterInterface = setterInterface;
+            this.primitive = primitive;
+        }
+
+        static Kind of(Class<?> type) {
+            if (type == int.class) {
+                return INT;
+            } else if (type == long.class) {
+                return LONG;
+            } else if (type == double.class) {
+                return DOUBLE;
+            } else if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == Integer.class || type == Long.class || type == Double.class || type == Boolean.class) {
+                return BOXED;
+            } else if (type == String.class) {
+                return STRING;
+            } else if (type == BigDecimal.class) {
+                return DECIMAL;
+            } else if (type == LocalDate.class || type == LocalDateTime.class || type == Date.class) {
+                return DATE_TIME;
+            }
+            throw new IllegalArgumentException("Unsupported type " + type.getName());
+        }
+    }
+
+    /**
+     * 一个绑定列：列下标、目标类型和赋值方式
+     */
+    static class Column {
+
+        final String name;
+        final Class<?> type;
+        final Kind kind;
+        int index;
+        Object setter;
+
+        Column(String property, Class<?> type, ExcelColumn ann) {
+            this.name = ann != null && !ann.value().isEmpty() ? ann.value() : property;
+            this.index = ann != null ? ann.index() : -1;
+            this.type = type;
+            this.kind = Kind.of(type);
+        }
+
+        boolean isBlank(String[] record, CellValues values) {
+            if (values.kind(index) != CellValues.NONE) {
+                return false;
+            }
+            String text = index < record.length ? record[index] : null;
+            return text == null || text.isEmpty();
+        }
+
+        /**
+         * 字段模式：按类型取值并赋值，空单元格不赋值（保留字段的默认值）
+         */
+        void assign(Object target, String[] record, CellValues values, int rowNum) throws IOException {
+            if (isBlank(record, values)) {
+                return;
+            }
+            try {
+                switch (kind) {
+                    case INT:
+                        ((IntSetter) setter).set(target, toInt(record, values));
+                        break;
+                    case LONG:
+                        ((LongSetter) setter).set(target, toLong(record, values));
+                        break;
+                    case DOUBLE:
+                        ((DoubleSetter) setter).set(target, toDouble(record, values));
+                        break;
+                    case BOOLEAN:
+                        ((BooleanSetter) setter).set(target, toBoolean(record, values));
+                        break;
+                    default:
+                        ((ObjectSetter) setter).set(target, toObject(record, values));
+                        break;
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw conversionError(record, rowNum, e);
+            }
+        }
+
+        /**
+         * 构造方法模式：装箱后的值，空单元格为null（基本类型为0或false）
+         */
+        Object value(String[] record, CellValues values, int rowNum) throws IOException {
+            if (isBlank(record, values)) {
+                return kind == Kind.INT ? Integer.valueOf(0) : kind == Kind.LONG ? Long.valueOf(0)
+                        : kind == Kind.DOUBLE ? Double.valueOf(0) : kind == Kind.BOOLEAN ? Boolean.FALSE : null;
+            }
+            try {
+                switch (kind) {
+                    case INT:
+                        return toInt(record, values);
+                    case LONG:
+                        return toLong(record, values);
+                    case DOUBLE:
+                        return toDouble(record, values);
+                    case BOOLEAN:
+                        return toBoolean(record, values);
+                    default:
+                        return toObject(record, values);
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw conversionError(record, rowNum, e);
+            }
+        }
+
+        private IOException conversionError(String[] record, int rowNum, RuntimeException e) {
+            String text = index < record.length ? record[index] : null;
+            return new IOException("Row " + (rowNum + 1) + ", column " + CellReference.convertNumToColString(index)
+                    + " (" + name + "): cannot convert " + (text != null ? "'" + text + "'" : "numeric value")
+                    + " to " + type.getSimpleName(), e);
+        }
+
+        private int toInt(String[] record, CellValues values) {
+            long v = toLong(record, values);
+            if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Out of int range: " + v);
+            }
+            return (int) v;
+        }
+
+        private long toLong(String[] record, CellValues values) {
+            if (values.kind(index) != CellValues.NONE) {
+                double d = values.number(index);
+                if (d != Math.rint(d) || Math.abs(d) > 9.007199254740992E15) {
+                    throw new IllegalArgumentException("Not an integer: " + d);
+                }
+                return (long) d;
+            }
+            String text = record[index].trim();
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // 文本形式的 "12.0" 之类
+                return new BigDecimal(text).longValueExact();
+            }
+        }
+
+        private double toDouble(String[] record, CellValues values) {
+            if (values.kind(index) != CellValues.NONE) {
+                return values.number(index);
+            }
+            return Double.parseDouble(record[index].trim());
+        }
+
+        private boolean toBoolean(String[] record, CellValues values) {
+            if (values.kind(index) != CellValues.NONE) {
+                return values.number(index) != 0;
+            }
+            String text = record[index].trim();
+            if ("TRUE".equalsIgnoreCase(text) || "1".equals(text)) {
+                return true;
+            }
+            if ("FALSE".equalsIgnoreCase(text) || "0".equals(text)) {
+                return false;
+            }
+            throw new IllegalArgumentException("Not a boolean: " + text);
+        }
+
+        private Object toObject(String[] record, CellValues values) {
+            if (kind == Kind.STRING) {
+                return record[index];
+            }
+            if (type == Integer.class) {
+                return toInt(record, values);
+            } else if (type == Long.class) {
+                return toLong(record, values);
+            } else if (type == Double.class) {
+                return toDouble(record, values);
+            } else if (type == Boolean.class) {
+                return toBoolean(record, values);
+            } else if (type == BigDecimal.class) {
+                return values.kind(index) != CellValues.NONE
+                        ? BigDecimal.valueOf(values.number(index)) : new BigDecimal(record[index].trim());
+            }
+            LocalDateTime time = values.kind(index) != CellValues.NONE
+                    ? CellValueRenderer.toLocalDateTime(values.number(index))
+                    : CellValueRenderer.parseDateTime(record[index].trim());
+            if (type == LocalDate.class) {
+                return time.toLocalDate();
+            } else if (type == LocalDateTime.class) {
+                return time;
+            }
+            return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+        }
+    }
+
+    /**
+     * 流式读取xlsx中的一个sheet并绑定成对象，内存占用与行数无关
+     *
+     * @param source xlsx文件
+     * @param sheetName sheet名称，为null时读取第一个sheet
+     * @param type 目标类
+     * @param consumer 每行一个对象
+     * @return 绑定的对象数
+     * @throws IllegalArgumentException sheet不存在或目标类无法绑定
+     */
+    public static <T> long bind(File source, String sheetName, Class<T> type, Consumer<? super T> consumer)
+            throws IOException, OpenXML4JException, ParserConfigurationException, SAXException {
+        RowBinder<T> binder = new RowBinder<>(type, consumer);
+        try (OPCPackage pkg = OPCPackage.open(source, PackageAccess.READ)) {
+            XLSXCovertCSVReader reader = new XLSXCovertCSVReader(pkg, System.out, sheetName, 0, -1);
+            if (!reader.process(binder)) {
+                throw new IllegalArgumentException("Sheet [" + sheetName + "] not found in " + source.getName());
+            }
+        }
+        return binder.getCount();
+    }
+}
@@ -0,0 +1,94 @@
+package com.ow.util;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * 流式解析时的行过滤条件（谓词下推），见 XLSXCovertCSVReader.setRowFilter。
+ *
+ * 解析一行时只有 keyColumns 中的列立即查共享字符串、格式化，其余单元格先记下原始内容；
+ * 行结束时调用 accept，通过后才格式化其余单元格并回调 RowHandler，不通过的行直接丢弃。
+ */
+public interface RowFilter {
+
+    /**
+     * @return 判断时需要的列下标（从0开始）
+     */
+    int[] keyColumns();
+
+    /**
+     * @param rowNum 行号（从0开始）
+     * @param record 只有 keyColumns 中的列已经填充，其余列为null；数组会被复用
+     * @return 是否保留该行
+     */
+    boolean accept(int rowNum, String[] record);
+
+    /**
+     * 同时满足两个条件
+     */
+    default RowFilter and(RowFilter other) {
+        RowFilter self = this;
+        int[] columns = IntStream.concat(Arrays.stream(keyColumns()), Arrays.stream(other.keyColumns()))
+                .distinct().toArray();
+        return new RowFilter() {
+            @Override
+            public int[] keyColumns() {
+                return columns;
+            }
+
+            @Override
+            public boolean accept(int rowNum, String[] record) {
+                return self.accept(rowNum, record) && other.accept(rowNum, record);
+            }
+        };
+    }
+
+    /**
+     * 按某一列格式化后的值判断，值为null表示单元格为空
+     */
+    static RowFilter matches(int column, Predicate<String> predicate) {
+        int[] columns = {column};
+        return new RowFilter() {
+            @Override
+            public int[] keyColumns() {
+                return columns;
+            }
+
+            @Override
+            public boolean accept(int rowNum, String[] record) {
+                return predicate.test(column < record.length ? record[column] : null);
+            }
+        };
+    }
+
+    /**
+     * 某一列格式化后的值等于value
+     */
+    static RowFilter equalTo(int column, String value) {
+        return matches(column, value::equals);
+    }
+
+    /**
+     * 这些列都不为空
+     */
+    static RowFilter notEmpty(int... columns) {
+        int[] keys = columns.clone();
+        return new RowFilter() {
+            @Override
+            public int[] keyColumns() {
+                return keys;
+            }
+
+            @Override
+            public boolean accept(int rowNum, String[] record) {
+                for (int column : keys) {
+                    if (column >= record.length || record[column] == null || record[column].isEmpty()) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,45 @@
+package com.ow.util;
+
+import java.io.IOException;
+
+/**
+ * 流式读取回调：sheet每解析完一行就回调一次，调用方不需要等整张sheet读完。
+ */
+public interface RowHandler {
+
+    /**
+     * 处理一行数据
+     *
+     * @param rowNum 行号（从0开始）
+     * @param record 该行各列的值，空单元格为null。数组在回调返回后会被复用，
+     *               如需保留请自行clone
+     * @throws IOException 输出失败时抛出，会中止本次解析
+     */
+    void handleRow(int rowNum, String[] record) throws IOException;
+
+    /**
+     * 带共享字符串下标的回调，默认忽略下标
+     *
+     * @param sstIndexes 与record等长，来自共享字符串表的单元格为其SST下标，其余为-1；
+     *                   同样会被复用
+     */
+    default void handleRow(int rowNum, String[] record, int[] sstIndexes) throws IOException {
+        handleRow(rowNum, record);
+    }
+
+    /**
+     * 输出端如需按SST下标缓存字符串（见 SharedStringCache），返回该缓存，
+     * 解析时会优先从中取字符串并回调带下标的 handleRow；默认不使用缓存
+     */
+    default SharedStringCache getSharedStringCache() {
+        return null;
+    }
+
+    /**
+     * 输出端如需数值、日期和布尔单元格的原始值（见 CellValues），返回该对象，
+     * 解析器每行填充后再回调 handleRow；默认不提供
+     */
+    default CellValues getCellValues() {
+        return null;
+    }
+}
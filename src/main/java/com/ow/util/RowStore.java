@@ -0,0 +1,374 @@
+package com.ow.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 整表转换（WorkbookFactory路径）用的紧凑行存储，代替 ArrayList&lt;ArrayList&lt;String&gt;&gt;。
+ *
+ * 单元格按UTF-8编码连续写入堆外的slab（direct ByteBuffer），每行一条记录：
+ * <pre>[单元格数 int][每个单元格: 字节长度 int（null为-1）+ 字节]</pre>
+ * 稀疏的sheet另有两种记录，占用的空间只与有值的单元格数有关，与行号和列号的跨度无关：
+ * <pre>[EMPTY_RUN][连续空行数 long]
+ * [SPARSE_ROW][单元格数 int][每个单元格: 列下标 int + 字节长度 int + 字节]</pre>
+ * 记录按顺序排列、带长度前缀，本身就是顺序回放所需的行索引，不为每个单元格保留Java对象。
+ * 写满的slab封存；封存的slab总量超过内存预算时，最早的slab写入临时文件后复用其内存，
+ * 堆外内存不超过预算加一个slab，与sheet大小无关。写CSV时按写入顺序回放：先读临时文件，再读内存中的slab。
+ * 非线程安全。
+ */
+public class RowStore implements Closeable {
+
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    // 记录头中的单元格数不会为负，负值标记另外两种记录
+    private static final int EMPTY_RUN = -1;
+    private static final int SPARSE_ROW = -2;
+
+    private final int slabSize;
+    private final long memoryBudget;
+
+    // 内存中封存的slab，按写入顺序
+    private final Deque<ByteBuffer> sealed = new ArrayDeque<>();
+    // 溢出后可复用的slab
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    private ByteBuffer current;
+    private long sealedBytes;
+
+    private File spillFile;
+    private FileChannel spillChannel;
+    private int maxSpilledSlab;
+
+    private long rowCount;
+    private byte[] scratch = new byte[256];
+    private int[] columns = new int[16];
+
+    public RowStore() {
+        this(DEFAULT_SLAB_SIZE, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param slabSize 每块堆外内存的大小
+     * @param memoryBudget 内存中封存的slab总量上限，超过后溢出到临时文件
+     */
+    public RowStore(int slabSize, long memoryBudget) {
+        if (slabSize < 64) {
+            throw new IllegalArgumentException("slabSize is too small.");
+        }
+        this.slabSize = slabSize;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * 追加一行
+     */
+    public void addRow(List<String> cells) throws IOException {
+        int size = cells.size();
+        // UTF-16的一个char编码为UTF-8最多3个字节
+        long bound = 4 + 4L * size;
+        for (int i = 0; i < size; i++) {
+            String cell = cells.get(i);
+            if (cell != null) {
+                bound += 3L * cell.length();
+            }
+        }
+        if (bound > Integer.MAX_VALUE) {
+            throw new IOException("Row is too large to store.");
+        }
+        ensureCapacity((int) bound);
+        ByteBuffer slab = current;
+        slab.putInt(size);
+        for (int i = 0; i < size; i++) {
+            String cell = cells.get(i);
+            if (cell == null) {
+                slab.putInt(-1);
+                continue;
+            }
+            int lengthPos = slab.position();
+            slab.putInt(0);
+            encode(cell, slab);
+            slab.putInt(lengthPos, slab.position() - lengthPos - 4);
+        }
+        rowCount++;
+    }
+
+    /**
+     * 追加count个空行，只占一条记录
+     */
+    public void addEmptyRows(long count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        ensureCapacity(12);
+        current.putInt(EMPTY_RUN);
+        current.putLong(count);
+        rowCount += count;
+    }
+
+    /**
+     * 追加一个稀疏行：columns[i]列的值为values中的第i个，其余列为空
+     *
+     * @param columns 列下标，递增
+     * @param values 与columns一一对应的值，不为null
+     */
+    public void addSparseRow(int[] columns, List<String> values) throws IOException {
+        int size = values.size();
+        long bound = 8 + 8L * size;
+        for (int i = 0; i < size; i++) {
+            bound += 3L * values.get(i).length();
+        }
+        if (bound > Integer.MAX_VALUE) {
+            throw new IOException("Row is too large to store.");
+        }
+        ensureCapacity((int) bound);
+        ByteBuffer slab = current;
+        slab.putInt(SPARSE_ROW);
+        slab.putInt(size);
+        for (int i = 0; i < size; i++) {
+            slab.putInt(columns[i]);
+            int lengthPos = slab.position();
+            slab.putInt(0);
+            encode(values.get(i), slab);
+            slab.putInt(lengthPos, slab.position() - lengthPos - 4);
+        }
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 按写入顺序回放所有行。回调中的List和其中的字符串只在回调期间有效，List会被复用
+     */
+    public void replay(RowConsumer consumer) throws IOException {
+        List<String> row = new ArrayList<>();
+        if (spillChannel != null) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(maxSpilledSlab);
+            ByteBuffer header = ByteBuffer.allocate(4);
+            long pos = 0;
+            long end = spillChannel.size();
+            while (pos < end) {
+                header.clear();
+                pos += readFully(header, pos);
+                header.flip();
+                buffer.clear();
+                buffer.limit(header.getInt());
+                pos += readFully(buffer, pos);
+                buffer.flip();
+                replaySlab(buffer, row, consumer);
+            }
+        }
+        for (ByteBuffer slab : sealed) {
+            replaySlab(readView(slab), row, consumer);
+        }
+        if (current != null) {
+            replaySlab(readView(current), row, consumer);
+        }
+    }
+
+    private void replaySlab(ByteBuffer slab, List<String> row, RowConsumer consumer) throws IOException {
+        while (slab.hasRemaining()) {
+            int size = slab.getInt();
+            if (size == EMPTY_RUN) {
+                consumer.acceptEmptyRows(slab.getLong());
+                continue;
+            }
+            row.clear();
+            if (size == SPARSE_ROW) {
+                size = slab.getInt();
+                if (columns.length < size) {
+                    columns = new int[Math.max(size, columns.length * 2)];
+                }
+                for (int i = 0; i < size; i++) {
+                    columns[i] = slab.getInt();
+                    row.add(readString(slab, slab.getInt()));
+                }
+                consumer.acceptSparse(columns, row);
+                continue;
+            }
+            for (int i = 0; i < size; i++) {
+                int length = slab.getInt();
+                row.add(length < 0 ? null : readString(slab, length));
+            }
+            consumer.accept(row);
+        }
+    }
+
+    private String readString(ByteBuffer slab, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        slab.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer readView(ByteBuffer slab) {
+        ByteBuffer view = slab.duplicate();
+        view.flip();
+        return view;
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = spillChannel.read(buffer, position + total);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of row spill file.");
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 保证当前slab至少还有bytes字节，不够时封存当前slab，必要时先溢出最早的slab
+     */
+    private void ensureCapacity(int bytes) throws IOException {
+        if (current != null && current.remaining() >= bytes) {
+            return;
+        }
+        if (current != null) {
+            sealed.addLast(current);
+            sealedBytes += current.capacity();
+            current = null;
+            while (sealedBytes > memoryBudget && !sealed.isEmpty()) {
+                spill(sealed.removeFirst());
+            }
+        }
+        if (bytes > slabSize) {
+            // 超长的行单独一块，不放入复用队列
+            current = ByteBuffer.allocateDirect(bytes);
+        } else {
+            current = free.isEmpty() ? ByteBuffer.allocateDirect(slabSize) : free.removeFirst();
+            current.clear();
+        }
+    }
+
+    private void spill(ByteBuffer slab) throws IOException {
+        if (spillChannel == null) {
+            // 不用deleteOnExit：长时间运行的进程里每个RowStore都会在JVM退出钩子中留下一项，由close删除
+            spillFile = File.createTempFile("excel-rows", ".spill");
+            try {
+                spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+            } catch (IOException e) {
+                deleteSpillFile();
+                throw e;
+            }
+        }
+        ByteBuffer data = readView(slab);
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(data.remaining()).flip();
+        maxSpilledSlab = Math.max(maxSpilledSlab, data.remaining());
+        while (header.hasRemaining()) {
+            spillChannel.write(header);
+        }
+        while (data.hasRemaining()) {
+            spillChannel.write(data);
+        }
+        sealedBytes -= slab.capacity();
+        if (slab.capacity() == slabSize) {
+            free.addLast(slab);
+        }
+    }
+
+    /**
+     * 手工UTF-8编码，直接写入slab，不产生中间byte[]
+     */
+    private static void encode(String s, ByteBuffer out) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xf0 | (cp >> 18)));
+                out.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                out.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (cp & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符，与 String.getBytes 一样替换为 '?'
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    /**
+     * 删除溢出的临时文件。堆外内存随对象一起由GC回收
+     *
+     * @throws IOException 临时文件无法删除
+     */
+    @Override
+    public void close() throws IOException {
+        sealed.clear();
+        free.clear();
+        current = null;
+        try {
+            if (spillChannel != null) {
+                spillChannel.close();
+                spillChannel = null;
+            }
+        } finally {
+            deleteSpillFile();
+        }
+    }
+
+    private void deleteSpillFile() throws IOException {
+        File file = spillFile;
+        spillFile = null;
+        if (file != null && !file.delete() && file.exists()) {
+            throw new IOException("Could not delete row spill file " + file);
+        }
+    }
+
+    /**
+     * 回放时的行回调
+     */
+    public interface RowConsumer {
+        void accept(List<String> row) throws IOException;
+
+        /**
+         * count个空行，默认逐行回调空行
+         */
+        default void acceptEmptyRows(long count) throws IOException {
+            List<String> empty = Collections.emptyList();
+            for (long i = 0; i < count; i++) {
+                accept(empty);
+            }
+        }
+
+        /**
+         * 稀疏行，columns只有前 values.size() 个有效，默认展开成完整的行（空列为null）
+         */
+        default void acceptSparse(int[] columns, List<String> values) throws IOException {
+            int size = values.size();
+            List<String> row = new ArrayList<>(size == 0 ? 0 : columns[size - 1] + 1);
+            for (int i = 0; i < size; i++) {
+                while (row.size() < columns[i]) {
+                    row.add(null);
+                }
+                row.add(values.get(i));
+            }
+            accept(row);
+        }
+    }
+}
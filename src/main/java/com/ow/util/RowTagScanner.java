@@ -0,0 +1,220 @@
+package com.ow.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 在sheet的XML字节上找 row 和 c 标签（可带命名空间前缀），取 r 属性得到行号和列号，不经过XML解析器、不取值。
+ * 单元格内容中的 &lt; 一定是转义过的，所以 &lt; 总是标签的开始。
+ *
+ * 可以同时把读到的字节原样写到另一个输出流（建立行索引时写解压缓存），
+ * 并在每个 row 标签开始时回调其行号和字节偏移。
+ */
+class RowTagScanner {
+
+    /**
+     * row 标签回调
+     */
+    interface RowListener {
+        /**
+         * @param rowNum 行号（从0开始）
+         * @param offset 该行 &lt;row 的 &lt; 在XML中的字节偏移
+         */
+        void rowStart(int rowNum, long offset) throws IOException;
+    }
+
+    private final InputStream in;
+    private final OutputStream copy;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int pos;
+    private int limit;
+    // 当前缓冲区之前已读的字节数
+    private long base;
+    private final byte[] name = new byte[64];
+    private int nameLength;
+    private int value;
+    private int valueColumn;
+
+    private int lastRow;
+    private int maxColumn;
+    private int minColumn = Integer.MAX_VALUE;
+    private long sheetDataEnd = -1;
+
+    /**
+     * @param copy 不为null时读到的字节原样写入
+     */
+    RowTagScanner(InputStream in, OutputStream copy) {
+        this.in = in;
+        this.copy = copy;
+    }
+
+    /**
+     * 读完整个流
+     *
+     * @param listener 可以为null
+     */
+    void scan(RowListener listener) throws IOException {
+        int row = 0;
+        int column = 0;
+        int b;
+        while ((b = read()) >= 0) {
+            if (b != '<') {
+                continue;
+            }
+            long tagOffset = base + pos - 1;
+            b = readName(read());
+            boolean isRow = isLocalName("row");
+            boolean isCell = !isRow && isLocalName("c");
+            if (!isRow && !isCell) {
+                if (sheetDataEnd < 0 && isLocalName("sheetData")) {
+                    while (b >= 0 && b != '>') {
+                        b = read();
+                    }
+                    sheetDataEnd = base + pos;
+                }
+                continue;
+            }
+            if (readAttributeR(b)) {
+                if (isRow) {
+                    row = value;
+                } else {
+                    column = valueColumn;
+                }
+            } else if (isRow) {
+                row++;
+            } else {
+                column++;
+            }
+            if (isRow) {
+                column = 0;
+                lastRow = row;
+                if (listener != null) {
+                    listener.rowStart(row - 1, tagOffset);
+                }
+            } else {
+                maxColumn = Math.max(maxColumn, column);
+                minColumn = Math.min(minColumn, column);
+            }
+        }
+    }
+
+    /**
+     * @return 最后一行的行号（从1开始），没有行时为0
+     */
+    int getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * @return 最大列号（从1开始）
+     */
+    int getMaxColumn() {
+        return maxColumn;
+    }
+
+    /**
+     * @return 最小列号（从1开始），没有单元格时为0
+     */
+    int getMinColumn() {
+        return minColumn == Integer.MAX_VALUE ? 0 : minColumn;
+    }
+
+    /**
+     * @return sheetData 开始标签之后的字节偏移，没有 sheetData 时为-1
+     */
+    long getSheetDataEnd() {
+        return sheetDataEnd;
+    }
+
+    /**
+     * @return 已读的字节数
+     */
+    long getLength() {
+        return base + limit;
+    }
+
+    /**
+     * 读标签名或属性名，返回名称之后的第一个字节
+     */
+    private int readName(int b) throws IOException {
+        nameLength = 0;
+        while (b > ' ' && b != '>' && b != '/' && b != '=') {
+            if (nameLength < name.length) {
+                name[nameLength++] = (byte) b;
+            }
+            b = read();
+        }
+        return b;
+    }
+
+    private boolean isLocalName(String expected) {
+        int start = nameLength - expected.length();
+        if (start < 0 || (start > 0 && name[start - 1] != ':')) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (name[start + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读到标签结束，遇到 r 属性时解析：行号存入value，单元格引用的列号（从1开始）存入valueColumn
+     *
+     * @return 是否有 r 属性
+     */
+    private boolean readAttributeR(int b) throws IOException {
+        while (b >= 0 && b != '>') {
+            if (b <= ' ' || b == '/') {
+                b = read();
+                continue;
+            }
+            b = readName(b);
+            boolean isR = nameLength == 1 && name[0] == 'r';
+            while (b >= 0 && b != '"' && b != '\'') {
+                b = read();
+            }
+            int quote = b;
+            value = 0;
+            valueColumn = 0;
+            while ((b = read()) >= 0 && b != quote) {
+                if (!isR) {
+                    continue;
+                }
+                if (b >= 'A' && b <= 'Z') {
+                    valueColumn = valueColumn * 26 + b - 'A' + 1;
+                } else if (b >= '0' && b <= '9') {
+                    value = value * 10 + b - '0';
+                }
+            }
+            if (isR) {
+                // 后面的属性不需要
+                while (b >= 0 && b != '>') {
+                    b = read();
+                }
+                return true;
+            }
+            b = read();
+        }
+        return false;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            base += limit;
+            limit = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+            if (copy != null) {
+                copy.write(buffer, 0, limit);
+            }
+        }
+        return buffer[pos++] & 0xff;
+    }
+}
@@ -0,0 +1,122 @@
+package com.ow.util;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * 共享字符串缓存：按SST下标保存字符串本身以及它按当前CSV方言转义、按输出编码编码后的字节。
+ * 分类、状态之类的列在大sheet中会重复几百万次，命中缓存时不再构造 XSSFRichTextString、
+ * 不再转义和编码，写出只是一次字节拷贝。
+ *
+ * 采用直接映射：下标按容量取模定位槽位，冲突时新条目覆盖旧条目。
+ * SST下标按首次出现的顺序分配，常用的分类字符串下标集中在前面，很少冲突；
+ * 查找不需要装箱和哈希，容量固定，内存有上限。超过 maxChars 的长字符串不缓存。
+ * 非线程安全，一个缓存只供一次解析使用。
+ */
+public class SharedStringCache {
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    public static final int DEFAULT_MAX_CHARS = 256;
+
+    private final int mask;
+    private final int maxChars;
+    private final Function<String, byte[]> encoder;
+    private final int[] keys;
+    private final String[] texts;
+    private final byte[][] encoded;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity 最多缓存的条目数，向上取整为2的幂
+     * @param maxChars 超过该长度的字符串不缓存
+     * @param encoder 把字符串转成输出字节（含转义）的函数
+     */
+    public SharedStringCache(int capacity, int maxChars, Function<String, byte[]> encoder) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive.");
+        }
+        int size = Integer.highestOneBit(Math.min(capacity, 1 << 30));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.maxChars = maxChars;
+        this.encoder = encoder;
+        this.keys = new int[size];
+        this.texts = new String[size];
+        this.encoded = new byte[size][];
+        Arrays.fill(this.keys, -1);
+    }
+
+    /**
+     * 取缓存的字符串，未缓存时返回null，由调用方解析后通过 put 放入
+     */
+    public String text(int sstIndex) {
+        int slot = sstIndex & mask;
+        if (keys[slot] == sstIndex) {
+            hits++;
+            return texts[slot];
+        }
+        misses++;
+        return null;
+    }
+
+    public void put(int sstIndex, String text) {
+        if (sstIndex < 0 || text.length() > maxChars) {
+            return;
+        }
+        int slot = sstIndex & mask;
+        if (keys[slot] >= 0) {
+            evictions++;
+        }
+        keys[slot] = sstIndex;
+        texts[slot] = text;
+        encoded[slot] = null;
+    }
+
+    /**
+     * 取字符串编码后的字节，第一次使用时才编码。
+     * 同一行中两个下标冲突时槽位已被覆盖，此时直接编码，不影响正确性
+     *
+     * @param sstIndex SST下标
+     * @param text 该下标对应的字符串
+     */
+    public byte[] bytes(int sstIndex, String text) {
+        int slot = sstIndex & mask;
+        if (keys[slot] == sstIndex && texts[slot] == text) {
+            byte[] b = encoded[slot];
+            if (b == null) {
+                b = encoder.apply(text);
+                encoded[slot] = b;
+            }
+            return b;
+        }
+        return encoder.apply(text);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, evictions=%d, hitRate=%.2f%%",
+                hits, misses, evictions, getHitRate() * 100);
+    }
+}
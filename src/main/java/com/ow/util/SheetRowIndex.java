@@ -0,0 +1,299 @@
+package com.ow.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 大sheet的持久化行索引，反复按行范围读取同一个工作簿时使用。
+ *
+ * 第一次使用时把sheet的XML解压到缓存文件（.xml），同时每隔 interval 行记录一次行号和该行在XML中的字节偏移，
+ * 写入索引文件（.idx）。之后读取某个行范围时，拼上sheet开头到 &lt;sheetData&gt; 的部分，
+ * 从不大于起始行的最近检查点开始解析，只解析这一段，读到结束行后停止（见 XLSXCovertCSVReader.setRowRange）。
+ *
+ * java.util.zip 的 Inflater 不暴露deflate块边界和窗口状态，无法保存解压检查点，所以缓存的是解压后的XML，
+ * 占用的磁盘空间约为sheet解压后的大小。
+ *
+ * 索引记录源文件的指纹：文件长度加zip目录中每个条目的名称、CRC32和大小的SHA-256，
+ * 只读zip目录即可算出，任何条目的内容变化都会使CRC变化，此时自动重建。
+ */
+public class SheetRowIndex {
+
+    private static Logger logger = LoggerFactory.getLogger(SheetRowIndex.class);
+
+    public static final int DEFAULT_INTERVAL = 10000;
+
+    static final String CACHE_SUFFIX = ".xml";
+    static final String INDEX_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x52494458;
+    private static final int VERSION = 1;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final File cacheFile;
+    private final long headerLength;
+    private final int[] rowNums;
+    private final long[] offsets;
+    private final boolean built;
+
+    private SheetRowIndex(File cacheFile, long headerLength, int[] rowNums, long[] offsets, boolean built) {
+        this.cacheFile = cacheFile;
+        this.headerLength = headerLength;
+        this.rowNums = rowNums;
+        this.offsets = offsets;
+        this.built = built;
+    }
+
+    /**
+     * 打开sheet的行索引，不存在或源文件已变化时重新建立
+     *
+     * @param pkg 从source打开的包
+     * @param source 工作簿文件，用于计算指纹和命名索引文件
+     * @param sheetName sheet名称，为null时为第一个sheet
+     * @param indexDir 索引和缓存所在的目录，不存在时创建
+     * @param interval 每隔多少行记录一个检查点
+     * @return 找不到sheet时为null
+     */
+    public static SheetRowIndex open(OPCPackage pkg, File source, String sheetName, File indexDir, int interval)
+            throws IOException, OpenXML4JException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be positive.");
+        }
+        XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+        while (iter.hasNext()) {
+            try (InputStream stream = iter.next()) {
+                if (sheetName != null && !sheetName.equals(iter.getSheetName())) {
+                    continue;
+                }
+                // 用sheet的部件名命名，如 x.xlsx.sheet1.xml，sheet名称可能含有文件名不允许的字符
+                String partName = iter.getSheetPart().getPartName().getName();
+                String base = source.getName() + "." + partName.substring(partName.lastIndexOf('/') + 1,
+                        partName.lastIndexOf('.'));
+                if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+                    throw new IOException("Cannot create the index directory " + indexDir);
+                }
+                File cacheFile = new File(indexDir, base + CACHE_SUFFIX);
+                File indexFile = new File(indexDir, base + INDEX_SUFFIX);
+                byte[] fingerprint = fingerprint(source);
+                SheetRowIndex index = load(indexFile, cacheFile, fingerprint);
+                if (index == null) {
+                    index = build(stream, cacheFile, indexFile, fingerprint, interval);
+                }
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 本次是否重新建立了索引
+     */
+    public boolean wasBuilt() {
+        return built;
+    }
+
+    public int getCheckpointCount() {
+        return rowNums.length;
+    }
+
+    /**
+     * 打开从firstRow附近开始的sheet XML：sheet开头到 &lt;sheetData&gt; 的部分，
+     * 接上行号不大于firstRow的最近检查点之后的全部内容。调用方负责关闭
+     *
+     * @param firstRow 起始行号（从0开始）
+     */
+    public InputStream openFrom(int firstRow) throws IOException {
+        int i = checkpointBefore(firstRow);
+        long offset = i < 0 ? headerLength : offsets[i];
+        FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate((int) headerLength);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // 读满为止
+            }
+            channel.position(offset);
+            InputStream rest = Channels.newInputStream(channel);
+            return new BufferedInputStream(new SequenceInputStream(
+                    new ByteArrayInputStream(header.array(), 0, header.position()), rest), READ_BUFFER_SIZE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * openFrom(firstRow) 返回的流中第一个 &lt;row&gt; 的行号（从0开始）。
+     * 没有r属性的行按前一行加一编号，解析时需要从这个行号开始计数（见 XLSXCovertCSVReader.setStreamStartRow）
+     */
+    public int startRowOf(int firstRow) {
+        int i = checkpointBefore(firstRow);
+        return i < 0 ? 0 : rowNums[i];
+    }
+
+    /**
+     * @return 行号不大于firstRow的最近检查点，没有时为-1
+     */
+    private int checkpointBefore(int firstRow) {
+        int i = Arrays.binarySearch(rowNums, firstRow);
+        return i < 0 ? -i - 2 : i;
+    }
+
+    private static SheetRowIndex build(InputStream sheet, File cacheFile, File indexFile, byte[] fingerprint,
+                                       int interval) throws IOException {
+        // 管道模式下标准输出是数据，这里只写日志
+        logger.info("Building row index {} every {} rows", indexFile, interval);
+        File cachePart = new File(cacheFile.getPath() + ".part");
+        Checkpoints checkpoints = new Checkpoints(interval);
+        RowTagScanner scanner;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(cachePart), READ_BUFFER_SIZE)) {
+            scanner = new RowTagScanner(sheet, out);
+            scanner.scan(checkpoints);
+        } catch (IOException e) {
+            cachePart.delete();
+            throw e;
+        }
+        if (scanner.getSheetDataEnd() < 0) {
+            cachePart.delete();
+            throw new IOException("The sheet has no sheetData element.");
+        }
+        ResumableSheetConverter.moveAtomically(cachePart, cacheFile);
+
+        // 缓存写完后再写索引，索引存在即表示缓存完整
+        File indexPart = new File(indexFile.getPath() + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexPart)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(fingerprint.length);
+            out.write(fingerprint);
+            out.writeLong(scanner.getLength());
+            out.writeLong(scanner.getSheetDataEnd());
+            out.writeInt(interval);
+            out.writeInt(checkpoints.count);
+            for (int i = 0; i < checkpoints.count; i++) {
+                out.writeInt(checkpoints.rowNums[i]);
+                out.writeLong(checkpoints.offsets[i]);
+            }
+        }
+        ResumableSheetConverter.moveAtomically(indexPart, indexFile);
+        return new SheetRowIndex(cacheFile, scanner.getSheetDataEnd(), Arrays.copyOf(checkpoints.rowNums,
+                checkpoints.count), Arrays.copyOf(checkpoints.offsets, checkpoints.count), true);
+    }
+
+    /**
+     * 每隔interval行记录一次行号和偏移
+     */
+    private static class Checkpoints implements RowTagScanner.RowListener {
+        private final int interval;
+        private int seen;
+        private int count;
+        private int[] rowNums = new int[64];
+        private long[] offsets = new long[64];
+
+        Checkpoints(int interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        public void rowStart(int rowNum, long offset) {
+            if (seen++ % interval != 0) {
+                return;
+            }
+            if (count == rowNums.length) {
+                rowNums = Arrays.copyOf(rowNums, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            rowNums[count] = rowNum;
+            offsets[count] = offset;
+            count++;
+        }
+    }
+
+    /**
+     * @return 索引不存在、格式不对、指纹不符或缓存不完整时为null
+     */
+    private static SheetRowIndex load(File indexFile, File cacheFile, byte[] fingerprint) throws IOException {
+        if (!indexFile.isFile() || !cacheFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ignoring row index {} with an unknown format", indexFile);
+                return null;
+            }
+            byte[] stored = new byte[in.readInt()];
+            in.readFully(stored);
+            if (!Arrays.equals(stored, fingerprint)) {
+                logger.info("Source changed, rebuilding row index {}", indexFile);
+                return null;
+            }
+            long cacheLength = in.readLong();
+            long headerLength = in.readLong();
+            // 检查点间隔，读取时不需要
+            in.readInt();
+            if (cacheFile.length() != cacheLength) {
+                logger.warn("Row index cache {} is incomplete, rebuilding", cacheFile);
+                return null;
+            }
+            int count = in.readInt();
+            int[] rowNums = new int[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                rowNums[i] = in.readInt();
+                offsets[i] = in.readLong();
+            }
+            return new SheetRowIndex(cacheFile, headerLength, rowNums, offsets, false);
+        }
+    }
+
+    /**
+     * 文件长度加zip目录中各条目的名称、CRC32、压缩前后大小的SHA-256
+     */
+    static byte[] fingerprint(File source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        buffer.putLong(source.length());
+        digest.update(buffer.array(), 0, buffer.position());
+        try (ZipFile zip = new ZipFile(source)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                buffer.clear();
+                buffer.putLong(entry.getCrc()).putLong(entry.getSize()).putLong(entry.getCompressedSize());
+                digest.update(buffer.array(), 0, buffer.position());
+            }
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,166 @@
+package com.ow.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 冷启动基准：每次启动一个新的JVM，以 java -jar 工作簿.jar 源 目标 的方式运行命令行转换（ExcelToCSV），
+ * 测量从启动进程到第一行输出、到进程退出的时间。
+ *
+ * 小工作簿的转换时间主要花在JVM启动和加载POI、xmlbeans的类上。指定 --archive 时对比使用
+ * AppCDS归档（-XX:SharedArchiveFile）前后的时间，归档不存在时先用同一条命令做一次训练运行生成
+ * （-XX:ArchiveClassesAtExit，需要JDK 13及以上），与 pom.xml 中 fast-start 的训练运行相同，
+ * 训练和测量的是同一个工作负载。CDS只能归档jar中的类，所以必须用打包好的jar：
+ * <pre>java -cp target/excel-utils-1.0-SNAPSHOT.jar com.ow.util.StartupBenchmark target/excel-utils-1.0-SNAPSHOT.jar input output --archive target/excel-utils.jsa</pre>
+ *
+ * 指定 --compare-profile 时再加上 ExcelToCSV 的 --profile 参数运行同样的转换，输出列概况统计带来的额外时间。
+ */
+public class StartupBenchmark {
+
+    private final File jar;
+    private final List<String> arguments;
+    private int runs = 5;
+
+    /**
+     * @param jar 可执行jar
+     * @param arguments 传给jar主类的参数，如源文件和目标目录
+     */
+    public StartupBenchmark(File jar, List<String> arguments) {
+        this.jar = jar;
+        this.arguments = new ArrayList<>(arguments);
+    }
+
+    public void setRuns(int runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * 运行若干次并输出中位数和最小值
+     *
+     * @param label 输出时的名称
+     * @param jvmOptions 子进程的JVM参数
+     * @return 到进程退出时间的中位数（毫秒）
+     */
+    public long measure(String label, List<String> jvmOptions) throws IOException, InterruptedException {
+        // 第一次运行只为预热文件缓存，不计入结果
+        runOnce(jvmOptions);
+        long[] firstOutput = new long[runs];
+        long[] total = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long[] times = runOnce(jvmOptions);
+            firstOutput[i] = times[0];
+            total[i] = times[1];
+        }
+        System.out.println(label + ": first output median " + median(firstOutput) + " ms, min " + min(firstOutput)
+                + " ms; exit median " + median(total) + " ms, min " + min(total) + " ms (" + runs + " runs)");
+        return median(total);
+    }
+
+    /**
+     * 训练运行，退出时把加载过的类写入归档
+     */
+    public void createArchive(File archive) throws IOException, InterruptedException {
+        System.out.println("Creating class data sharing archive [" + archive + "]");
+        runOnce(Arrays.asList("-XX:ArchiveClassesAtExit=" + archive.getPath()));
+        if (!archive.isFile()) {
+            throw new IOException("The JVM did not create " + archive
+                    + ", class data sharing archives need JDK 13+ and a classpath of jar files only.");
+        }
+    }
+
+    /**
+     * @return 到第一行输出的毫秒数和到进程退出的毫秒数
+     */
+    private long[] runOnce(List<String> jvmOptions) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(jar.getPath());
+        command.addAll(arguments);
+        File errors = File.createTempFile("startup", ".err");
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command).redirectError(errors);
+            long start = System.nanoTime();
+            Process process = builder.start();
+            long firstOutput = -1;
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (firstOutput < 0) {
+                        firstOutput = System.nanoTime() - start;
+                    }
+                    output.append(line).append('\n');
+                }
+            }
+            int exitCode = process.waitFor();
+            long total = System.nanoTime() - start;
+            if (exitCode != 0) {
+                throw new IOException("Run failed with exit code " + exitCode + ":\n" + output
+                        + new String(Files.readAllBytes(errors.toPath()), StandardCharsets.UTF_8));
+            }
+            return new long[]{(firstOutput < 0 ? total : firstOutput) / 1000000, total / 1000000};
+        } finally {
+            errors.delete();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long min(long[] values) {
+        long min = Long.MAX_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java StartupBenchmark [Jar File] [Source File/Folder] [Destination Folder] "
+                    + "[--runs N] [--archive Archive File] [--compare-profile]");
+            return;
+        }
+        File archive = null;
+        int runs = 5;
+        boolean compareProfile = false;
+        for (int i = 3; i < args.length; i++) {
+            if ("--runs".equals(args[i])) {
+                runs = Integer.parseInt(args[++i]);
+            } else if ("--archive".equals(args[i])) {
+                archive = new File(args[++i]);
+            } else if ("--compare-profile".equals(args[i])) {
+                compareProfile = true;
+            }
+        }
+        StartupBenchmark benchmark = new StartupBenchmark(new File(args[0]), Arrays.asList(args[1], args[2]));
+        benchmark.setRuns(runs);
+        long plain = benchmark.measure("default", new ArrayList<String>());
+        if (compareProfile) {
+            StartupBenchmark profiled = new StartupBenchmark(new File(args[0]),
+                    Arrays.asList(args[1], args[2], "--profile"));
+            profiled.setRuns(runs);
+            long profile = profiled.measure("profile", new ArrayList<String>());
+            System.out.println("profile overhead " + String.format("%.1f%%", 100.0 * (profile - plain) / plain));
+        }
+        if (archive != null) {
+            if (!archive.isFile()) {
+                benchmark.createArchive(archive);
+            }
+            benchmark.measure("cds", Arrays.asList("-XX:SharedArchiveFile=" + archive.getPath()));
+        }
+    }
+}
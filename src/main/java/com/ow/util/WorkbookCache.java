@@ -0,0 +1,303 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackagingURIHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.SAXException;
+
+/**
+ * 工作簿级缓存：同一个xlsx反复读取不同sheet时，共享字符串表、样式表和sheet目录只加载一次。
+ *
+ * 以文件的规范路径为键，取用时核对文件长度、修改时间和zip目录指纹（见 SheetRowIndex.fingerprint），
+ * 任何一项变化都视为过期，重新加载。缓存的对象加载后只读，可以被多个线程同时使用；
+ * 多个线程同时请求同一个未缓存的工作簿时只加载一次，其余线程等待结果。
+ *
+ * 按估算的内存大小做LRU淘汰，总大小不超过 maxBytes；单个工作簿超过 maxBytes 时照常返回但不缓存。
+ * 缓存只保存解析结果，不持有打开的包，sheet内容仍从调用方打开的包中读取。
+ */
+public class WorkbookCache {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, FutureTask<Entry>> loading = new HashMap<>();
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maxBytes 缓存内容估算大小的上限
+     */
+    public WorkbookCache(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 取工作簿的共享字符串、样式和sheet目录，未缓存或文件已变化时从pkg加载
+     *
+     * @param file 工作簿文件
+     * @param pkg 从file打开的包
+     */
+    public Entry get(File file, OPCPackage pkg) throws IOException, OpenXML4JException, SAXException {
+        String key = file.getCanonicalPath();
+        long length = file.length();
+        long modified = file.lastModified();
+        byte[] fingerprint = SheetRowIndex.fingerprint(file);
+        FutureTask<Entry> task;
+        boolean owner = false;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.matches(length, modified, fingerprint)) {
+                    hits++;
+                    return entry;
+                }
+                remove(key);
+                invalidations++;
+            }
+            task = loading.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> new Entry(pkg, length, modified, fingerprint));
+                loading.put(key, task);
+                owner = true;
+                misses++;
+            } else {
+                // 等待其他线程正在进行的加载
+                hits++;
+            }
+        }
+        if (owner) {
+            task.run();
+        }
+        try {
+            Entry entry = task.get();
+            if (owner) {
+                put(key, entry);
+            }
+            return entry;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + file);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof OpenXML4JException) {
+                throw (OpenXML4JException) cause;
+            }
+            if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Loading " + file + " failed", cause);
+        } finally {
+            if (owner) {
+                synchronized (this) {
+                    loading.remove(key);
+                }
+            }
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        if (entry.weight > maxBytes) {
+            return;
+        }
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += entry.weight;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            if (evicted == entry) {
+                break;
+            }
+            eldest.remove();
+            weight -= evicted.weight;
+            evictions++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            weight -= old.weight;
+        }
+    }
+
+    /**
+     * 清空缓存，统计不清零
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 已缓存内容的估算字节数
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return 因文件变化而丢弃的条目数
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("entries=%d, weight=%d/%d, hits=%d, misses=%d, evictions=%d, invalidations=%d, "
+                + "hitRate=%.2f%%", entries.size(), weight, maxBytes, hits, misses, evictions, invalidations,
+                getHitRate() * 100);
+    }
+
+    /**
+     * 一个工作簿的只读解析结果
+     */
+    public static final class Entry {
+
+        // 字符串对象头、数组头和引用，按每个字符2字节计
+        private static final int STRING_OVERHEAD = 56;
+        // xmlbeans对象树约为样式XML大小的数倍
+        private static final int STYLES_EXPANSION = 4;
+
+        private final long length;
+        private final long modified;
+        private final byte[] fingerprint;
+        private final ReadOnlySharedStringsTable strings;
+        private final StylesTable styles;
+        // sheet名称 -> 部件名，按工作簿中的顺序
+        private final Map<String, String> sheetParts;
+        private final long weight;
+
+        Entry(OPCPackage pkg, long length, long modified, byte[] fingerprint)
+                throws IOException, OpenXML4JException, SAXException {
+            this.length = length;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+            this.strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            this.styles = xssfReader.getStylesTable();
+            Map<String, String> parts = new LinkedHashMap<>();
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (iter.hasNext()) {
+                // 只需要sheet名称和部件名，打开的流立即关闭
+                iter.next().close();
+                parts.put(iter.getSheetName(), iter.getSheetPart().getPartName().getName());
+            }
+            this.sheetParts = Collections.unmodifiableMap(parts);
+
+            long estimate = 0;
+            for (int i = 0; i < strings.getUniqueCount(); i++) {
+                estimate += STRING_OVERHEAD + 2L * strings.getItemAt(i).getString().length();
+            }
+            for (PackagePart part : pkg.getPartsByContentType(XSSFRelation.STYLES.getContentType())) {
+                estimate += STYLES_EXPANSION * Math.max(0, part.getSize());
+            }
+            for (Map.Entry<String, String> sheet : sheetParts.entrySet()) {
+                estimate += STRING_OVERHEAD * 2 + 2L * (sheet.getKey().length() + sheet.getValue().length());
+            }
+            this.weight = estimate;
+        }
+
+        boolean matches(long length, long modified, byte[] fingerprint) {
+            return this.length == length && this.modified == modified && Arrays.equals(this.fingerprint, fingerprint);
+        }
+
+        public ReadOnlySharedStringsTable getSharedStrings() {
+            return strings;
+        }
+
+        public StylesTable getStyles() {
+            return styles;
+        }
+
+        public List<String> getSheetNames() {
+            return new ArrayList<>(sheetParts.keySet());
+        }
+
+        /**
+         * 从pkg中打开sheet的XML，调用方负责关闭
+         *
+         * @param pkg 从同一个文件打开的包
+         * @param sheetName sheet名称，为null时为第一个sheet
+         * @return 找不到sheet时为null
+         */
+        public InputStream openSheet(OPCPackage pkg, String sheetName) throws IOException, OpenXML4JException {
+            String partName = sheetName != null ? sheetParts.get(sheetName)
+                    : sheetParts.isEmpty() ? null : sheetParts.values().iterator().next();
+            if (partName == null) {
+                return null;
+            }
+            PackagePart part = pkg.getPart(PackagingURIHelper.createPartName(partName));
+            return part == null ? null : part.getInputStream();
+        }
+
+        /**
+         * @return 估算的内存字节数
+         */
+        public long getWeight() {
+            return weight;
+        }
+    }
+}
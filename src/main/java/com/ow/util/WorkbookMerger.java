@@ -0,0 +1,313 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 把多个格式相同的xlsx工作簿中同名的sheet合并成一个CSV（流式SAX路径）。
+ *
+ * 多个工作簿由线程池并行解析，每个工作簿有自己的有界队列，行按批放入队列；
+ * 唯一的写线程（调用线程）按文件顺序依次取完一个工作簿的队列再取下一个，
+ * 输出顺序是确定的，与解析快慢无关。队列满时解析线程阻塞，内存占用不超过
+ * 线程数 × 队列批数 × 每批行数。
+ * 表头（每个sheet的前 headerRows 行）只输出一次，由写线程取自第一个包含该sheet的工作簿，
+ * 可选在第一列加上来源文件名。
+ */
+public class WorkbookMerger {
+
+    private static Logger logger = LoggerFactory.getLogger(WorkbookMerger.class);
+
+    /**
+     * 合并的顺序：按调用方给定的顺序（默认）、按文件名、按修改时间
+     */
+    public enum Order { GIVEN, NAME, MODIFIED }
+
+    public static final int DEFAULT_QUEUE_BATCHES = 16;
+
+    private static final int BATCH_ROWS = 512;
+    // 队列结束标记，解析完成或失败后放入
+    private static final List<String[]> END = Collections.emptyList();
+
+    private final String sheetName;
+    private final int threads;
+    private String separator = ExcelToCSV.DEFAULT_SEPARATOR;
+    private int formattingConvention = ExcelToCSV.EXCEL_STYLE_ESCAPING;
+    private int headerRows = 1;
+    private String sourceColumn;
+    private int queueBatches = DEFAULT_QUEUE_BATCHES;
+    private Order order = Order.GIVEN;
+
+    /**
+     * @param sheetName 要合并的sheet名称，为null时取每个工作簿的第一个sheet
+     * @param threads 同时解析的工作簿数
+     */
+    public WorkbookMerger(String sheetName, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive.");
+        }
+        this.sheetName = sheetName;
+        this.threads = threads;
+    }
+
+    public void setSeparator(String separator) {
+        this.separator = separator;
+    }
+
+    public void setFormattingConvention(int formattingConvention) {
+        this.formattingConvention = formattingConvention;
+    }
+
+    /**
+     * 每个sheet开头的表头行数，只输出第一个包含该sheet的工作簿的表头，为0时不区分表头
+     */
+    public void setHeaderRows(int headerRows) {
+        this.headerRows = headerRows;
+    }
+
+    /**
+     * 在第一列加上来源文件名，参数为该列的表头；为null时不加
+     */
+    public void setSourceColumn(String sourceColumn) {
+        this.sourceColumn = sourceColumn;
+    }
+
+    /**
+     * 每个工作簿最多缓冲的批数（每批 512 行）
+     */
+    public void setQueueBatches(int queueBatches) {
+        this.queueBatches = queueBatches;
+    }
+
+    /**
+     * 合并顺序，默认 GIVEN，即 merge 参数中的顺序；NAME、MODIFIED 会先重新排序
+     */
+    public void setOrder(Order order) {
+        this.order = order;
+    }
+
+    /**
+     * 合并所有工作簿中的sheet，写入destination。先写临时文件，全部成功后再改名
+     *
+     * @param sources xlsx文件
+     * @param destination 合并后的CSV文件
+     * @return 写出的行数（含表头）
+     * @throws IOException 任何一个工作簿读取失败或写出失败，此时不会生成目标文件
+     */
+    public long merge(List<File> sources, File destination) throws IOException {
+        List<File> files = new ArrayList<>(sources);
+        if (order == Order.NAME) {
+            files.sort(Comparator.comparing(File::getName));
+        } else if (order == Order.MODIFIED) {
+            files.sort(Comparator.comparingLong(File::lastModified));
+        }
+
+        List<SourceReader> readers = new ArrayList<>(files.size());
+        for (File file : files) {
+            readers.add(new SourceReader(file));
+        }
+        // 按顺序提交，线程池先执行先提交的任务，写线程正在等待的工作簿一定已经在解析，不会死锁
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+        File part = new File(destination.getPath() + ".part");
+        long rows = 0;
+        try {
+            for (SourceReader reader : readers) {
+                pool.execute(reader);
+            }
+            try (OutputStream out = new FileOutputStream(part)) {
+                CSVByteRowWriter writer = new CSVByteRowWriter(out, separator, formattingConvention,
+                        StandardCharsets.UTF_8, 0, 0);
+                boolean headerWritten = headerRows <= 0;
+                for (SourceReader reader : readers) {
+                    rows += reader.drainTo(writer, !headerWritten);
+                    headerWritten |= reader.hasHeader();
+                }
+                writer.flush();
+            }
+            ResumableSheetConverter.moveAtomically(part, destination);
+            return rows;
+        } catch (IOException e) {
+            Files.deleteIfExists(part.toPath());
+            throw e;
+        } finally {
+            // 出错时中断仍在解析的线程（阻塞在队列上的会收到中断）
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 解析一个工作簿，把行按批放入自己的队列
+     */
+    class SourceReader implements Runnable, RowHandler {
+
+        private final File file;
+        // 表头行不进队列，由写线程决定是否输出
+        private final List<String[]> header = new ArrayList<>();
+        private final BlockingQueue<List<String[]>> queue = new ArrayBlockingQueue<>(queueBatches);
+        private List<String[]> batch = new ArrayList<>(BATCH_ROWS);
+        private volatile Throwable failure;
+        private volatile boolean found;
+
+        SourceReader(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+                XLSXCovertCSVReader reader = new XLSXCovertCSVReader(pkg, System.out, sheetName, 0, -1);
+                found = reader.process(this);
+                if (!batch.isEmpty()) {
+                    queue.put(batch);
+                }
+            } catch (InterruptedException | InterruptedIOException e) {
+                // 写线程已放弃，不需要再放结束标记
+                return;
+            } catch (Throwable t) {
+                failure = t;
+            }
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void handleRow(int rowNum, String[] record) throws IOException {
+            boolean isHeader = rowNum < headerRows;
+            String[] row;
+            if (sourceColumn == null) {
+                row = record.clone();
+            } else {
+                row = new String[record.length + 1];
+                row[0] = isHeader ? sourceColumn : file.getName();
+                System.arraycopy(record, 0, row, 1, record.length);
+            }
+            if (isHeader) {
+                header.add(row);
+                return;
+            }
+            batch.add(row);
+            if (batch.size() >= BATCH_ROWS) {
+                try {
+                    queue.put(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Merge cancelled");
+                }
+                batch = new ArrayList<>(BATCH_ROWS);
+            }
+        }
+
+        /**
+         * 由写线程调用：取完该工作簿的全部行并写出
+         *
+         * @param includeHeader 是否输出该工作簿的表头行
+         */
+        long drainTo(CSVByteRowWriter writer, boolean includeHeader) throws IOException {
+            long rows = 0;
+            try {
+                List<String[]> rowsBatch = queue.take();
+                // 表头行在第一批数据放入队列之前就已收集完
+                if (includeHeader) {
+                    for (String[] row : header) {
+                        writer.writeRecord(row);
+                    }
+                    rows += header.size();
+                }
+                for (; rowsBatch != END; rowsBatch = queue.take()) {
+                    for (String[] row : rowsBatch) {
+                        writer.writeRecord(row);
+                    }
+                    rows += rowsBatch.size();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Merge interrupted");
+            }
+            if (failure != null) {
+                throw new IOException("Failed to read " + file, failure);
+            }
+            if (!found) {
+                System.out.println("Sheet [" + sheetName + "] not found in " + file.getName() + ", skipped.");
+            } else {
+                logger.debug("Merged {} rows from {}", rows, file);
+            }
+            return rows;
+        }
+
+        /**
+         * drainTo之后调用：该工作簿是否包含sheet且读到了表头行
+         */
+        boolean hasHeader() {
+            return found && !header.isEmpty();
+        }
+    }
+
+    /**
+     * @param args [sheet名称] [输出的CSV文件] [xlsx文件或文件夹...]
+     *             [--threads 线程数] [--source-column 列名] [--order given|name|modified] [--header-rows 行数]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java WorkbookMerger [Sheet Name] [Destination CSV] [Source File/Folder...] "
+                    + "[--threads N] [--source-column Name] [--order given|name|modified] [--header-rows N]");
+            return;
+        }
+        List<File> sources = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        String sourceColumn = null;
+        // 默认按参数顺序，文件夹中的文件按文件名排列
+        Order order = Order.GIVEN;
+        int headerRows = 1;
+        for (int i = 2; i < args.length; i++) {
+            if ("--threads".equals(args[i])) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("--source-column".equals(args[i])) {
+                sourceColumn = args[++i];
+            } else if ("--order".equals(args[i])) {
+                order = Order.valueOf(args[++i].toUpperCase());
+            } else if ("--header-rows".equals(args[i])) {
+                headerRows = Integer.parseInt(args[++i]);
+            } else {
+                File source = new File(args[i]);
+                if (source.isDirectory()) {
+                    File[] files = source.listFiles((dir, name) -> name.endsWith(".xlsx"));
+                    if (files != null) {
+                        Arrays.sort(files);
+                        sources.addAll(Arrays.asList(files));
+                    }
+                } else {
+                    sources.add(source);
+                }
+            }
+        }
+        long startTime = System.currentTimeMillis();
+        WorkbookMerger merger = new WorkbookMerger(args[0], threads);
+        merger.setSourceColumn(sourceColumn);
+        merger.setOrder(order);
+        merger.setHeaderRows(headerRows);
+        long rows = merger.merge(sources, new File(args[1]));
+        System.out.println("Merged " + rows + " rows from " + sources.size() + " workbooks in " +
+                ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+    }
+}
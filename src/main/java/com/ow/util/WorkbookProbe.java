@@ -0,0 +1,369 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.NotOfficeXmlFileException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.ss.util.CellReference;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * 只读元数据的xlsx探查：列出sheet名称、状态、行数和列数，以及共享字符串数量，不解析单元格数据。
+ *
+ * 只读 workbook.xml、关系文件、每个sheet开头的 dimension 和 sheetFormatPr，读到 sheetData 就停止；
+ * sharedStrings.xml 只读根元素的 count 和 uniqueCount 属性。sheet没有 dimension 时才扫描一遍行，
+ * 扫描直接在字节上找 row 和 c 标签的 r 属性（见 RowTagScanner），不经过XML解析器，也不取值。从文件打开时只读zip目录和用到的几个条目，大文件也只需几毫秒到几十毫秒。
+ */
+public class WorkbookProbe {
+
+    private static final String SHARED_STRINGS_RELATIONSHIP =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings";
+    private static final String STRICT_SHARED_STRINGS_RELATIONSHIP =
+            "http://purl.oclc.org/ooxml/officeDocument/relationships/sharedStrings";
+
+    /**
+     * 一个sheet的元数据
+     */
+    public static class SheetInfo {
+        private final String name;
+        private final String state;
+        private final String type;
+        private String dimension;
+        private int rows;
+        private int columns;
+        private boolean scanned;
+        private double defaultRowHeight = -1;
+
+        SheetInfo(String name, String state, String type) {
+            this.name = name;
+            this.state = state;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return visible、hidden 或 veryHidden
+         */
+        public String getState() {
+            return state;
+        }
+
+        /**
+         * @return worksheet、chartsheet 等，取关系类型的最后一段
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return sheet声明的范围，如 A1:H10000；没有 dimension 时为null
+         */
+        public String getDimension() {
+            return dimension;
+        }
+
+        /**
+         * @return 最后一行的行号（从1开始），即转换成CSV后的行数；没有 dimension 的空sheet为0
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * @return 最后一列的列号（从1开始），即CSV的列数
+         */
+        public int getColumns() {
+            return columns;
+        }
+
+        /**
+         * @return 行数和列数是否由扫描行得到（sheet没有 dimension）
+         */
+        public boolean isScanned() {
+            return scanned;
+        }
+
+        /**
+         * @return sheetFormatPr 中的默认行高（磅），没有时为-1
+         */
+        public double getDefaultRowHeight() {
+            return defaultRowHeight;
+        }
+    }
+
+    private final List<SheetInfo> sheets = new ArrayList<>();
+    private int sharedStringCount = -1;
+    private int uniqueStringCount = -1;
+
+    private WorkbookProbe() {
+    }
+
+    /**
+     * 探查一个xlsx文件，只读打开，不修改文件
+     */
+    public static WorkbookProbe probe(File file) throws IOException, SAXException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            return probe(pkg);
+        } catch (InvalidFormatException | NotOfficeXmlFileException ex) {
+            throw new IOException("Only xlsx workbooks can be probed: " + file.getName(), ex);
+        }
+    }
+
+    /**
+     * 探查已打开的包，例如从流打开的包
+     */
+    public static WorkbookProbe probe(OPCPackage pkg) throws IOException, SAXException {
+        PackagePart workbookPart = workbookPart(pkg);
+        WorkbookProbe probe = new WorkbookProbe();
+        List<String[]> declared = new ArrayList<>();
+        parse(workbookPart, new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if ("sheet".equals(localName)) {
+                    String state = attributes.getValue("state");
+                    declared.add(new String[]{attributes.getValue("name"), state == null ? "visible" : state,
+                            relationshipId(attributes)});
+                }
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) throws SAXException {
+                if ("sheets".equals(localName)) {
+                    throw new StopProbeException();
+                }
+            }
+        });
+        for (String[] sheet : declared) {
+            PackageRelationship relationship = sheet[2] == null ? null : workbookPart.getRelationship(sheet[2]);
+            if (relationship == null) {
+                throw new IOException("Sheet [" + sheet[0] + "] has no relationship in the workbook.");
+            }
+            String relationshipType = relationship.getRelationshipType();
+            SheetInfo info = new SheetInfo(sheet[0], sheet[1],
+                    relationshipType.substring(relationshipType.lastIndexOf('/') + 1));
+            PackagePart sheetPart;
+            try {
+                sheetPart = workbookPart.getRelatedPart(relationship);
+            } catch (InvalidFormatException ex) {
+                throw new IOException("Cannot resolve the part of sheet [" + sheet[0] + "]", ex);
+            }
+            if (sheetPart != null) {
+                parse(sheetPart, new SheetHeaderHandler(info));
+                if (info.scanned) {
+                    try (InputStream in = sheetPart.getInputStream()) {
+                        RowTagScanner scanner = new RowTagScanner(in, null);
+                        scanner.scan(null);
+                        info.rows = scanner.getLastRow();
+                        info.columns = scanner.getMaxColumn();
+                    }
+                }
+            }
+            probe.sheets.add(info);
+        }
+        PackagePart sharedStrings = relatedPart(workbookPart, SHARED_STRINGS_RELATIONSHIP);
+        if (sharedStrings == null) {
+            sharedStrings = relatedPart(workbookPart, STRICT_SHARED_STRINGS_RELATIONSHIP);
+        }
+        if (sharedStrings != null) {
+            parse(sharedStrings, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes)
+                        throws SAXException {
+                    probe.sharedStringCount = parseInt(attributes.getValue("count"), -1);
+                    probe.uniqueStringCount = parseInt(attributes.getValue("uniqueCount"), -1);
+                    throw new StopProbeException();
+                }
+            });
+        }
+        return probe;
+    }
+
+    public List<SheetInfo> getSheets() {
+        return Collections.unmodifiableList(sheets);
+    }
+
+    /**
+     * @return 共享字符串表的 count 属性（引用次数），没有共享字符串表或未声明时为-1
+     */
+    public int getSharedStringCount() {
+        return sharedStringCount;
+    }
+
+    /**
+     * @return 共享字符串表的 uniqueCount 属性（条目数），没有时为-1
+     */
+    public int getUniqueStringCount() {
+        return uniqueStringCount;
+    }
+
+    /**
+     * 以JSON输出，格式与列概况文件相近
+     */
+    public String toJson(String source) {
+        StringBuilder sb = new StringBuilder(128 + sheets.size() * 160);
+        sb.append("{\n  \"source\": ");
+        JsonLinesRowWriter.appendJsonString(sb, source);
+        sb.append(",\n  \"sharedStrings\": ").append(sharedStringCount);
+        sb.append(",\n  \"uniqueStrings\": ").append(uniqueStringCount);
+        sb.append(",\n  \"sheets\": [");
+        for (int i = 0; i < sheets.size(); i++) {
+            SheetInfo sheet = sheets.get(i);
+            sb.append(i == 0 ? "\n    {\"name\": " : ",\n    {\"name\": ");
+            JsonLinesRowWriter.appendJsonString(sb, sheet.name);
+            sb.append(", \"state\": \"").append(sheet.state).append('"');
+            sb.append(", \"type\": \"").append(sheet.type).append('"');
+            sb.append(", \"dimension\": ");
+            JsonLinesRowWriter.appendJsonString(sb, sheet.dimension);
+            sb.append(", \"rows\": ").append(sheet.rows);
+            sb.append(", \"columns\": ").append(sheet.columns);
+            sb.append(", \"scanned\": ").append(sheet.scanned).append('}');
+        }
+        sb.append(sheets.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    private static PackagePart workbookPart(OPCPackage pkg) throws IOException {
+        PackageRelationshipCollection core = pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+        if (core.size() == 0) {
+            core = pkg.getRelationshipsByType(PackageRelationshipTypes.STRICT_CORE_DOCUMENT);
+        }
+        PackagePart part = core.size() == 0 ? null : pkg.getPart(core.getRelationship(0));
+        if (part == null) {
+            throw new IOException("The package has no workbook part.");
+        }
+        return part;
+    }
+
+    private static PackagePart relatedPart(PackagePart part, String relationshipType) throws IOException {
+        try {
+            PackageRelationshipCollection relationships = part.getRelationshipsByType(relationshipType);
+            return relationships.size() == 0 ? null : part.getRelatedPart(relationships.getRelationship(0));
+        } catch (InvalidFormatException ex) {
+            throw new IOException("Cannot read the relationships of " + part.getPartName(), ex);
+        }
+    }
+
+    /**
+     * r:id 的前缀不固定，按本地名和非空命名空间查找
+     */
+    private static String relationshipId(Attributes attributes) {
+        for (int i = 0; i < attributes.getLength(); i++) {
+            if ("id".equals(attributes.getLocalName(i)) && !attributes.getURI(i).isEmpty()) {
+                return attributes.getValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * 解析一个部件，处理器抛出 StopProbeException 时提前结束，剩余内容不再解压
+     */
+    private static void parse(PackagePart part, DefaultHandler handler) throws IOException, SAXException {
+        try (InputStream in = part.getInputStream()) {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            reader.setContentHandler(handler);
+            reader.parse(new InputSource(in));
+        } catch (StopProbeException e) {
+            // 需要的信息已经读到
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static class StopProbeException extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * 读 dimension 和 sheetFormatPr，到 sheetData 为止；没有 dimension 时标记为需要扫描
+     */
+    private static class SheetHeaderHandler extends DefaultHandler {
+        private final SheetInfo info;
+
+        SheetHeaderHandler(SheetInfo info) {
+            this.info = info;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            if ("dimension".equals(localName)) {
+                String ref = attributes.getValue("ref");
+                if (ref != null) {
+                    info.dimension = ref;
+                    CellReference last = new CellReference(ref.substring(ref.indexOf(':') + 1));
+                    info.rows = last.getRow() + 1;
+                    info.columns = last.getCol() + 1;
+                }
+            } else if ("sheetFormatPr".equals(localName)) {
+                String height = attributes.getValue("defaultRowHeight");
+                if (height != null) {
+                    info.defaultRowHeight = Double.parseDouble(height);
+                }
+            } else if ("sheetData".equals(localName)) {
+                info.scanned = info.dimension == null;
+                throw new StopProbeException();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean json = args.length > 0 && "--json".equals(args[args.length - 1]);
+        int files = json ? args.length - 1 : args.length;
+        if (files < 1) {
+            System.out.println("Usage: java WorkbookProbe [Source File]... [--json]");
+            return;
+        }
+        for (int i = 0; i < files; i++) {
+            File file = new File(args[i]);
+            long startTime = System.nanoTime();
+            WorkbookProbe probe = WorkbookProbe.probe(file);
+            long micros = (System.nanoTime() - startTime) / 1000;
+            if (json) {
+                System.out.print(probe.toJson(file.getName()));
+                continue;
+            }
+            System.out.println(file.getName() + ": " + probe.sheets.size() + " sheets, shared strings "
+                    + probe.sharedStringCount + " (unique " + probe.uniqueStringCount + "), probed in "
+                    + micros / 1000.0 + " ms");
+            for (SheetInfo sheet : probe.sheets) {
+                System.out.println("  [" + sheet.name + "] " + sheet.rows + " rows x " + sheet.columns + " columns"
+                        + (sheet.dimension != null ? ", dimension " + sheet.dimension : ", scanned")
+                        + ("visible".equals(sheet.state) ? "" : ", " + sheet.state)
+                        + ("worksheet".equals(sheet.type) ? "" : ", " + sheet.type));
+            }
+        }
+    }
+}
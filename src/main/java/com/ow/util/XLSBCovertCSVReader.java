@@ -0,0 +1,232 @@
+package com.ow.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.LittleEndian;
+import org.apache.poi.xssf.binary.XSSFBParseException;
+import org.apache.poi.xssf.binary.XSSFBRecordType;
+import org.apache.poi.xssf.binary.XSSFBSharedStringsTable;
+import org.apache.poi.xssf.binary.XSSFBSheetHandler;
+import org.apache.poi.xssf.binary.XSSFBStylesTable;
+import org.apache.poi.xssf.eventusermodel.XSSFBReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.SAXException;
+
+/**
+ * 流式读取xlsb（Excel二进制工作簿）。
+ * 基于POI的 XSSFBReader / XSSFBSheetHandler 逐条解析二进制记录，不经过XML解析，
+ * 数值和日期的格式化与 XLSXCovertCSVReader 一致（内置日期格式、常规格式走 CellValueRenderer，
+ * 其他格式走 DataFormatter），每行同样按sheet声明的范围补齐列数后回调 RowHandler。
+ * xlsb的单元格总带有样式下标，默认样式的数值按常规格式输出（0.1+0.2 输出 0.3）；
+ * 而xlsx中没有s属性的单元格原样输出 &lt;v&gt; 的文本（0.30000000000000004）。
+ */
+public class XLSBCovertCSVReader {
+
+    private final OPCPackage xlsbPackage;
+    private final PrintStream output;
+    private final String sheetName;
+    private CellValueRenderer valueRenderer = CellValueRenderer.getDefault();
+    private ColumnProfiler profiler;
+
+    // 样式表和共享字符串表在第一次处理sheet时读取，同一个reader处理多个sheet时复用
+    private XSSFBStylesTable styles;
+    private SharedStrings strings;
+
+    /**
+     * @param sheetName sheet名称，为null时处理第一个sheet
+     */
+    public XLSBCovertCSVReader(OPCPackage pkg, PrintStream output, String sheetName) {
+        this.xlsbPackage = pkg;
+        this.output = output;
+        this.sheetName = sheetName;
+    }
+
+    public void setValueRenderer(CellValueRenderer valueRenderer) {
+        this.valueRenderer = valueRenderer;
+    }
+
+    public void setProfiler(ColumnProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * @return 工作簿中全部sheet的名称，按工作簿中的顺序
+     */
+    public List<String> getSheetNames() throws IOException, OpenXML4JException {
+        List<String> names = new ArrayList<>();
+        XSSFBReader.SheetIterator iter = (XSSFBReader.SheetIterator) new XSSFBReader(xlsbPackage).getSheetsData();
+        while (iter.hasNext()) {
+            // 只需要sheet名称，打开的流直接关闭
+            iter.next().close();
+            names.add(iter.getSheetName());
+        }
+        return names;
+    }
+
+    /**
+     * 流式处理构造时指定的sheet
+     *
+     * @return 是否找到了对应的sheet
+     */
+    public boolean process(RowHandler rowHandler) throws IOException, OpenXML4JException, SAXException {
+        return process(this.sheetName, rowHandler);
+    }
+
+    /**
+     * 流式处理指定的sheet，sheetName为null时处理第一个sheet
+     *
+     * @return 是否找到了对应的sheet
+     */
+    public boolean process(String sheetName, RowHandler rowHandler)
+            throws IOException, OpenXML4JException, SAXException {
+        XSSFBReader xssfbReader = new XSSFBReader(xlsbPackage);
+        if (styles == null) {
+            styles = xssfbReader.getXSSFBStylesTable();
+            strings = new XSSFBSharedStringsTable(xlsbPackage);
+        }
+        XSSFBReader.SheetIterator iter = (XSSFBReader.SheetIterator) xssfbReader.getSheetsData();
+        while (iter.hasNext()) {
+            try (InputStream stream = iter.next()) {
+                if (sheetName == null || sheetName.equals(iter.getSheetName())) {
+                    processSheet(stream, rowHandler);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void processSheet(InputStream sheetInputStream, RowHandler rowHandler) throws IOException {
+        RowCollector collector = new RowCollector(rowHandler);
+        SheetHandler handler = new SheetHandler(sheetInputStream, collector);
+        try {
+            handler.parse();
+        } catch (UncheckedIOException e) {
+            // 输出端的IO异常原样抛出，方便调用方区分解析错误和写出错误
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 在POI的处理之外读取 BrtWsDim（sheet声明的范围），用于预先确定每行的列数
+     */
+    private class SheetHandler extends XSSFBSheetHandler {
+
+        private final RowCollector collector;
+
+        SheetHandler(InputStream is, RowCollector collector) {
+            super(is, styles, null, strings, collector, new RenderingDataFormatter(valueRenderer), false);
+            this.collector = collector;
+        }
+
+        @Override
+        public void handleRecord(int id, byte[] data) throws XSSFBParseException {
+            if (id == XSSFBRecordType.BrtWsDim.getId() && data.length >= 16) {
+                // rwFirst, rwLast, colFirst, colLast
+                long lastColumn = LittleEndian.getUInt(data, 12);
+                if (lastColumn < 16384) {
+                    collector.ensureWidth((int) lastColumn + 1);
+                }
+            }
+            super.handleRecord(id, data);
+        }
+    }
+
+    /**
+     * 把 XSSFBSheetHandler 逐单元格的回调收集成一行，行结束时交给 RowHandler
+     */
+    private class RowCollector implements SheetContentsHandler {
+
+        private final RowHandler rowHandler;
+        private String[] record = new String[0];
+        private int profiledThrough = -1;
+
+        RowCollector(RowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        void ensureWidth(int width) {
+            if (record.length < width) {
+                record = Arrays.copyOf(record, width);
+            }
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = columnOf(cellReference);
+            if (column < 0) {
+                output.println("Unexpected cell reference: " + cellReference);
+                return;
+            }
+            ensureWidth(column + 1);
+            record[column] = formattedValue;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (profiler != null) {
+                profiler.addEmptyRows(rowNum - profiledThrough - 1);
+                profiler.addRow(record);
+                profiledThrough = rowNum;
+            }
+            try {
+                rowHandler.handleRow(rowNum, record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Arrays.fill(record, null);
+        }
+
+        private int columnOf(String ref) {
+            int column = -1;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                column = (column + 1) * 26 + c - 'A';
+            }
+            return column;
+        }
+    }
+
+    /**
+     * XSSFBSheetHandler 通过 formatRawCellContents 格式化数值，这里把内置日期格式和常规格式
+     * 转给 CellValueRenderer，与 xlsx 流式路径的结果保持一致
+     */
+    static class RenderingDataFormatter extends DataFormatter {
+
+        private final CellValueRenderer renderer;
+
+        RenderingDataFormatter(CellValueRenderer renderer) {
+            this.renderer = renderer;
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isInternalDateFormat(formatIndex)) {
+                return renderer.formatDate(value);
+            }
+            if (formatString != null && CellValueRenderer.isGeneralFormat(formatString)) {
+                return renderer.formatGeneral(value);
+            }
+            return super.formatRawCellContents(value, formatIndex, formatString);
+        }
+    }
+}
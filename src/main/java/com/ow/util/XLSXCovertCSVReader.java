@@ -6,6 +6,7 @@ import org.apache.poi.openxml4j.opc.OPCPackage;
 import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.BuiltinFormats;
 import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
 import org.apache.poi.xssf.model.StylesTable;
@@ -20,13 +21,14 @@ import org.xml.sax.helpers.DefaultHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 
 /**
@@ -50,46 +52,123 @@ public class XLSXCovertCSVReader {
         private short formatIndex;
         private String formatString;
         private final DataFormatter formatter;
+        private CellValueRenderer valueRenderer = CellValueRenderer.getDefault();
         private int thisColumn = -1;
         private int lastColumnNumber = -1;
-        private StringBuffer value;
+        private StringBuilder value;
         private String[] record;
         private List<String[]> rows = new ArrayList<String[]>();
         private boolean isCellNull = false;
+        // 流式模式：不为null时每解析完一行就回调，不再收集到rows中
+        private RowHandler rowHandler;
+        // 公式和内联字符串是否加上双引号，流式输出CSV时由CSV转义统一处理
+        private boolean quoteStrings = true;
+        private int thisRow = -1;
+        // 断点续转：行号不大于skipThroughRow的行只解析结构，不取值、不格式化、不回调
+        private int skipThroughRow = -1;
+        private boolean skipping;
+        // 输出端提供的共享字符串缓存，以及本行各列的SST下标（不是共享字符串时为-1）
+        private SharedStringCache stringCache;
+        private int[] sstIndexes;
+        // 可选的列概况统计，profiledThrough为已统计到的行号
+        private ColumnProfiler profiler;
+        private int profiledThrough = -1;
+        // 输出端需要原始值时由解析器填充
+        private CellValues cellValues;
+        // 行过滤：keyColumn为true的列立即格式化，其余列先记下原始内容，行通过过滤后再格式化
+        private RowFilter rowFilter;
+        private boolean[] keyColumn;
+        private xssfDataType[] deferredTypes;
+        private short[] deferredFormatIndexes;
+        private String[] deferredFormatStrings;
+        private StringBuilder[] deferredValues;
+        private int[] deferredColumns;
+        private int deferredCount;
+        // 行范围和行数上限：行号小于firstRow的行跳过，超过lastRow或回调够maxRows行后中止解析
+        private int firstRow;
+        private int lastRow = -1;
+        private long maxRows = -1;
+        private long deliveredRows;
 
         public MyXSSFSheetHandler(StylesTable styles,ReadOnlySharedStringsTable strings, int cols, PrintStream target
-                ,int isNotNullIndex) {
+                ,int isNotNullIndex, RowFilter rowFilter) {
             this.isNotNullIndex = isNotNullIndex;
             this.stylesTable = styles;
             this.sharedStringsTable = strings;
             this.minColumnCount = cols;
             this.output = target;
-            this.value = new StringBuffer();
+            this.value = new StringBuilder();
             this.nextDataType = xssfDataType.NUMBER;
             this.formatter = new DataFormatter();
             record = new String[this.minColumnCount];
             rows.clear();// 每次读取都清空行集合
+            if (rowFilter != null) {
+                this.rowFilter = rowFilter;
+                this.keyColumn = new boolean[0];
+                this.deferredTypes = new xssfDataType[0];
+                this.deferredFormatIndexes = new short[0];
+                this.deferredFormatStrings = new String[0];
+                this.deferredValues = new StringBuilder[0];
+                this.deferredColumns = new int[0];
+                ensureRecordWidth(this.minColumnCount);
+                for (int column : rowFilter.keyColumns()) {
+                    ensureRecordWidth(column + 1);
+                    keyColumn[column] = true;
+                }
+            }
+        }
+
+        public MyXSSFSheetHandler(StylesTable styles, ReadOnlySharedStringsTable strings, int cols,
+                                  PrintStream target, RowHandler rowHandler, RowFilter rowFilter) {
+            this(styles, strings, cols, target, -1, rowFilter);
+            this.rowHandler = rowHandler;
+            this.quoteStrings = false;
+            this.stringCache = rowHandler.getSharedStringCache();
+            this.cellValues = rowHandler.getCellValues();
+            if (this.cellValues != null) {
+                this.cellValues.ensureWidth(record.length);
+            }
+            this.sstIndexes = new int[record.length];
+            Arrays.fill(this.sstIndexes, -1);
         }
 
         public void startElement(String uri, String localName, String name,Attributes attributes) throws SAXException {
 
+            if (skipping && !"row".equals(name)) {
+                return;
+            }
             if ("inlineStr".equals(name) || "v".equals(name)) {
                 vIsOpen = true;
                 // Clear contents cache
                 value.setLength(0);
             }
+            // dimension => 用sheet声明的范围预先确定列数
+            else if ("dimension".equals(name)) {
+                String ref = attributes.getValue("ref");
+                if (ref != null && rowHandler != null) {
+                    String last = ref.substring(ref.indexOf(':') + 1);
+                    ensureRecordWidth(nameToColumn(columnPart(last)) + 1);
+                }
+            }
+            // row => 记录行号，r属性可以省略
+            else if ("row".equals(name)) {
+                String r = attributes.getValue("r");
+                thisRow = r != null ? Integer.parseInt(r) - 1 : thisRow + 1;
+                if (lastRow >= 0 && thisRow > lastRow) {
+                    throw new StopParsingException();
+                }
+                skipping = thisRow <= skipThroughRow || thisRow < firstRow;
+            }
             // c => cell
             else if ("c".equals(name)) {
                 // Get the cell reference
                 String r = attributes.getValue("r");
-                int firstDigit = -1;
-                for (int c = 0; c < r.length(); ++c) {
-                    if (Character.isDigit(r.charAt(c))) {
-                        firstDigit = c;
-                        break;
-                    }
+                if (r != null) {
+                    thisColumn = nameToColumn(columnPart(r));
+                } else {
+                    thisColumn = lastColumnNumber + 1;
                 }
-                thisColumn = nameToColumn(r.substring(0, firstDigit));
+                ensureRecordWidth(thisColumn + 1);
 
                 // Set up defaults.
                 this.nextDataType = xssfDataType.NUMBER;
@@ -122,54 +201,23 @@ public class XLSXCovertCSVReader {
         }
 
         public void endElement(String uri, String localName, String name) throws SAXException {
+            if (skipping) {
+                if ("row".equals(name)) {
+                    skipping = false;
+                }
+                return;
+            }
             String thisStr = null;
             // v => contents of a cell
             if ("v".equals(name)) {
                 // Process the value contents as required.
                 // Do now, as characters() may be called more than once
-                switch (nextDataType) {
-                    case BOOL:
-                        char first = value.charAt(0);
-                        thisStr = first == '0' ? "FALSE" : "TRUE";
-                        break;
-                    case ERROR:
-                        thisStr = "\"ERROR:" + value.toString() + '"';
-                        break;
-                    case FORMULA:
-                        // A formula could result in a string value,
-                        // so always add double-quote characters.
-                        thisStr = '"' + value.toString() + '"';
-                        break;
-                    case INLINESTR:
-                        XSSFRichTextString rtsi = new XSSFRichTextString(value.toString());
-                        thisStr = '"' + rtsi.toString() + '"';
-                        break;
-                    case SSTINDEX:
-                        String sstIndex = value.toString();
-                        try {
-                            int idx = Integer.parseInt(sstIndex);
-                            XSSFRichTextString rtss = new XSSFRichTextString(sharedStringsTable.getEntryAt(idx));
-                            thisStr = rtss.toString();
-                        } catch (NumberFormatException ex) {
-                            output.println("Failed to parse SST index '" + sstIndex + "': " + ex.toString());
-                        }
-                        break;
-                    case NUMBER:
-                        String n = value.toString();
-                        // 判断是否是日期格式
-                        if (HSSFDateUtil.isADateFormat(this.formatIndex, n)) {
-                            Double d = Double.parseDouble(n);
-                            Date date=HSSFDateUtil.getJavaDate(d);
-                            thisStr=formateDateToString(date);
-                        } else if (this.formatString != null)
-                            thisStr = formatter.formatRawCellContents(Double.parseDouble(n), this.formatIndex,this.formatString);
-                        else
-                            thisStr = n;
-                        break;
-                    default:
-                        thisStr = "(TODO: Unexpected type: " + nextDataType + ")";
-                        break;
+                if (keyColumn != null && !keyColumn[thisColumn]) {
+                    deferCell();
+                    lastColumnNumber = thisColumn;
+                    return;
                 }
+                thisStr = formatCell(thisColumn, nextDataType, value, formatIndex, formatString);
                 // Output after we've seen the string contents
                 // Emit commas for any fields that were missing on this row
                 if (lastColumnNumber == -1) {
@@ -184,8 +232,35 @@ public class XLSXCovertCSVReader {
                 if (thisColumn > -1)
                     lastColumnNumber = thisColumn;
             } else if ("row".equals(name)) {
+                boolean accepted = rowFilter == null || acceptRow();
+                if (rowHandler != null) {
+                    if (accepted) {
+                        if (profiler != null) {
+                            // 过滤时只统计保留的行
+                            if (rowFilter == null) {
+                                profiler.addEmptyRows(thisRow - profiledThrough - 1);
+                            }
+                            profiler.addRow(record);
+                            profiledThrough = thisRow;
+                        }
+                        try {
+                            rowHandler.handleRow(thisRow, record, sstIndexes);
+                        } catch (IOException e) {
+                            throw new SAXException(e);
+                        }
+                        deliveredRows++;
+                    }
+                    Arrays.fill(record, null);
+                    Arrays.fill(sstIndexes, -1);
+                    if (cellValues != null) {
+                        cellValues.clear();
+                    }
+                    if (deliveredRows == maxRows || thisRow == lastRow) {
+                        throw new StopParsingException();
+                    }
+                }
                 // Print out any missing commas if needed
-                if (minColumns > 0) {
+                else if (minColumns > 0) {
                     // Columns are 0 based
                     if (lastColumnNumber == -1) {
                         lastColumnNumber = 0;
@@ -204,6 +279,117 @@ public class XLSXCovertCSVReader {
 
         }
 
+        /**
+         * 把一个单元格的原始内容转换成输出的字符串，同时填充SST下标和原始值
+         */
+        private String formatCell(int column, xssfDataType type, StringBuilder value, short formatIndex,
+                                  String formatString) {
+            String thisStr = null;
+            switch (type) {
+                case BOOL:
+                    char first = value.charAt(0);
+                    thisStr = first == '0' ? "FALSE" : "TRUE";
+                    if (cellValues != null) {
+                        cellValues.setBoolean(column, first != '0');
+                    }
+                    break;
+                case ERROR:
+                    thisStr = "\"ERROR:" + value.toString() + '"';
+                    break;
+                case FORMULA:
+                    // A formula could result in a string value,
+                    // so always add double-quote characters.
+                    thisStr = quoteStrings ? '"' + value.toString() + '"' : value.toString();
+                    break;
+                case INLINESTR:
+                    XSSFRichTextString rtsi = new XSSFRichTextString(value.toString());
+                    thisStr = quoteStrings ? '"' + rtsi.toString() + '"' : rtsi.toString();
+                    break;
+                case SSTINDEX:
+                    String sstIndex = value.toString();
+                    try {
+                        int idx = Integer.parseInt(sstIndex);
+                        if (stringCache != null) {
+                            thisStr = stringCache.text(idx);
+                            if (thisStr == null) {
+                                thisStr = sharedStringsTable.getItemAt(idx).getString();
+                                stringCache.put(idx, thisStr);
+                            }
+                            sstIndexes[column] = idx;
+                        } else {
+                            XSSFRichTextString rtss = new XSSFRichTextString(sharedStringsTable.getEntryAt(idx));
+                            thisStr = rtss.toString();
+                        }
+                    } catch (NumberFormatException ex) {
+                        output.println("Failed to parse SST index '" + sstIndex + "': " + ex.toString());
+                    }
+                    break;
+                case NUMBER:
+                    if (cellValues != null) {
+                        boolean date = formatString != null
+                                && DateUtil.isADateFormat(formatIndex, formatString);
+                        cellValues.setNumber(column, CellValueRenderer.parseDouble(value), date);
+                        if (cellValues.isRaw(column)) {
+                            // 只要原始值的列不格式化
+                            return null;
+                        }
+                    }
+                    // 判断是否是日期格式（内置的日期格式下标）
+                    if (HSSFDateUtil.isInternalDateFormat(formatIndex)) {
+                        thisStr = valueRenderer.formatDate(value);
+                    } else if (formatString != null && CellValueRenderer.isGeneralFormat(formatString))
+                        thisStr = valueRenderer.formatGeneral(value);
+                    else if (formatString != null)
+                        thisStr = formatter.formatRawCellContents(CellValueRenderer.parseDouble(value), formatIndex,formatString);
+                    else
+                        thisStr = value.toString();
+                    break;
+                default:
+                    thisStr = "(TODO: Unexpected type: " + type + ")";
+                    break;
+            }
+            return thisStr;
+        }
+
+        /**
+         * 非过滤列：记下单元格的类型、格式和原始内容，行通过过滤后再格式化
+         */
+        private void deferCell() {
+            StringBuilder saved = deferredValues[thisColumn];
+            if (saved == null) {
+                saved = deferredValues[thisColumn] = new StringBuilder();
+            }
+            saved.setLength(0);
+            saved.append(value);
+            deferredTypes[thisColumn] = nextDataType;
+            deferredFormatIndexes[thisColumn] = formatIndex;
+            deferredFormatStrings[thisColumn] = formatString;
+            if (deferredCount == deferredColumns.length) {
+                deferredColumns = Arrays.copyOf(deferredColumns, Math.max(8, deferredCount * 2));
+            }
+            deferredColumns[deferredCount++] = thisColumn;
+        }
+
+        /**
+         * 行结束时判断过滤条件，通过则格式化先前记下的单元格
+         */
+        private boolean acceptRow() {
+            boolean accepted = rowFilter.accept(thisRow, record);
+            if (accepted) {
+                for (int i = 0; i < deferredCount; i++) {
+                    int column = deferredColumns[i];
+                    String thisStr = formatCell(column, deferredTypes[column], deferredValues[column],
+                            deferredFormatIndexes[column], deferredFormatStrings[column]);
+                    if (thisStr == null) {
+                        isCellNull = true;
+                    }
+                    record[column] = thisStr;
+                }
+            }
+            deferredCount = 0;
+            return accepted;
+        }
+
         public List<String[]> getRows() {
             return rows;
         }
@@ -213,10 +399,45 @@ public class XLSXCovertCSVReader {
         }
 
         public void characters(char[] ch, int start, int length) throws SAXException {
-            if (vIsOpen)
+            if (vIsOpen && !skipping)
                 value.append(ch, start, length);
         }
 
+        /**
+         * 取单元格引用中的列名部分，例如 "AB12" -> "AB"
+         */
+        private String columnPart(String ref) {
+            int firstDigit = ref.length();
+            for (int c = 0; c < ref.length(); ++c) {
+                if (Character.isDigit(ref.charAt(c))) {
+                    firstDigit = c;
+                    break;
+                }
+            }
+            return ref.substring(0, firstDigit);
+        }
+
+        private void ensureRecordWidth(int width) {
+            if (record.length < width) {
+                record = Arrays.copyOf(record, width);
+                if (sstIndexes != null) {
+                    int old = sstIndexes.length;
+                    sstIndexes = Arrays.copyOf(sstIndexes, width);
+                    Arrays.fill(sstIndexes, old, width, -1);
+                }
+                if (cellValues != null) {
+                    cellValues.ensureWidth(width);
+                }
+            }
+            if (keyColumn != null && keyColumn.length < width) {
+                keyColumn = Arrays.copyOf(keyColumn, width);
+                deferredTypes = Arrays.copyOf(deferredTypes, width);
+                deferredFormatIndexes = Arrays.copyOf(deferredFormatIndexes, width);
+                deferredFormatStrings = Arrays.copyOf(deferredFormatStrings, width);
+                deferredValues = Arrays.copyOf(deferredValues, width);
+            }
+        }
+
         private int nameToColumn(String name) {
             int column = -1;
             for (int i = 0; i < name.length(); ++i) {
@@ -226,12 +447,6 @@ public class XLSXCovertCSVReader {
             return column;
         }
 
-        private String formateDateToString(Date date) {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");//格式化日期
-            return sdf.format(date);
-
-        }
-
     }
 
     private OPCPackage xlsxPackage;
@@ -239,6 +454,29 @@ public class XLSXCovertCSVReader {
     private PrintStream output;
     private String sheetName;
     private int isNotNullIndex;
+    private int resumeAfterRow = -1;
+    private int streamStartRow;
+    private CellValueRenderer valueRenderer = CellValueRenderer.getDefault();
+    private ColumnProfiler profiler;
+    private RowFilter rowFilter;
+    private int firstRow;
+    private int lastRow = -1;
+    private long maxRows = -1;
+    private int parallelism = 1;
+    private int parallelBlockSize = ParallelSheetParser.DEFAULT_BLOCK_SIZE;
+    private WorkbookCache.Entry cachedWorkbook;
+
+    /**
+     * 达到行范围或行数上限时中止SAX解析
+     */
+    private static class StopParsingException extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 
     public XLSXCovertCSVReader(OPCPackage pkg, PrintStream output,
                                String sheetName, int minColumns, int isNotNullIndex) {
@@ -253,14 +491,79 @@ public class XLSXCovertCSVReader {
                                        ReadOnlySharedStringsTable strings, InputStream sheetInputStream,int isNotNullIndex)
             throws IOException, ParserConfigurationException, SAXException {
 
+        // isNotNullIndex列为空的行丢弃，其余单元格不再格式化
+        RowFilter notNull = isNotNullIndex >= 0 ? RowFilter.matches(isNotNullIndex, Objects::nonNull) : null;
+        MyXSSFSheetHandler handler = new MyXSSFSheetHandler(styles, strings,this.minColumns, this.output,isNotNullIndex,
+                notNull);   //内部类
+        handler.valueRenderer = this.valueRenderer;
+        parseSheet(handler, sheetInputStream);
+        return handler.getRows();
+    }
+
+    /**
+     * 流式解析一个sheet，每解析完一行就交给rowHandler处理
+     */
+    public void processSheet(StylesTable styles, ReadOnlySharedStringsTable strings,
+                             InputStream sheetInputStream, RowHandler rowHandler)
+            throws IOException, ParserConfigurationException, SAXException {
+        if (parallelism > 1 && canParseInParallel(rowHandler)) {
+            new ParallelSheetParser(this, styles, strings, parallelism, parallelBlockSize)
+                    .parse(sheetInputStream, rowHandler);
+            return;
+        }
+        MyXSSFSheetHandler handler = new MyXSSFSheetHandler(styles, strings, this.minColumns, this.output, rowHandler,
+                this.rowFilter);
+        handler.thisRow = this.streamStartRow - 1;
+        handler.skipThroughRow = this.resumeAfterRow;
+        handler.firstRow = this.firstRow;
+        handler.lastRow = this.lastRow;
+        handler.maxRows = this.maxRows;
+        handler.valueRenderer = this.valueRenderer;
+        handler.profiler = this.profiler;
+        handler.profiledThrough = this.resumeAfterRow;
+        parseSheet(handler, sheetInputStream);
+    }
+
+    /**
+     * 并行解析只支持整张sheet顺序输出：断点续转、行范围、行数上限、列概况和需要原始值的输出端都要求按顺序解析
+     */
+    private boolean canParseInParallel(RowHandler rowHandler) {
+        return resumeAfterRow < 0 && streamStartRow == 0 && firstRow == 0 && lastRow < 0 && maxRows < 0 && profiler == null
+                && rowHandler.getCellValues() == null;
+    }
+
+    /**
+     * 解析sheet XML的一段（并行解析的一块，或不能切块时的整个sheet），行过滤和渲染方式与顺序解析相同
+     *
+     * @return 解析结束时的列数
+     */
+    int parseFragment(StylesTable styles, ReadOnlySharedStringsTable strings, InputStream sheetInputStream,
+                      RowHandler rowHandler) throws IOException, ParserConfigurationException, SAXException {
+        MyXSSFSheetHandler handler = new MyXSSFSheetHandler(styles, strings, this.minColumns, this.output, rowHandler,
+                this.rowFilter);
+        handler.valueRenderer = this.valueRenderer;
+        parseSheet(handler, sheetInputStream);
+        return handler.record.length;
+    }
+
+    private void parseSheet(MyXSSFSheetHandler handler, InputStream sheetInputStream)
+            throws IOException, ParserConfigurationException, SAXException {
         InputSource sheetSource = new InputSource(sheetInputStream);
         SAXParserFactory saxFactory = SAXParserFactory.newInstance();
         SAXParser saxParser = saxFactory.newSAXParser();
         XMLReader sheetParser = saxParser.getXMLReader();
-        MyXSSFSheetHandler handler = new MyXSSFSheetHandler(styles, strings,this.minColumns, this.output,isNotNullIndex);   //内部类
         sheetParser.setContentHandler(handler);
-        sheetParser.parse(sheetSource);
-        return handler.getRows();
+        try {
+            sheetParser.parse(sheetSource);
+        } catch (StopParsingException e) {
+            // 已经达到行范围或行数上限，剩余部分不再解压和解析
+        } catch (SAXException e) {
+            // 输出端的IO异常原样抛出，方便调用方区分解析错误和写出错误
+            if (e.getException() instanceof IOException) {
+                throw (IOException) e.getException();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -271,6 +574,12 @@ public class XLSXCovertCSVReader {
      * @throws SAXException
      */
     public List<String[]> process(int isNotNullIndex) throws IOException, OpenXML4JException,ParserConfigurationException, SAXException {
+        if (this.cachedWorkbook != null) {
+            try (InputStream stream = this.cachedWorkbook.openSheet(this.xlsxPackage, this.sheetName)) {
+                return stream == null ? null : processSheet(this.cachedWorkbook.getStyles(),
+                        this.cachedWorkbook.getSharedStrings(), stream, isNotNullIndex);
+            }
+        }
         ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(this.xlsxPackage);
         XSSFReader xssfReader = new XSSFReader(this.xlsxPackage);
         List<String[]> list = null;
@@ -289,6 +598,166 @@ public class XLSXCovertCSVReader {
         return list;
     }
 
+    /**
+     * 断点续转时使用：流式处理时跳过行号不大于rowNum的行（从0开始），
+     * 这些行只做XML解析，不查共享字符串、不格式化，也不回调RowHandler
+     */
+    public void setResumeAfterRow(int rowNum) {
+        this.resumeAfterRow = rowNum;
+    }
+
+    /**
+     * 解析从sheetData中间开始的XML（见 SheetRowIndex.openFrom）时，流中第一个 &lt;row&gt; 的行号（从0开始）。
+     * 没有r属性的行按前一行加一编号，从这个行号开始计数，行范围和行过滤才能按整张sheet的行号匹配
+     */
+    public void setStreamStartRow(int rowNum) {
+        this.streamStartRow = rowNum;
+    }
+
+    /**
+     * 指定数值和日期单元格的渲染方式，例如使用其他日期格式：new CellValueRenderer("yyyy/MM/dd")
+     */
+    public void setValueRenderer(CellValueRenderer valueRenderer) {
+        this.valueRenderer = valueRenderer;
+    }
+
+    /**
+     * 流式处理时只回调满足条件的行，条件列之外的单元格在行通过后才格式化。
+     * 过滤后缺失的行号不代表空行，CSV输出需关闭补空行（见 CSVByteRowWriter.setPadMissingRows）
+     */
+    public void setRowFilter(RowFilter rowFilter) {
+        this.rowFilter = rowFilter;
+    }
+
+    /**
+     * 流式处理时只处理行号在 [firstRow, lastRow] 之间的行（从0开始，lastRow为-1时不限），
+     * 之前的行只做XML解析，读到lastRow之后的行时立即中止解析
+     */
+    public void setRowRange(int firstRow, int lastRow) {
+        if (firstRow < 0 || (lastRow >= 0 && lastRow < firstRow)) {
+            throw new IllegalArgumentException("Invalid row range: " + firstRow + " to " + lastRow);
+        }
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+    }
+
+    /**
+     * 流式处理时回调maxRows行（过滤之后计数）后立即中止解析，-1为不限
+     */
+    public void setMaxRows(long maxRows) {
+        if (maxRows == 0 || maxRows < -1) {
+            throw new IllegalArgumentException("maxRows must be positive or -1.");
+        }
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * 流式处理时用多少个线程并行解析一个sheet（见 ParallelSheetParser），1为顺序解析。
+     * 断点续转、行范围、行数上限、列概况和需要原始值的输出端（见 RowHandler.getCellValues）仍按顺序解析；
+     * 并行时行过滤条件会被多个线程同时调用
+     */
+    public void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive.");
+        }
+        this.parallelism = threads;
+    }
+
+    /**
+     * 并行解析时每块解压后XML的字节数
+     */
+    public void setParallelBlockSize(int blockSize) {
+        if (blockSize < 1024) {
+            throw new IllegalArgumentException("blockSize must be at least 1024 bytes.");
+        }
+        this.parallelBlockSize = blockSize;
+    }
+
+    /**
+     * 使用缓存的共享字符串、样式和sheet目录（见 WorkbookCache），不再从包中重新加载；
+     * 必须是从打开这个包的同一个文件加载的
+     */
+    public void setCachedWorkbook(WorkbookCache.Entry cachedWorkbook) {
+        this.cachedWorkbook = cachedWorkbook;
+    }
+
+    /**
+     * 流式处理时同时统计每列的概况，行回调之前先交给profiler
+     */
+    public void setProfiler(ColumnProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * 流式处理构造时指定的sheet，sheetName为null时处理第一个sheet
+     *
+     * @param rowHandler 行回调
+     * @return 是否找到了对应的sheet
+     */
+    public boolean process(RowHandler rowHandler) throws IOException, OpenXML4JException,
+            ParserConfigurationException, SAXException {
+        if (this.cachedWorkbook != null) {
+            try (InputStream stream = this.cachedWorkbook.openSheet(this.xlsxPackage, this.sheetName)) {
+                if (stream == null) {
+                    return false;
+                }
+                processSheet(this.cachedWorkbook.getStyles(), this.cachedWorkbook.getSharedStrings(), stream,
+                        rowHandler);
+                return true;
+            }
+        }
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(this.xlsxPackage);
+        XSSFReader xssfReader = new XSSFReader(this.xlsxPackage);
+        StylesTable styles = xssfReader.getStylesTable();
+        XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+        while (iter.hasNext()) {
+            try (InputStream stream = iter.next()) {
+                if (this.sheetName == null || this.sheetName.equals(iter.getSheetName())) {
+                    processSheet(styles, strings, stream, rowHandler);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 流式处理不是从包中读出的sheet XML（如 SheetRowIndex 的解压缓存），共享字符串和样式仍从包中读取
+     *
+     * @param sheetInputStream sheet的XML
+     * @param rowHandler 行回调
+     */
+    public void process(InputStream sheetInputStream, RowHandler rowHandler) throws IOException,
+            OpenXML4JException, ParserConfigurationException, SAXException {
+        if (this.cachedWorkbook != null) {
+            processSheet(this.cachedWorkbook.getStyles(), this.cachedWorkbook.getSharedStrings(), sheetInputStream,
+                    rowHandler);
+            return;
+        }
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(this.xlsxPackage);
+        StylesTable styles = new XSSFReader(this.xlsxPackage).getStylesTable();
+        processSheet(styles, strings, sheetInputStream, rowHandler);
+    }
+
+    /**
+     * 流式读取Excel，不把整张sheet缓存在内存中
+     * @param in xlsx文件输入流
+     * @param sheetName sheet名称，为null时读取第一个sheet
+     * @param rowHandler 行回调
+     * @return 是否找到了对应的sheet
+     */
+    public static boolean readerExcel(InputStream in, String sheetName, RowHandler rowHandler)
+            throws IOException, OpenXML4JException, ParserConfigurationException, SAXException {
+        OPCPackage pkg = OPCPackage.open(in);
+        try {
+            XLSXCovertCSVReader xlsx2csv = new XLSXCovertCSVReader(pkg, System.out, sheetName, 0, -1);
+            return xlsx2csv.process(rowHandler);
+        } finally {
+            // 从流打开的包没有对应的文件，只能revert不能close
+            pkg.revert();
+        }
+    }
+
     /**
      * 读取Excel
      * @param path 文件路径
@@ -310,6 +779,42 @@ public class XLSXCovertCSVReader {
         return list;
     }
 
+    /**
+     * 读取Excel，共享字符串、样式和sheet目录从cache中取，同一个工作簿读取多个sheet时只加载一次
+     * @param cache 工作簿缓存，为null时不使用
+     */
+    public static List<String[]> readerExcel(String path, String sheetName, int minColumns, int isNotNullIndex,
+                                             WorkbookCache cache) throws IOException, OpenXML4JException,
+            ParserConfigurationException, SAXException {
+        try (OPCPackage pkg = OPCPackage.open(path, PackageAccess.READ)) {
+            XLSXCovertCSVReader xlsx2csv = new XLSXCovertCSVReader(pkg, System.out, sheetName, minColumns,
+                    isNotNullIndex);
+            if (cache != null) {
+                xlsx2csv.setCachedWorkbook(cache.get(new File(path), pkg));
+            }
+            return xlsx2csv.process(isNotNullIndex);
+        }
+    }
+
+    /**
+     * 流式读取Excel文件，共享字符串、样式和sheet目录从cache中取
+     * @param file xlsx文件
+     * @param sheetName sheet名称，为null时读取第一个sheet
+     * @param rowHandler 行回调
+     * @param cache 工作簿缓存，为null时不使用
+     * @return 是否找到了对应的sheet
+     */
+    public static boolean readerExcel(File file, String sheetName, RowHandler rowHandler, WorkbookCache cache)
+            throws IOException, OpenXML4JException, ParserConfigurationException, SAXException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XLSXCovertCSVReader xlsx2csv = new XLSXCovertCSVReader(pkg, System.out, sheetName, 0, -1);
+            if (cache != null) {
+                xlsx2csv.setCachedWorkbook(cache.get(file, pkg));
+            }
+            return xlsx2csv.process(rowHandler);
+        }
+    }
+
   public static void main(String[] args) throws Exception {
       try {
           List<String[]> list = XLSXCovertCSVReader.readerExcel(System.getProperty("user.dir") + "\\ExcelToCsv.xlsx","datax_json10000", 8,1);
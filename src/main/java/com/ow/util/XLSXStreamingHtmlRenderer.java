@@ -0,0 +1,567 @@
+package com.ow.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.examples.html.XSSFHtmlHelper;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * 流式（SAX）方式把xlsx中的一个sheet渲染为html，和 XLSXCovertCSVReader 一样只解析一遍sheet的XML，
+ * 不需要通过 WorkbookFactory 把整个工作簿加载到内存。
+ *
+ * 列范围取自 &lt;dimension&gt;，列宽取自 &lt;cols&gt;，这两部分在 &lt;sheetData&gt; 之前，
+ * 所以表头可以先输出；没有 &lt;dimension&gt; 时先扫描一遍单元格的r属性得到列范围（见 RowTagScanner）；单元格样式的css直接由样式表生成，在 &lt;head&gt; 中一次输出。
+ * 超大的sheet可以使用分页模式（见 setPagination），避免生成单个巨大的html文件。
+ */
+public class XLSXStreamingHtmlRenderer {
+
+    private final OPCPackage xlsxPackage;
+    private final Appendable output;
+    private boolean completeHTML;
+    private HtmlWriter out;
+    private ChunkPager pager;
+    private StylesTable styles;
+
+    public XLSXStreamingHtmlRenderer(OPCPackage pkg, Appendable output) {
+        if (pkg == null) {
+            throw new NullPointerException("pkg");
+        }
+        if (output == null) {
+            throw new NullPointerException("output");
+        }
+        this.xlsxPackage = pkg;
+        this.output = output;
+    }
+
+    public void setCompleteHTML(boolean completeHTML) {
+        this.completeHTML = completeHTML;
+    }
+
+    /**
+     * 分页模式：主输出只包含表头等页面框架，表格行每rowsPerChunk行写入一个单独的片段文件
+     * （prefix00000.html、prefix00001.html ...），由页面中的脚本在滚动时按需加载。
+     * 需要配合 setCompleteHTML(true) 使用。
+     *
+     * @param directory 片段文件所在目录，一般与主页面相同
+     * @param prefix 片段文件名前缀，页面中按相对路径加载
+     * @param rowsPerChunk 每个片段的行数
+     */
+    public void setPagination(File directory, String prefix, int rowsPerChunk) {
+        if (rowsPerChunk < 1) {
+            throw new IllegalArgumentException("rowsPerChunk must be positive.");
+        }
+        this.pager = new ChunkPager(directory, prefix, rowsPerChunk);
+    }
+
+    /**
+     * 输出整个页面，完成后关闭输出
+     *
+     * @param sheetName sheet名称，为null时输出第一个sheet
+     * @return 是否找到了对应的sheet
+     */
+    public boolean printPage(String sheetName) throws IOException, OpenXML4JException,
+            ParserConfigurationException, SAXException {
+        try {
+            ensureOut();
+            if (completeHTML) {
+                out.raw("<?xml version=\"1.0\" encoding=\"iso-8859-1\" ?>").newline();
+                out.raw("<html>").newline();
+                out.raw("<head>").newline();
+                out.raw("<style type=\"text/css\">").newline();
+                printStyles();
+                out.raw("</style>").newline();
+                out.raw("</head>").newline();
+                out.raw("<body>").newline();
+            }
+
+            boolean found;
+            if (pager == null) {
+                found = printSheet(sheetName);
+            } else {
+                // 中途出错时也要关闭当前的片段文件
+                int chunkCount;
+                try (ChunkPager chunks = pager) {
+                    found = printSheet(sheetName);
+                    chunkCount = chunks.chunkCount;
+                }
+                out.raw("<script type=\"text/javascript\">").newline();
+                out.raw("window.excelPager = {prefix: \"").jsString(pager.prefix)
+                        .raw("\", chunks: ").number(chunkCount).raw("};").newline();
+                ExcelToHtml.printResource(out, "excelPager.js");
+                out.raw("</script>").newline();
+            }
+
+            if (completeHTML) {
+                out.raw("</body>").newline();
+                out.raw("</html>").newline();
+            }
+            out.flush();
+            return found;
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (output instanceof Closeable) {
+                IOUtils.closeQuietly((Closeable) output);
+            }
+        }
+    }
+
+    /**
+     * 输出默认样式和样式表中每个单元格样式的css，不含 &lt;style&gt; 标签
+     */
+    public void printStyles() throws IOException, OpenXML4JException {
+        ensureOut();
+        ExcelToHtml.printDefaultStyles(out);
+        StylesTable styles = styles();
+        XSSFHtmlHelper helper = new XSSFHtmlHelper();
+        for (int i = 0; i < styles.getNumCellStyles(); i++) {
+            XSSFCellStyle style = styles.getStyleAt(i);
+            ExcelToHtml.printStyle(out, style, style.getFont(), helper);
+        }
+    }
+
+    /**
+     * 只输出sheet对应的table，样式需要调用方通过 printStyles 输出到 &lt;head&gt; 中
+     */
+    public boolean printSheet(String sheetName) throws IOException, OpenXML4JException,
+            ParserConfigurationException, SAXException {
+        ensureOut();
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(this.xlsxPackage);
+        XSSFReader xssfReader = new XSSFReader(this.xlsxPackage);
+        StylesTable styles = styles();
+        XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+        while (iter.hasNext()) {
+            try (InputStream stream = iter.next()) {
+                if (sheetName == null || sheetName.equals(iter.getSheetName())) {
+                    try {
+                        parse(stream, new HtmlSheetHandler(styles, strings));
+                    } catch (MissingDimensionException e) {
+                        // 没有dimension时先扫描一遍单元格得到列范围（与 ExcelToHtml 相同），再重新解析
+                        PackagePart part = iter.getSheetPart();
+                        RowTagScanner scanner;
+                        try (InputStream in = part.getInputStream()) {
+                            scanner = new RowTagScanner(in, null);
+                            scanner.scan(null);
+                        }
+                        HtmlSheetHandler handler = new HtmlSheetHandler(styles, strings);
+                        handler.setRange(Math.max(scanner.getMinColumn() - 1, 0), scanner.getMaxColumn(),
+                                Math.max(scanner.getLastRow() - 1, 0));
+                        try (InputStream in = part.getInputStream()) {
+                            parse(in, handler);
+                        }
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void parse(InputStream stream, HtmlSheetHandler handler)
+            throws IOException, ParserConfigurationException, SAXException {
+        XMLReader sheetParser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        sheetParser.setContentHandler(handler);
+        sheetParser.parse(new InputSource(stream));
+    }
+
+    /**
+     * sheet没有 &lt;dimension&gt;，在输出表头之前中止解析
+     */
+    private static class MissingDimensionException extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * 只读取工作簿目录判断sheet是否存在，不解析sheet内容
+     */
+    public boolean hasSheet(String sheetName) throws IOException, OpenXML4JException {
+        XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) new XSSFReader(this.xlsxPackage).getSheetsData();
+        while (iter.hasNext()) {
+            // 只需要sheet名称，打开的流直接关闭
+            iter.next().close();
+            if (sheetName == null || sheetName.equals(iter.getSheetName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private StylesTable styles() throws IOException, OpenXML4JException {
+        if (styles == null) {
+            styles = new XSSFReader(this.xlsxPackage).getStylesTable();
+        }
+        return styles;
+    }
+
+    private void ensureOut() {
+        if (out == null) {
+            out = new HtmlWriter(output);
+        }
+    }
+
+    class HtmlSheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sharedStringsTable;
+
+        // 列宽（像素），key为列下标
+        private final Map<Integer, Integer> widths = new TreeMap<>();
+        private double defaultColWidth = 8;
+        private int firstColumn;
+        private int endColumn;
+        private int lastRow;
+        private boolean hasRange;
+
+        private int thisRow = -1;
+        private int thisColumn = -1;
+        private int thisStyle;
+        private String thisType;
+        private boolean textIsOpen;
+        private boolean cellHasValue;
+        private final StringBuilder value = new StringBuilder();
+
+        // 当前行的各列内容，在</row>时统一输出
+        private String[] contents = new String[0];
+        private String[] attrs = new String[0];
+        private int[] cellStyles = new int[0];
+        private int rowEnd;
+
+        private final HtmlRenderContext renderContext;
+        private final HtmlRenderContext.StyleEntry defaultEntry;
+
+        HtmlSheetHandler(StylesTable styles, ReadOnlySharedStringsTable strings) {
+            this.sharedStringsTable = strings;
+            this.renderContext = new HtmlRenderContext(styles::getStyleAt);
+            this.defaultEntry = renderContext.get(0);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes)
+                throws SAXException {
+            if ("v".equals(name) || "t".equals(name)) {
+                textIsOpen = true;
+                cellHasValue = true;
+                if ("v".equals(name)) {
+                    value.setLength(0);
+                }
+            } else if ("c".equals(name)) {
+                String r = attributes.getValue("r");
+                thisColumn = r != null ? columnIndex(r) : thisColumn + 1;
+                String s = attributes.getValue("s");
+                thisStyle = s != null ? Integer.parseInt(s) : 0;
+                thisType = attributes.getValue("t");
+                cellHasValue = false;
+                value.setLength(0);
+            } else if ("row".equals(name)) {
+                String r = attributes.getValue("r");
+                thisRow = r != null ? Integer.parseInt(r) - 1 : thisRow + 1;
+                thisColumn = -1;
+                rowEnd = endColumn;
+                ensureRowWidth(endColumn);
+                Arrays.fill(contents, null);
+            } else if ("dimension".equals(name)) {
+                String ref = attributes.getValue("ref");
+                if (ref != null && !hasRange) {
+                    hasRange = true;
+                    int colon = ref.indexOf(':');
+                    String first = colon < 0 ? ref : ref.substring(0, colon);
+                    String last = colon < 0 ? ref : ref.substring(colon + 1);
+                    firstColumn = columnIndex(first);
+                    endColumn = columnIndex(last) + 1;
+                    lastRow = rowIndex(last);
+                }
+            } else if ("sheetFormatPr".equals(name)) {
+                String width = attributes.getValue("defaultColWidth");
+                if (width == null) {
+                    width = attributes.getValue("baseColWidth");
+                }
+                if (width != null) {
+                    defaultColWidth = Double.parseDouble(width);
+                }
+            } else if ("col".equals(name)) {
+                String width = attributes.getValue("width");
+                if (width != null) {
+                    int min = Integer.parseInt(attributes.getValue("min")) - 1;
+                    int max = Integer.parseInt(attributes.getValue("max")) - 1;
+                    int pixels = ExcelToHtml.widthToPixels(Double.parseDouble(width) * 256);
+                    // max可能是16384（整张sheet），只记录dimension范围内的列
+                    for (int i = min; i <= max && i < Math.max(endColumn, min + 1); i++) {
+                        widths.put(i, pixels);
+                    }
+                }
+            } else if ("sheetData".equals(name)) {
+                if (!hasRange) {
+                    throw new MissingDimensionException();
+                }
+                printTableStart();
+            }
+        }
+
+        /**
+         * 预先指定列范围 [firstColumn, endColumn) 和最后一行的行号，忽略sheet中的 &lt;dimension&gt;
+         */
+        void setRange(int firstColumn, int endColumn, int lastRow) {
+            this.firstColumn = firstColumn;
+            this.endColumn = endColumn;
+            this.lastRow = lastRow;
+            this.hasRange = true;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String name) throws SAXException {
+            if ("v".equals(name) || "t".equals(name)) {
+                textIsOpen = false;
+            } else if ("c".equals(name)) {
+                endCell();
+            } else if ("row".equals(name)) {
+                printRow();
+            } else if ("sheetData".equals(name)) {
+                out.raw("</tbody>").newline();
+                out.raw("</table>").newline();
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (textIsOpen) {
+                value.append(ch, start, length);
+            }
+        }
+
+        private void printTableStart() {
+            int headerCharCount = String.valueOf(lastRow).length();
+            int headerColWidth = ExcelToHtml.widthToPixels((headerCharCount + 1) * 256.0);
+            int defaultWidth = ExcelToHtml.widthToPixels(defaultColWidth * 256);
+            int tableWidth = headerColWidth;
+            for (int i = firstColumn; i < endColumn; i++) {
+                tableWidth += widths.getOrDefault(i, defaultWidth);
+            }
+            ExcelToHtml.printTableStart(out, tableWidth);
+            ExcelToHtml.printHeaderCol(out, headerColWidth);
+            for (int i = firstColumn; i < endColumn; i++) {
+                ExcelToHtml.printCol(out, widths.getOrDefault(i, defaultWidth));
+            }
+            ExcelToHtml.printColumnHeads(out, firstColumn, endColumn);
+            out.raw("<tbody>").newline();
+        }
+
+        private void endCell() {
+            if (thisColumn < firstColumn) {
+                return;
+            }
+            ensureRowWidth(thisColumn + 1);
+            rowEnd = Math.max(rowEnd, thisColumn + 1);
+            HtmlRenderContext.StyleEntry entry = renderContext.get(thisStyle);
+            String attr = "";
+            String content;
+            if (!cellHasValue) {
+                content = "";
+            } else if ("s".equals(thisType)) {
+                int idx = Integer.parseInt(value.toString().trim());
+                content = entry.apply(sharedStringsTable.getItemAt(idx).getString()).text;
+                attr = entry.alignAttrs(CellType.STRING);
+            } else if ("inlineStr".equals(thisType) || "str".equals(thisType)) {
+                content = entry.apply(value.toString()).text;
+                attr = entry.alignAttrs(CellType.STRING);
+            } else if ("b".equals(thisType)) {
+                content = entry.apply(value.length() > 0 && value.charAt(0) != '0').text;
+                attr = entry.alignAttrs(CellType.BOOLEAN);
+            } else if ("e".equals(thisType)) {
+                content = value.toString();
+                attr = entry.alignAttrs(CellType.ERROR);
+            } else if ("d".equals(thisType)) {
+                // ISO 8601日期，按日期样式格式化，无法解析或不是日期样式时原样输出
+                content = value.toString();
+                if (entry.dateFormat) {
+                    try {
+                        LocalDateTime time = CellValueRenderer.parseDateTime(content);
+                        content = entry.apply(Date.from(time.atZone(ZoneId.systemDefault()).toInstant())).text;
+                    } catch (DateTimeParseException e) {
+                        // 保留原文
+                    }
+                }
+            } else if (value.length() == 0) {
+                // 空的 <v/>，与整表加载时一样输出为空
+                content = "";
+            } else {
+                double d = Double.parseDouble(value.toString());
+                if (entry.dateFormat && DateUtil.isValidExcelDate(d)) {
+                    content = entry.apply(DateUtil.getJavaDate(d)).text;
+                } else {
+                    content = entry.apply(d).text;
+                }
+            }
+            contents[thisColumn] = content;
+            attrs[thisColumn] = attr;
+            cellStyles[thisColumn] = thisStyle;
+        }
+
+        private void printRow() {
+            HtmlWriter out = pager != null ? pager.rowWriter() : XLSXStreamingHtmlRenderer.this.out;
+            out.raw("  <tr>").newline();
+            ExcelToHtml.printRowHead(out, thisRow + 1);
+            for (int i = firstColumn; i < rowEnd; i++) {
+                if (contents[i] == null) {
+                    ExcelToHtml.printCell(out, defaultEntry.className, "", null);
+                } else {
+                    ExcelToHtml.printCell(out, renderContext.get(cellStyles[i]).className, attrs[i], contents[i]);
+                }
+            }
+            out.raw("  </tr>").newline();
+            if (pager != null) {
+                pager.rowWritten();
+            }
+        }
+
+        private void ensureRowWidth(int width) {
+            if (contents.length < width) {
+                contents = Arrays.copyOf(contents, width);
+                attrs = Arrays.copyOf(attrs, width);
+                cellStyles = Arrays.copyOf(cellStyles, width);
+            }
+        }
+
+        private int columnIndex(String ref) {
+            int column = -1;
+            for (int i = 0; i < ref.length(); ++i) {
+                char c = ref.charAt(i);
+                if (Character.isDigit(c)) {
+                    break;
+                }
+                column = (column + 1) * 26 + c - 'A';
+            }
+            return column;
+        }
+
+        private int rowIndex(String ref) {
+            for (int i = 0; i < ref.length(); ++i) {
+                if (Character.isDigit(ref.charAt(i))) {
+                    return Integer.parseInt(ref.substring(i)) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 分页模式下按行数切分片段文件，同一时刻只打开一个片段，close时关闭最后一个片段
+     */
+    static class ChunkPager implements Closeable {
+
+        private final File directory;
+        private final String prefix;
+        private final int rowsPerChunk;
+        private HtmlWriter current;
+        private int rowsInChunk;
+        private int chunkCount;
+
+        ChunkPager(File directory, String prefix, int rowsPerChunk) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.rowsPerChunk = rowsPerChunk;
+        }
+
+        HtmlWriter rowWriter() {
+            if (current == null) {
+                File chunk = new File(directory, String.format("%s%05d.html", prefix, chunkCount));
+                try {
+                    current = new HtmlWriter(new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(chunk), StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                chunkCount++;
+            }
+            return current;
+        }
+
+        void rowWritten() {
+            if (++rowsInChunk >= rowsPerChunk) {
+                closeChunk();
+            }
+        }
+
+        private void closeChunk() {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            HtmlWriter chunk = current;
+            current = null;
+            rowsInChunk = 0;
+            if (chunk != null) {
+                chunk.close();
+            }
+        }
+    }
+
+    /**
+     * @param args [xlsx文件] [输出的html文件] [sheet名称] [分页时每块的行数]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: XLSXStreamingHtmlRenderer inputWorkbook outputHtmlFile [sheetName] [rowsPerChunk]");
+            return;
+        }
+        try (
+                OPCPackage pkg = OPCPackage.open(args[0], PackageAccess.READ);
+                FileWriter fw = new FileWriter(args[1]);
+                PrintWriter pw = new PrintWriter(fw)
+        ) {
+            XLSXStreamingHtmlRenderer renderer = new XLSXStreamingHtmlRenderer(pkg, pw);
+            renderer.setCompleteHTML(true);
+            if (args.length > 3) {
+                File index = new File(args[1]).getAbsoluteFile();
+                String baseName = index.getName().replaceFirst("\\.[^.]*$", "");
+                renderer.setPagination(index.getParentFile(), baseName + "_rows", Integer.parseInt(args[3]));
+            }
+            String sheetName = args.length > 2 && !args[2].isEmpty() ? args[2] : null;
+            if (!renderer.printPage(sheetName)) {
+                System.err.println("Sheet [" + sheetName + "] not found.");
+            }
+        }
+    }
+}
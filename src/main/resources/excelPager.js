@@ -0,0 +1,154 @@
+/*
+ * 分页html的加载脚本：表格行按块存放在单独的文件中，滚动到底部时加载下一块，
+ * 滚动到顶部时加载上一块；页面中最多保留 MAX_LOADED 块，移出的行用上下两个占位行保持滚动位置，
+ * 重新加载时从对应的占位行中扣除该块原来的高度，浏览器不会同时持有整张sheet。
+ * 需要通过http访问（file://下浏览器一般不允许fetch本地文件）。
+ */
+(function () {
+    var MAX_LOADED = 5;
+    var config = window.excelPager;
+    var table = document.querySelector('table.excelDefaults');
+    var tbody = table.tBodies[0];
+    var loaded = [];
+    var heights = {};
+    var busy = false;
+
+    function spacer() {
+        var tr = document.createElement('tr');
+        var td = document.createElement('td');
+        td.style.height = '0px';
+        td.style.padding = '0';
+        td.style.border = 'none';
+        tr.appendChild(td);
+        return tr;
+    }
+
+    var topSpacer = spacer();
+    var bottomSpacer = spacer();
+    tbody.appendChild(topSpacer);
+    tbody.appendChild(bottomSpacer);
+
+    function chunkUrl(index) {
+        var n = String(index);
+        while (n.length < 5) {
+            n = '0' + n;
+        }
+        return config.prefix + n + '.html';
+    }
+
+    function fetchRows(index) {
+        return fetch(chunkUrl(index)).then(function (response) {
+            if (!response.ok) {
+                throw new Error('Failed to load ' + chunkUrl(index) + ': ' + response.status);
+            }
+            return response.text();
+        }).then(function (html) {
+            var template = document.createElement('template');
+            template.innerHTML = html;
+            return Array.prototype.slice.call(template.content.querySelectorAll('tr'));
+        });
+    }
+
+    function rowsHeight(rows) {
+        var h = 0;
+        for (var i = 0; i < rows.length; i++) {
+            h += rows[i].offsetHeight;
+        }
+        return h;
+    }
+
+    function removeRows(rows) {
+        for (var i = 0; i < rows.length; i++) {
+            tbody.removeChild(rows[i]);
+        }
+    }
+
+    function spacerHeight(tr) {
+        return parseFloat(tr.firstChild.style.height);
+    }
+
+    function resize(tr, delta) {
+        tr.firstChild.style.height = Math.max(0, spacerHeight(tr) + delta) + 'px';
+    }
+
+    // 移出一块时记下它的高度并加到对应的占位行上
+    function unload(chunk, tr) {
+        heights[chunk.index] = rowsHeight(chunk.rows);
+        resize(tr, heights[chunk.index]);
+        removeRows(chunk.rows);
+    }
+
+    // 重新加载一块时从占位行中扣除它移出时的高度；两端的块都已加载时占位行清零，不留空白
+    function reload(index, tr, atEnd) {
+        if (atEnd) {
+            tr.firstChild.style.height = '0px';
+        } else if (heights[index] !== undefined) {
+            resize(tr, -heights[index]);
+        }
+        delete heights[index];
+    }
+
+    function loadNext() {
+        var next = loaded.length ? loaded[loaded.length - 1].index + 1 : 0;
+        if (busy || next >= config.chunks) {
+            return;
+        }
+        busy = true;
+        fetchRows(next).then(function (rows) {
+            for (var i = 0; i < rows.length; i++) {
+                tbody.insertBefore(rows[i], bottomSpacer);
+            }
+            reload(next, bottomSpacer, next === config.chunks - 1);
+            loaded.push({index: next, rows: rows});
+            if (loaded.length > MAX_LOADED) {
+                unload(loaded.shift(), topSpacer);
+            }
+        }).then(done, done);
+    }
+
+    function loadPrevious() {
+        if (busy || !loaded.length || loaded[0].index === 0) {
+            return;
+        }
+        var prev = loaded[0].index - 1;
+        busy = true;
+        fetchRows(prev).then(function (rows) {
+            var anchor = topSpacer.nextSibling;
+            for (var i = 0; i < rows.length; i++) {
+                tbody.insertBefore(rows[i], anchor);
+            }
+            reload(prev, topSpacer, prev === 0);
+            loaded.unshift({index: prev, rows: rows});
+            if (loaded.length > MAX_LOADED) {
+                unload(loaded.pop(), bottomSpacer);
+            }
+        }).then(done, done);
+    }
+
+    function done(error) {
+        busy = false;
+        if (error instanceof Error) {
+            console.error(error);
+            return;
+        }
+        // 加载完成后占位行可能仍在可视区域内，继续检查
+        check();
+    }
+
+    function visible(el) {
+        var rect = el.getBoundingClientRect();
+        return rect.top < window.innerHeight + 400 && rect.bottom > -400;
+    }
+
+    function check() {
+        if (visible(bottomSpacer)) {
+            loadNext();
+        } else if (visible(topSpacer) && loaded.length && loaded[0].index > 0) {
+            loadPrevious();
+        }
+    }
+
+    window.addEventListener('scroll', check);
+    window.addEventListener('resize', check);
+    check();
+})();
@@ -0,0 +1,46 @@
+package com.ow.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import com.ow.util.ConversionEngine.ConversionRequest;
+
+/**
+ * xlsx转换为CSV；xls在创建请求时就被拒绝，而不是在工作线程中打开失败
+ */
+public class ConversionEngineTest extends TestCase {
+
+    public void testCsv() throws Exception {
+        File source = File.createTempFile("engine", ".xlsx");
+        File destination = File.createTempFile("engine", ".csv");
+        try (ConversionEngine engine = new ConversionEngine(1, 1)) {
+            try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(source)) {
+                Sheet sheet = wb.createSheet("表格一");
+                sheet.createRow(0).createCell(0).setCellValue("名称");
+                sheet.createRow(1).createCell(0).setCellValue("a");
+                wb.write(out);
+            }
+            assertTrue(engine.submit(ConversionRequest.toCsv(source, null, destination)).get().isSheetFound());
+            assertEquals("名称\na", new String(Files.readAllBytes(destination.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            source.delete();
+            destination.delete();
+        }
+    }
+
+    public void testXlsRejected() {
+        try {
+            ConversionRequest.toCsv(new File("Report.XLS"), null, new File("Report.csv"));
+            fail("xls request accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Only .xlsx and .xlsb are supported"));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.ow.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * 在本机端口上启动转换服务，POST一个xlsx，核对返回的CSV
+ */
+public class ExcelConversionServerTest extends TestCase {
+
+    private ExcelConversionServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new ExcelConversionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    public void testCsvRoundTrip() throws Exception {
+        HttpURLConnection conn = post("sheet=" + URLEncoder.encode("表格一", "UTF-8") + "&format=csv", workbook());
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("名称,数量\na,1\nb,2", read(conn.getInputStream()));
+    }
+
+    public void testJsonLinesRoundTrip() throws Exception {
+        HttpURLConnection conn = post("format=jsonl", workbook());
+        assertEquals(200, conn.getResponseCode());
+        String body = read(conn.getInputStream());
+        assertEquals("{\"row\":1,\"cells\":[\"名称\",\"数量\"]}\n"
+                + "{\"row\":2,\"cells\":[\"a\",\"1\"]}\n"
+                + "{\"row\":3,\"cells\":[\"b\",\"2\"]}\n", body);
+    }
+
+    public void testUnknownSheet() throws Exception {
+        HttpURLConnection conn = post("sheet=missing", workbook());
+        assertEquals(404, conn.getResponseCode());
+    }
+
+    public void testUploadLimit() throws Exception {
+        byte[] body = workbook();
+        server.setMaxUploadBytes(body.length - 1);
+        HttpURLConnection conn = post("format=csv", body);
+        assertEquals(413, conn.getResponseCode());
+    }
+
+    private HttpURLConnection post(String query, byte[] body) throws IOException {
+        URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(),
+                ExcelConversionServer.CONTEXT_PATH + "?" + query);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+        return conn;
+    }
+
+    private static byte[] workbook() throws IOException {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("表格一");
+            String[][] data = {{"名称", "数量"}, {"a", "1"}, {"b", "2"}};
+            for (int i = 0; i < data.length; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue(data[i][0]);
+                row.createCell(1).setCellValue(data[i][1]);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            wb.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = body.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ow.util;
+
+import junit.framework.TestCase;
+
+/**
+ * 写入 &lt;script&gt; 的JS字符串不能提前结束字符串或脚本
+ */
+public class HtmlWriterTest extends TestCase {
+
+    public void testJsString() throws Exception {
+        StringBuilder html = new StringBuilder();
+        HtmlWriter out = new HtmlWriter(html);
+        out.jsString("a\\b\"c'd\r\ne</script>\u2028\u2029f");
+        out.flush();
+        assertEquals("a\\\\b\\\"c\\'d\\r\\ne\\u003c/script\\u003e\\u2028\\u2029f", html.toString());
+    }
+}
@@ -0,0 +1,111 @@
+package com.ow.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.ow.util.PgCopyBinaryWriter.PgType;
+
+/**
+ * 写出的COPY二进制流能通过 verify；推断为date的列中后来出现带时间的值时报错而不是截断
+ */
+public class PgCopyBinaryWriterTest extends TestCase {
+
+    // 2023-03-15
+    private static final double DAY = 45000;
+
+    public void testVerifyRoundTrip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PgCopyBinaryWriter writer = new PgCopyBinaryWriter(bytes, null);
+        writer.setHeaderRows(1);
+        writer.handleRow(0, new String[]{"id", "name", "day"});
+        writer.getCellValues().setNumber(0, 1, false);
+        writer.getCellValues().setNumber(2, DAY, true);
+        writer.handleRow(1, new String[]{null, "a", null});
+        writer.getCellValues().clear();
+        writer.getCellValues().setNumber(0, 2, false);
+        writer.getCellValues().setNumber(2, DAY + 1, true);
+        writer.handleRow(2, new String[]{null, "", null});
+        writer.getCellValues().clear();
+        writer.handleRow(3, new String[]{"", "", ""});
+        writer.finish();
+
+        assertEquals(Arrays.asList(PgType.INT8, PgType.TEXT, PgType.DATE), writer.getSchema());
+        assertEquals(2, writer.getRows());
+        assertEquals(2, PgCopyBinaryWriter.verify(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    public void testVerifyRejectsMissingTrailer() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PgCopyBinaryWriter writer = new PgCopyBinaryWriter(bytes, PgCopyBinaryWriter.parseSchema("int8,text"));
+        writer.handleRow(0, new String[]{"1", "a"});
+        writer.finish();
+        byte[] data = bytes.toByteArray();
+        try {
+            PgCopyBinaryWriter.verify(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 2)));
+            fail("Missing trailer not detected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Missing trailer"));
+        }
+    }
+
+    public void testVerifyIgnoresLowFlags() throws Exception {
+        assertEquals(1, PgCopyBinaryWriter.verify(new ByteArrayInputStream(withFlags(0x1))));
+    }
+
+    public void testVerifyRejectsCriticalFlags() throws Exception {
+        try {
+            PgCopyBinaryWriter.verify(new ByteArrayInputStream(withFlags(1 << 17)));
+            fail("Critical flag not rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unsupported header flags"));
+        }
+    }
+
+    public void testTimeAfterInferredDate() throws Exception {
+        PgCopyBinaryWriter writer = new PgCopyBinaryWriter(new ByteArrayOutputStream(), null);
+        writer.setInferRows(3);
+        for (int i = 0; i < 3; i++) {
+            writer.getCellValues().setNumber(0, DAY + i, true);
+            writer.handleRow(i, new String[1]);
+        }
+        assertEquals(Arrays.asList(PgType.DATE), writer.getSchema());
+        // 18:00
+        writer.getCellValues().setNumber(0, DAY + 3.75, true);
+        try {
+            writer.handleRow(3, new String[1]);
+            fail("Time part silently dropped");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Row 4, column A"));
+        }
+    }
+
+    public void testTimeTextInDateColumn() throws Exception {
+        PgCopyBinaryWriter writer = new PgCopyBinaryWriter(new ByteArrayOutputStream(),
+                PgCopyBinaryWriter.parseSchema("date"));
+        writer.handleRow(0, new String[]{"2024-01-02"});
+        try {
+            writer.handleRow(1, new String[]{"2024-01-02 18:00:00"});
+            fail("Time part silently dropped");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Row 2, column A"));
+        }
+    }
+
+    /**
+     * 一行数据的COPY流，文件头标志位改为flags
+     */
+    private static byte[] withFlags(int flags) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PgCopyBinaryWriter writer = new PgCopyBinaryWriter(bytes, PgCopyBinaryWriter.parseSchema("int8"));
+        writer.handleRow(0, new String[]{"1"});
+        writer.finish();
+        byte[] data = bytes.toByteArray();
+        ByteBuffer.wrap(data, PgCopyBinaryWriter.SIGNATURE.length, 4).putInt(flags);
+        return data;
+    }
+}
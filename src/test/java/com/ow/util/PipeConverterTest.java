@@ -0,0 +1,124 @@
+package com.ow.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * 按行范围输出时，范围内的空行与整表输出一致；使用行索引时没有r属性的行也按整张sheet的行号取范围
+ */
+public class PipeConverterTest extends TestCase {
+
+    private File workbook;
+
+    @Override
+    protected void setUp() throws Exception {
+        workbook = File.createTempFile("pipe", ".xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(workbook)) {
+            Sheet sheet = wb.createSheet("表格一");
+            for (int i = 0; i < 7; i++) {
+                // 第5行为空行
+                if (i != 4) {
+                    sheet.createRow(i).createCell(0).setCellValue("v" + (i + 1));
+                }
+            }
+            wb.write(out);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        workbook.delete();
+    }
+
+    public void testBlankRowInsideRange() throws Exception {
+        assertEquals("v1\nv2\nv3\nv4\n\nv6\nv7", convert());
+        assertEquals("v3\nv4\n\nv6\nv7", convert("--rows", "3:7"));
+        assertEquals("\nv6", convert("--rows", "5:6"));
+    }
+
+    public void testFilterSkipsRows() throws Exception {
+        assertEquals("v6", convert("--rows", "3:7", "--where", "A=v6"));
+    }
+
+    public void testRowIndexWithoutRowNumbers() throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("表格一");
+            for (int i = 0; i < 50; i++) {
+                sheet.createRow(i).createCell(0).setCellValue("v" + (i + 1));
+            }
+            writeWithoutRowNumbers(wb, workbook);
+        }
+        File indexDir = Files.createTempDirectory("pipe-index").toFile();
+        try {
+            assertEquals("v31\nv32\nv33", convert("--rows", "31:33"));
+            // 第一次建立索引，第二次从检查点开始解析
+            for (int i = 0; i < 2; i++) {
+                assertEquals("v31\nv32\nv33", convert("--rows", "31:33",
+                        "--row-index", indexDir.getPath(), "--index-interval", "10"));
+            }
+            assertEquals("v40", convert("--rows", "40:40",
+                    "--row-index", indexDir.getPath(), "--index-interval", "10"));
+        } finally {
+            for (File file : indexDir.listFiles()) {
+                file.delete();
+            }
+            indexDir.delete();
+        }
+    }
+
+    /**
+     * 写出工作簿，去掉sheet XML中 &lt;row&gt; 的r属性
+     */
+    private static void writeWithoutRowNumbers(XSSFWorkbook wb, File file) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        wb.write(bytes);
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    content.write(buffer, 0, n);
+                }
+                byte[] data = content.toByteArray();
+                if (entry.getName().startsWith("xl/worksheets/")) {
+                    String xml = new String(data, StandardCharsets.UTF_8);
+                    String stripped = xml.replaceAll("<row r=\"\\d+\"", "<row");
+                    assertFalse(xml.equals(stripped));
+                    data = stripped.getBytes(StandardCharsets.UTF_8);
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private String convert(String... options) throws Exception {
+        String[] args = new String[2 + options.length];
+        args[0] = workbook.getPath();
+        args[1] = PipeConverter.STDIO;
+        System.arraycopy(options, 0, args, 2, options.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OPCPackage pkg = OPCPackage.open(workbook, PackageAccess.READ)) {
+            assertTrue(PipeConverter.parseArgs(args).convert(pkg, out));
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
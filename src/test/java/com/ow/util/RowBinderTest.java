@@ -0,0 +1,269 @@
+package com.ow.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * 从生成的工作簿绑定各种类型的字段和构造方法参数；目标类来自子类加载器（RowBinder所在的类加载器看不到）时也能绑定
+ */
+public class RowBinderTest extends TestCase {
+
+    public void testBindSameLoader() throws Exception {
+        List<Person> people = new ArrayList<>();
+        RowBinder<Person> binder = new RowBinder<>(Person.class, people::add);
+        binder.handleRow(0, new String[]{"name", "city"});
+        binder.handleRow(1, new String[]{"ann", "oslo"});
+        assertEquals(1, people.size());
+        assertEquals("ann", people.get(0).getName());
+        assertEquals("oslo", people.get(0).getCity());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testBindChildLoader() throws Exception {
+        Class<?> type = new ChildFirstLoader(getClass().getClassLoader(), Person.class.getName())
+                .loadClass(Person.class.getName());
+        assertNotSame(Person.class, type);
+        List<Object> people = new ArrayList<>();
+        RowBinder binder = new RowBinder(type, people::add);
+        binder.handleRow(0, new String[]{"name", "city"});
+        binder.handleRow(1, new String[]{"ann", "oslo"});
+        binder.handleRow(2, new String[]{"bob", "rome"});
+        assertEquals(2, people.size());
+        assertEquals("bob", type.getMethod("getName").invoke(people.get(1)));
+        assertEquals("rome", type.getMethod("getCity").invoke(people.get(1)));
+    }
+
+    public void testBindTypedFields() throws Exception {
+        File file = workbook(false);
+        try {
+            List<Item> items = new ArrayList<>();
+            assertEquals(2, RowBinder.bind(file, "表格一", Item.class, items::add));
+            Item first = items.get(0);
+            assertEquals(7, first.id);
+            assertEquals(12345678901L, first.big);
+            assertEquals(2.5, first.price, 0);
+            assertTrue(first.active);
+            assertEquals(Integer.valueOf(3), first.qty);
+            assertEquals(LocalDate.of(2024, 1, 2), first.day);
+            assertEquals(LocalDateTime.of(2024, 1, 2, 18, 30), first.at);
+            assertEquals(toDate(first.at), first.when);
+            assertEquals(new BigDecimal("2.5"), first.amount);
+            assertEquals("a", first.getNote());
+            assertEquals("keep", first.ignored);
+
+            // 空单元格不赋值：基本类型保留默认值，包装类型为null；文本形式的数值和布尔按文本解析
+            Item second = items.get(1);
+            assertEquals(0, second.id);
+            assertEquals(-1L, second.big);
+            assertEquals(8.0, second.price, 0);
+            assertFalse(second.active);
+            assertNull(second.qty);
+            assertNull(second.day);
+            assertNull(second.getNote());
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testBindConstructor() throws Exception {
+        File file = workbook(false);
+        try {
+            List<Pair> pairs = new ArrayList<>();
+            RowBinder.bind(file, "表格一", Pair.class, pairs::add);
+            assertEquals(2, pairs.size());
+            assertEquals(7, pairs.get(0).id);
+            assertEquals(Integer.valueOf(3), pairs.get(0).qty);
+            // 空单元格：基本类型参数为0，包装类型为null
+            assertEquals(0, pairs.get(1).id);
+            assertNull(pairs.get(1).qty);
+            assertEquals(-1L, pairs.get(1).big);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testUnconvertibleCell() throws Exception {
+        File file = workbook(true);
+        try {
+            RowBinder.bind(file, "表格一", Item.class, item -> { });
+            fail("Text in a double column accepted");
+        } catch (IOException e) {
+            assertEquals("Row 4, column C (price): cannot convert 'abc' to double", e.getMessage());
+        }
+    }
+
+    /**
+     * 表头在第1行，数据两行，bad为true时第4行的price为无法转换的文本
+     */
+    private static File workbook(boolean bad) throws IOException {
+        File file = File.createTempFile("binder", ".xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file)) {
+            CellStyle dateStyle = wb.createCellStyle();
+            dateStyle.setDataFormat(wb.createDataFormat().getFormat("yyyy-mm-dd"));
+            CellStyle timeStyle = wb.createCellStyle();
+            timeStyle.setDataFormat(wb.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+            Sheet sheet = wb.createSheet("表格一");
+            String[] header = {"编号", "big", "price", "active", "qty", "日期", "at", "when", "amount", "note"};
+            Row row = sheet.createRow(0);
+            for (int i = 0; i < header.length; i++) {
+                row.createCell(i).setCellValue(header[i]);
+            }
+            row = sheet.createRow(1);
+            row.createCell(0).setCellValue(7);
+            row.createCell(1).setCellValue(12345678901L);
+            row.createCell(2).setCellValue(2.5);
+            row.createCell(3).setCellValue(true);
+            row.createCell(4).setCellValue(3);
+            row.createCell(5).setCellValue(toDate(LocalDateTime.of(2024, 1, 2, 0, 0)));
+            row.getCell(5).setCellStyle(dateStyle);
+            for (int i = 6; i <= 7; i++) {
+                row.createCell(i).setCellValue(toDate(LocalDateTime.of(2024, 1, 2, 18, 30)));
+                row.getCell(i).setCellStyle(timeStyle);
+            }
+            row.createCell(8).setCellValue(2.5);
+            row.createCell(9).setCellValue("a");
+            row = sheet.createRow(2);
+            row.createCell(1).setCellValue("-1");
+            row.createCell(2).setCellValue("8");
+            row.createCell(3).setCellValue("FALSE");
+            if (bad) {
+                sheet.createRow(3).createCell(2).setCellValue("abc");
+            }
+            wb.write(out);
+        }
+        return file;
+    }
+
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    public static class Item {
+        @ExcelColumn("编号")
+        private int id;
+        @ExcelColumn
+        private long big;
+        @ExcelColumn
+        private double price;
+        @ExcelColumn
+        private boolean active;
+        @ExcelColumn
+        private Integer qty;
+        // 按下标绑定，与表头名称无关
+        @ExcelColumn(index = 5)
+        private LocalDate day;
+        @ExcelColumn
+        private LocalDateTime at;
+        @ExcelColumn
+        private Date when;
+        @ExcelColumn
+        private BigDecimal amount;
+        @ExcelColumn
+        private String note;
+        // 没有 @ExcelColumn，不绑定
+        private String ignored = "keep";
+
+        public String getNote() {
+            return note;
+        }
+
+        public void setNote(String note) {
+            this.note = note;
+        }
+    }
+
+    public static class Pair {
+        final int id;
+        final Integer qty;
+        final long big;
+
+        public Pair(@ExcelColumn("编号") int id, @ExcelColumn("qty") Integer qty, @ExcelColumn("big") long big) {
+            this.id = id;
+            this.qty = qty;
+            this.big = big;
+        }
+    }
+
+    public static class Person {
+        private String name;
+        private String city;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+    }
+
+    /**
+     * 自己定义指定的类，不委托给父加载器，相当于插件或web应用中的类
+     */
+    static class ChildFirstLoader extends ClassLoader {
+
+        private final String name;
+
+        ChildFirstLoader(ClassLoader parent, String name) {
+            super(parent);
+            this.name = name;
+        }
+
+        @Override
+        protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                return super.loadClass(className, resolve);
+            }
+            synchronized (getClassLoadingLock(className)) {
+                Class<?> c = findLoadedClass(className);
+                if (c == null) {
+                    byte[] bytes = readClass(className);
+                    c = defineClass(className, bytes, 0, bytes.length);
+                }
+                return c;
+            }
+        }
+
+        private byte[] readClass(String className) throws ClassNotFoundException {
+            try (InputStream in = getParent().getResourceAsStream(className.replace('.', '/') + ".class")) {
+                if (in == null) {
+                    throw new ClassNotFoundException(className);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(className, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.ow.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * 同样的数据分别写成xlsb和xlsx，两个流式reader输出的CSV相同。
+ * POI不能写xlsb，这里按 [MS-XLSB] 的记录格式直接写出最小的工作簿
+ */
+public class XLSBCovertCSVReaderTest extends TestCase {
+
+    private static final String[] STRINGS = {"名称", "a,b", "say \"hi\"", "multi\nline"};
+    // 单元格样式对应的数字格式：常规、内置日期、自定义、内置日期时间、百分比
+    private static final int[] FORMATS = {0, 14, 164, 22, 10};
+    private static final String CUSTOM_FORMAT = "0.000";
+
+    private File xlsb;
+    private File xlsx;
+
+    @Override
+    protected void setUp() throws Exception {
+        xlsb = File.createTempFile("reader", ".xlsb");
+        xlsx = File.createTempFile("reader", ".xlsx");
+        writeXlsb(xlsb);
+        writeXlsx(xlsx);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        xlsb.delete();
+        xlsx.delete();
+    }
+
+    public void testSameCsvAsXlsx() throws Exception {
+        String expected;
+        try (OPCPackage pkg = OPCPackage.open(xlsx, PackageAccess.READ)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CSVByteRowWriter writer = csvWriter(out);
+            assertTrue(new XLSXCovertCSVReader(pkg, System.out, "数据", 0, -1).process(writer));
+            writer.flush();
+            expected = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+        try (OPCPackage pkg = OPCPackage.open(xlsb, PackageAccess.READ)) {
+            XLSBCovertCSVReader reader = new XLSBCovertCSVReader(pkg, System.out, "数据");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CSVByteRowWriter writer = csvWriter(out);
+            assertTrue(reader.process(writer));
+            writer.flush();
+            assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+            assertFalse(reader.process("missing", writer));
+        }
+        assertTrue(expected, expected.startsWith("名称,\"a,b\",\"say \"\"hi\"\"\",\"multi\nline\",,\n1234.5,"));
+    }
+
+    private static CSVByteRowWriter csvWriter(OutputStream out) {
+        return new CSVByteRowWriter(out, ExcelToCSV.DEFAULT_SEPARATOR, ExcelToCSV.EXCEL_STYLE_ESCAPING,
+                StandardCharsets.UTF_8);
+    }
+
+    private static void writeXlsx(File file) throws IOException {
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file)) {
+            CellStyle[] styles = new CellStyle[FORMATS.length];
+            styles[0] = wb.getCellStyleAt(0);
+            for (int i = 1; i < FORMATS.length; i++) {
+                styles[i] = wb.createCellStyle();
+                styles[i].setDataFormat(FORMATS[i] == 164
+                        ? wb.createDataFormat().getFormat(CUSTOM_FORMAT) : (short) FORMATS[i]);
+            }
+            Sheet sheet = wb.createSheet("数据");
+            Row row = sheet.createRow(0);
+            for (int i = 0; i < STRINGS.length; i++) {
+                row.createCell(i).setCellValue(STRINGS[i]);
+            }
+            row = sheet.createRow(1);
+            double[] numbers = {1234.5, 43831.5, 3.14159, 43831.25, 0.125};
+            for (int i = 0; i < numbers.length; i++) {
+                row.createCell(i).setCellValue(numbers[i]);
+                row.getCell(i).setCellStyle(styles[i]);
+            }
+            // 第3行为空行
+            row = sheet.createRow(3);
+            row.createCell(0).setCellValue(true);
+            row.createCell(2).setCellValue("inline");
+            // xlsb的单元格总带有样式下标，对应xlsx中显式写出 s="0" 的单元格
+            row.createCell(5).setCellValue(0.1 + 0.2);
+            row.getCell(5).setCellStyle(styles[0]);
+            wb.createSheet("Other").createRow(0).createCell(0).setCellValue(-7);
+            wb.write(out);
+        }
+    }
+
+    private static void writeXlsb(File file) throws IOException {
+        ByteArrayOutputStream workbook = new ByteArrayOutputStream();
+        record(workbook, 0x83, new byte[0]);
+        record(workbook, 0x8F, new byte[0]);
+        record(workbook, 156, le(0, 1).put(wideString("rId1")).put(wideString("数据")));
+        record(workbook, 156, le(0, 2).put(wideString("rId2")).put(wideString("Other")));
+        record(workbook, 0x90, new byte[0]);
+        record(workbook, 0x84, new byte[0]);
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        record(strings, 159, le(STRINGS.length, STRINGS.length));
+        for (String s : STRINGS) {
+            byte[] text = wideString(s);
+            record(strings, 19, ByteBuffer.allocate(1 + text.length).put((byte) 0).put(text));
+        }
+        record(strings, 160, new byte[0]);
+
+        ByteArrayOutputStream styles = new ByteArrayOutputStream();
+        record(styles, 278, new byte[0]);
+        record(styles, 615, le(1));
+        byte[] format = wideString(CUSTOM_FORMAT);
+        record(styles, 44, ByteBuffer.allocate(2 + format.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) 164).put(format));
+        record(styles, 616, new byte[0]);
+        record(styles, 617, le(FORMATS.length));
+        for (int f : FORMATS) {
+            // ixfeParent, iFmt，其余字体、填充等取0
+            record(styles, 47, ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+                    .putShort((short) 0).putShort((short) f));
+        }
+        record(styles, 618, new byte[0]);
+        record(styles, 279, new byte[0]);
+
+        ByteArrayOutputStream sheet1 = new ByteArrayOutputStream();
+        startSheet(sheet1, 3, 5);
+        row(sheet1, 0);
+        for (int i = 0; i < STRINGS.length; i++) {
+            record(sheet1, 7, cell(i, 0, 4).putInt(i));
+        }
+        row(sheet1, 1);
+        record(sheet1, 5, cell(0, 0, 8).putDouble(1234.5));
+        record(sheet1, 5, cell(1, 1, 8).putDouble(43831.5));
+        record(sheet1, 5, cell(2, 2, 8).putDouble(3.14159));
+        record(sheet1, 5, cell(3, 3, 8).putDouble(43831.25));
+        record(sheet1, 5, cell(4, 4, 8).putDouble(0.125));
+        row(sheet1, 3);
+        record(sheet1, 4, cell(0, 0, 1).put((byte) 1));
+        byte[] inline = wideString("inline");
+        record(sheet1, 6, cell(2, 0, inline.length).put(inline));
+        record(sheet1, 5, cell(5, 0, 8).putDouble(0.1 + 0.2));
+        endSheet(sheet1);
+
+        ByteArrayOutputStream sheet2 = new ByteArrayOutputStream();
+        startSheet(sheet2, 0, 0);
+        row(sheet2, 0);
+        record(sheet2, 5, cell(0, 0, 8).putDouble(-7));
+        endSheet(sheet2);
+
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            entry(zip, "[Content_Types].xml", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"bin\" ContentType=\"application/vnd.ms-excel.sheet.binary.macroEnabled.main\"/>"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet1.bin\" ContentType=\"application/vnd.ms-excel.worksheet\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet2.bin\" ContentType=\"application/vnd.ms-excel.worksheet\"/>"
+                    + "<Override PartName=\"/xl/styles.bin\" ContentType=\"application/vnd.ms-excel.styles\"/>"
+                    + "<Override PartName=\"/xl/sharedStrings.bin\" ContentType=\"application/vnd.ms-excel.sharedStrings\"/>"
+                    + "</Types>");
+            entry(zip, "_rels/.rels", relationships(
+                    "rId1", "officeDocument/2006/relationships/officeDocument", "xl/workbook.bin"));
+            entry(zip, "xl/_rels/workbook.bin.rels", relationships(
+                    "rId1", "officeDocument/2006/relationships/worksheet", "worksheets/sheet1.bin",
+                    "rId2", "officeDocument/2006/relationships/worksheet", "worksheets/sheet2.bin",
+                    "rId3", "officeDocument/2006/relationships/styles", "styles.bin",
+                    "rId4", "officeDocument/2006/relationships/sharedStrings", "sharedStrings.bin"));
+            entry(zip, "xl/workbook.bin", workbook.toByteArray());
+            entry(zip, "xl/worksheets/sheet1.bin", sheet1.toByteArray());
+            entry(zip, "xl/worksheets/sheet2.bin", sheet2.toByteArray());
+            entry(zip, "xl/styles.bin", styles.toByteArray());
+            entry(zip, "xl/sharedStrings.bin", strings.toByteArray());
+        }
+    }
+
+    /**
+     * BrtBeginSheet、BrtWsDim、BrtBeginSheetData
+     */
+    private static void startSheet(ByteArrayOutputStream sheet, int lastRow, int lastColumn) {
+        record(sheet, 129, new byte[0]);
+        record(sheet, 148, le(0, lastRow, 0, lastColumn));
+        record(sheet, 145, new byte[0]);
+    }
+
+    private static void endSheet(ByteArrayOutputStream sheet) {
+        record(sheet, 146, new byte[0]);
+        record(sheet, 130, new byte[0]);
+    }
+
+    /**
+     * BrtRowHdr，行号之后的高度、样式等取0
+     */
+    private static void row(ByteArrayOutputStream sheet, int rowNum) {
+        record(sheet, 0, ByteBuffer.allocate(17).order(ByteOrder.LITTLE_ENDIAN).putInt(rowNum));
+    }
+
+    /**
+     * 单元格记录的公共部分：列号和样式，后面留出value个字节的值
+     */
+    private static ByteBuffer cell(int column, int style, int value) {
+        return ByteBuffer.allocate(8 + value).order(ByteOrder.LITTLE_ENDIAN).putInt(column).putInt(style);
+    }
+
+    private static ByteBuffer le(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer;
+    }
+
+    private static byte[] wideString(String s) {
+        byte[] chars = s.getBytes(StandardCharsets.UTF_16LE);
+        return ByteBuffer.allocate(4 + chars.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(s.length()).put(chars).array();
+    }
+
+    private static void record(ByteArrayOutputStream out, int id, ByteBuffer data) {
+        byte[] bytes = new byte[data.position()];
+        data.flip();
+        data.get(bytes);
+        record(out, id, bytes);
+    }
+
+    /**
+     * 记录类型和长度都是7位一组的变长整数
+     */
+    private static void record(ByteArrayOutputStream out, int id, byte[] data) {
+        writeVarint(out, id);
+        writeVarint(out, data.length);
+        out.write(data, 0, data.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void entry(ZipOutputStream zip, String name, String content) throws IOException {
+        entry(zip, name, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void entry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static String relationships(String... idTypeTargets) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int i = 0; i < idTypeTargets.length; i += 3) {
+            xml.append("<Relationship Id=\"").append(idTypeTargets[i])
+                    .append("\" Type=\"http://schemas.openxmlformats.org/").append(idTypeTargets[i + 1])
+                    .append("\" Target=\"").append(idTypeTargets[i + 2]).append("\"/>");
+        }
+        return xml.append("</Relationships>").toString();
+    }
+}
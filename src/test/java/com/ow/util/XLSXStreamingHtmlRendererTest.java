@@ -0,0 +1,105 @@
+package com.ow.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * 没有 &lt;dimension&gt; 的sheet与有时输出相同；数值单元格的 &lt;v/&gt; 为空时输出为空
+ */
+public class XLSXStreamingHtmlRendererTest extends TestCase {
+
+    private File withDimension;
+    private File withoutDimension;
+
+    @Override
+    protected void setUp() throws Exception {
+        withDimension = File.createTempFile("html", ".xlsx");
+        withoutDimension = File.createTempFile("html", ".xlsx");
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("表格一");
+            sheet.setColumnWidth(2, 20 * 256);
+            for (int i = 0; i < 3; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(1).setCellValue("x" + i);
+                row.createCell(3).setCellValue(12345);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            wb.write(bytes);
+            rewrite(bytes.toByteArray(), withDimension, false);
+            rewrite(bytes.toByteArray(), withoutDimension, true);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        withDimension.delete();
+        withoutDimension.delete();
+    }
+
+    public void testMissingDimension() throws Exception {
+        String expected = render(withDimension);
+        assertTrue(expected, expected.contains("<th class=colHeader>B</th>"));
+        assertTrue(expected, expected.contains("<th class=colHeader>D</th>"));
+        assertTrue(expected, expected.contains("<col style=\"width:180px;\"/>"));
+        assertEquals(expected, render(withoutDimension));
+    }
+
+    public void testEmptyNumericValue() throws Exception {
+        String html = render(withDimension);
+        assertTrue(html, html.contains(">x0</td>" + System.lineSeparator()
+                + "    <td class=style_00 >&nbsp;</td>" + System.lineSeparator()
+                + "    <td class=style_00 >&nbsp;</td>"));
+        assertTrue(html, html.contains(">12345</td>"));
+    }
+
+    private static String render(File file) throws Exception {
+        StringBuilder html = new StringBuilder();
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            assertTrue(new XLSXStreamingHtmlRenderer(pkg, html).printPage(null));
+        }
+        return html.toString();
+    }
+
+    /**
+     * 把第一行D列的值改为空的 &lt;v/&gt;，stripDimension时去掉 &lt;dimension&gt;
+     */
+    private static void rewrite(byte[] workbook, File file, boolean stripDimension) throws Exception {
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(workbook));
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    content.write(buffer, 0, n);
+                }
+                byte[] data = content.toByteArray();
+                if (entry.getName().startsWith("xl/worksheets/")) {
+                    String xml = new String(data, StandardCharsets.UTF_8)
+                            .replaceFirst("(<c r=\"D1\"[^>]*>)<v>[^<]*</v>", "$1<v/>");
+                    if (stripDimension) {
+                        xml = xml.replaceAll("<dimension[^>]*/>", "");
+                    }
+                    data = xml.getBytes(StandardCharsets.UTF_8);
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(data);
+                out.closeEntry();
+            }
+        }
+    }
+}